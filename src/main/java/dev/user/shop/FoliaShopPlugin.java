@@ -7,17 +7,28 @@ import dev.user.shop.config.ShopConfig;
 import dev.user.shop.database.BackupManager;
 import dev.user.shop.database.DatabaseManager;
 import dev.user.shop.database.DatabaseQueue;
+import dev.user.shop.database.LogBatchWriter;
+import dev.user.shop.economy.BalanceCache;
 import dev.user.shop.economy.EconomyManager;
 import dev.user.shop.economy.PlayerPointsManager;
+import dev.user.shop.shop.AutoSellManager;
 import dev.user.shop.shop.PurchaseManager;
+import dev.user.shop.shop.SellManager;
 import dev.user.shop.gacha.GachaBlockManager;
 import dev.user.shop.gacha.GachaDisplayManager;
 import dev.user.shop.gacha.GachaManager;
 import dev.user.shop.gui.GUIManager;
+import dev.user.shop.listener.AutoSellContainerListener;
 import dev.user.shop.listener.BlockInteractListener;
 import dev.user.shop.listener.ChunkListener;
+import dev.user.shop.listener.CraftEngineReloadListener;
 import dev.user.shop.listener.GUIListener;
+import dev.user.shop.listener.PlayerConnectionListener;
+import dev.user.shop.shop.PlayerLimitCache;
 import dev.user.shop.shop.ShopManager;
+import dev.user.shop.shop.StockLedger;
+import dev.user.shop.util.ItemNameTranslations;
+import dev.user.shop.util.ItemPrototypeCache;
 import org.bukkit.plugin.java.JavaPlugin;
 
 public class FoliaShopPlugin extends JavaPlugin {
@@ -27,6 +38,10 @@ public class FoliaShopPlugin extends JavaPlugin {
     private ShopConfig shopConfig;
     private DatabaseManager databaseManager;
     private DatabaseQueue databaseQueue;
+    private LogBatchWriter logWriter;
+    private StockLedger stockLedger;
+    private PlayerLimitCache playerLimitCache;
+    private BalanceCache balanceCache;
     private EconomyManager economyManager;
     private PlayerPointsManager playerPointsManager;
     private volatile ShopManager shopManager;
@@ -34,6 +49,8 @@ public class FoliaShopPlugin extends JavaPlugin {
     private volatile GachaBlockManager gachaBlockManager;
     private volatile GachaDisplayManager gachaDisplayManager;
     private PurchaseManager purchaseManager;
+    private SellManager sellManager;
+    private AutoSellManager autoSellManager;
     private BackupManager backupManager;
 
     @Override
@@ -76,6 +93,20 @@ public class FoliaShopPlugin extends JavaPlugin {
         // 初始化数据库队列
         this.databaseQueue = new DatabaseQueue(this);
 
+        // 初始化日志批量写入器
+        this.logWriter = new LogBatchWriter(this);
+
+        // 初始化库存账本（重放上次未写回的库存，必须在加载商品之前）
+        this.stockLedger = new StockLedger(this);
+        stockLedger.start();
+
+        // 初始化玩家限购缓存（重载插件时加载已在线的玩家）
+        this.playerLimitCache = new PlayerLimitCache(this);
+        playerLimitCache.loadOnlinePlayers();
+
+        // 初始化余额缓存（经济系统和点数系统共用）
+        this.balanceCache = new BalanceCache(this);
+
         // 初始化经济系统
         this.economyManager = new EconomyManager(this);
         economyManager.init();
@@ -87,14 +118,23 @@ public class FoliaShopPlugin extends JavaPlugin {
         // 初始化购买事务管理器
         this.purchaseManager = new PurchaseManager(this);
 
+        // 初始化系统回收结算
+        this.sellManager = new SellManager(this);
+
         // 初始化备份管理器
         this.backupManager = new BackupManager(this);
 
+        // 加载物品名称翻译（商店搜索使用）
+        ItemNameTranslations.load(this);
+
         // 延迟初始化商店和扭蛋管理器（等待 CraftEngine 注册物品）
         getServer().getGlobalRegionScheduler().runDelayed(this, t -> {
             // 初始化商店管理器
             this.shopManager = new ShopManager(this);
 
+            // 初始化自动出售容器管理器
+            this.autoSellManager = new AutoSellManager(this);
+
             // 初始化扭蛋管理器
             this.gachaManager = new GachaManager(this);
 
@@ -114,7 +154,10 @@ public class FoliaShopPlugin extends JavaPlugin {
         // 注册监听器
         getServer().getPluginManager().registerEvents(new GUIListener(this), this);
         getServer().getPluginManager().registerEvents(new BlockInteractListener(this), this);
+        getServer().getPluginManager().registerEvents(new AutoSellContainerListener(this), this);
         getServer().getPluginManager().registerEvents(new ChunkListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerConnectionListener(this), this);
+        getServer().getPluginManager().registerEvents(new CraftEngineReloadListener(), this);
 
         getLogger().info("FoliaShop 插件已启用！");
     }
@@ -124,21 +167,46 @@ public class FoliaShopPlugin extends JavaPlugin {
         // 先关闭所有打开的GUI（包括取消扭蛋动画）
         GUIManager.closeAllGUIs();
 
+        // 停止自动出售容器结算
+        if (autoSellManager != null) {
+            autoSellManager.shutdown();
+        }
+
         // 关闭购买事务管理器
         if (purchaseManager != null) {
             purchaseManager.shutdown();
         }
 
+        // 写入尚未写入的目录快照
+        if (shopManager != null) {
+            shopManager.shutdown();
+        }
+
         // 关闭经济队列（等待所有任务完成）
         if (economyManager != null) {
             economyManager.shutdown();
         }
 
+        // 关闭点数队列
+        if (playerPointsManager != null) {
+            playerPointsManager.shutdown();
+        }
+
         // 关闭数据库队列（等待所有任务完成）
         if (databaseQueue != null) {
             databaseQueue.shutdown();
         }
 
+        // 写回内存账本中的库存（必须在连接池关闭前）
+        if (stockLedger != null) {
+            stockLedger.shutdown();
+        }
+
+        // 写入剩余的缓冲日志（必须在连接池关闭前）
+        if (logWriter != null) {
+            logWriter.shutdown();
+        }
+
         // 关闭数据库连接池
         if (databaseManager != null) {
             databaseManager.close();
@@ -172,6 +240,9 @@ public class FoliaShopPlugin extends JavaPlugin {
     public void reload() {
         reloadConfig();
         shopConfig.load();
+        // 物品定义和组件配置可能已变化，重新构建物品原型
+        ItemPrototypeCache.invalidate();
+        ItemNameTranslations.load(this);
         if (shopManager != null) {
             shopManager.reload();
         }
@@ -199,6 +270,22 @@ public class FoliaShopPlugin extends JavaPlugin {
         return databaseQueue;
     }
 
+    public StockLedger getStockLedger() {
+        return stockLedger;
+    }
+
+    public PlayerLimitCache getPlayerLimitCache() {
+        return playerLimitCache;
+    }
+
+    public BalanceCache getBalanceCache() {
+        return balanceCache;
+    }
+
+    public LogBatchWriter getLogWriter() {
+        return logWriter;
+    }
+
     public EconomyManager getEconomyManager() {
         return economyManager;
     }
@@ -247,6 +334,14 @@ public class FoliaShopPlugin extends JavaPlugin {
         return purchaseManager;
     }
 
+    public SellManager getSellManager() {
+        return sellManager;
+    }
+
+    public AutoSellManager getAutoSellManager() {
+        return autoSellManager;
+    }
+
     public BackupManager getBackupManager() {
         return backupManager;
     }
@@ -1,9 +1,13 @@
 package dev.user.shop.command;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.database.DatabaseQueue;
 import dev.user.shop.gacha.GachaBlockBinding;
 import dev.user.shop.gui.MainMenuGUI;
 import dev.user.shop.gui.ShopAdminGUI;
+import dev.user.shop.util.FoliaExecutors;
+import dev.user.shop.util.HotPathBenchmark;
+import dev.user.shop.util.ItemPrototypeCache;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.FluidCollisionMode;
@@ -18,10 +22,15 @@ import org.bukkit.util.RayTraceResult;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class FoliaShopCommand implements CommandExecutor, TabCompleter {
 
+    private static final List<String> BENCH_TARGETS = List.of("all", "catalog", "nbt", "sell");
+
     private final FoliaShopPlugin plugin;
 
     public FoliaShopCommand(FoliaShopPlugin plugin) {
@@ -155,6 +164,20 @@ public class FoliaShopCommand implements CommandExecutor, TabCompleter {
                 }
                 handleStatsCommand(sender, args);
             }
+            case "dbstats" -> {
+                if (!sender.hasPermission("foliashop.admin")) {
+                    sender.sendMessage(plugin.getShopConfig().getComponent("no-permission"));
+                    return true;
+                }
+                handleDbStatsCommand(sender);
+            }
+            case "bench" -> {
+                if (!sender.hasPermission("foliashop.admin")) {
+                    sender.sendMessage(plugin.getShopConfig().getComponent("no-permission"));
+                    return true;
+                }
+                handleBenchCommand(sender, args);
+            }
             case "export" -> {
                 if (!sender.hasPermission("foliashop.admin")) {
                     sender.sendMessage(plugin.getShopConfig().getComponent("no-permission"));
@@ -198,12 +221,23 @@ public class FoliaShopCommand implements CommandExecutor, TabCompleter {
                 completions.add("export");
                 completions.add("import");
                 completions.add("stats");
+                completions.add("dbstats");
+                completions.add("bench");
             }
             return completions.stream()
                 .filter(s -> s.toLowerCase().startsWith(args[0].toLowerCase()))
                 .toList();
         }
 
+        // bench 命令的参数补全
+        if (args.length == 2 && args[0].equalsIgnoreCase("bench")) {
+            if (sender.hasPermission("foliashop.admin")) {
+                return BENCH_TARGETS.stream()
+                    .filter(s -> s.startsWith(args[1].toLowerCase()))
+                    .toList();
+            }
+        }
+
         // clean 命令的参数补全
         if (args.length == 2 && args[0].equalsIgnoreCase("clean")) {
             if (sender.hasPermission("foliashop.admin")) {
@@ -321,6 +355,8 @@ public class FoliaShopCommand implements CommandExecutor, TabCompleter {
             sender.sendMessage("§e/foliashop export [full|config|state] §7- 导出数据库备份");
             sender.sendMessage("§e/foliashop import <文件名> [replace|merge] §7- 从备份恢复数据库");
             sender.sendMessage("§e/foliashop stats [-|<玩家名>] <machineId> <rewardId> §7- 查询奖品统计");
+            sender.sendMessage("§e/foliashop dbstats §7- 查看数据库队列、经济队列和日志写入统计");
+            sender.sendMessage("§e/foliashop bench [all|catalog|nbt|sell] §7- 测量商品查找、NBT 路径、出售报价等热点路径的耗时");
         }
         sender.sendMessage("§6==================================");
     }
@@ -493,6 +529,98 @@ public class FoliaShopCommand implements CommandExecutor, TabCompleter {
         });
     }
 
+    private void handleDbStatsCommand(CommandSender sender) {
+        sender.sendMessage("§6========== 数据库统计 ==========");
+        sender.sendMessage("§7队列通道: §e" + plugin.getDatabaseQueue().getLaneCount() +
+            " §7| 排队任务: §e" + plugin.getDatabaseQueue().getPendingCount());
+        for (DatabaseQueue.Priority priority : DatabaseQueue.Priority.values()) {
+            DatabaseQueue.TierSnapshot tier = plugin.getDatabaseQueue().getTierStats(priority);
+            sender.sendMessage(String.format("§7[%s] 排队: §e%d §7| 完成: §e%d §7| 拒绝: §e%d §7| 等待 平均/最大: §e%.1f§7/§e%.1f §7ms | 执行平均: §e%.1f §7ms",
+                priority.getConfigKey(), tier.pending(), tier.executed(), tier.rejected(),
+                tier.avgWaitMillis(), tier.maxWaitMillis(), tier.avgExecMillis()));
+        }
+
+        var logStats = plugin.getLogWriter().getStats();
+        sender.sendMessage("§7日志缓冲: §e" + logStats.bufferedRows() + " §7行 | 已写入: §e" + logStats.totalRows() +
+            " §7行 | 丢弃: §e" + logStats.droppedRows() + " §7行");
+        sender.sendMessage(String.format("§7写入速率: §e%.1f §7行/秒 | 批次: §e%d §7| 最近耗时: §e%d §7ms | 平均耗时: §e%.1f §7ms",
+            logStats.rowsPerSecond(), logStats.flushCount(), logStats.lastFlushMillis(), logStats.avgFlushMillis()));
+
+        var economyStats = plugin.getEconomyManager().getStats();
+        sender.sendMessage(String.format("§7经济队列: §e%d §7排队 | 完成: §e%d §7| 批次: §e%d §7| 合并: §e%d §7| 经济调用: §e%d §7| 延迟 平均/最大: §e%.1f§7/§e%.1f §7ms",
+            economyStats.queueDepth(), economyStats.completedOperations(), economyStats.batchCount(),
+            economyStats.coalescedOperations(), economyStats.xconomyCalls(),
+            economyStats.avgLatencyMillis(), economyStats.maxLatencyMillis()));
+
+        var balanceCache = plugin.getBalanceCache();
+        sender.sendMessage("§7余额缓存: §e" + balanceCache.size() + " §7项 | 命中: §e" + balanceCache.getHits() +
+            " §7| 未命中: §e" + balanceCache.getMisses());
+
+        var ledger = plugin.getStockLedger();
+        if (ledger.isEnabled()) {
+            sender.sendMessage("§7库存账本: §e待写回 " + ledger.getPendingCount() + " §7个商品 | 已写回: §e" +
+                ledger.getFlushedRows() + " §7行 / §e" + ledger.getFlushCount() + " §7批");
+        } else {
+            sender.sendMessage("§7库存模式: §e数据库");
+        }
+        var catalog = plugin.getShopManager().getCatalog();
+        sender.sendMessage("§7商店目录: §e版本 " + catalog.getVersion() + " §7| 商品: §e" + catalog.getItemCount() +
+            " §7| 指纹桶: §e" + catalog.getFingerprintBucketCount() + " §7(最大桶 §e" + catalog.getMaxFingerprintBucketSize() + "§7)");
+        sender.sendMessage("§7限购缓存: §e" + plugin.getPlayerLimitCache().getCachedPlayerCount() +
+            " §7名玩家 | 当前限购日: §e" + plugin.getPlayerLimitCache().today());
+        sender.sendMessage("§7物品原型: §e" + ItemPrototypeCache.size() + " §7个 | 命中: §e" + ItemPrototypeCache.getHits() +
+            " §7| 构建: §e" + ItemPrototypeCache.getMisses());
+        sender.sendMessage("§6==============================");
+    }
+
+    private void handleBenchCommand(CommandSender sender, String[] args) {
+        String target = args.length > 1 ? args[1].toLowerCase() : "all";
+        if (!BENCH_TARGETS.contains(target)) {
+            sender.sendMessage("§c用法: /foliashop bench [" + String.join("|", BENCH_TARGETS) + "]");
+            return;
+        }
+
+        var catalog = plugin.getShopManager().getCatalog();
+        var sellPriceIndex = plugin.getShopManager().getSellPriceIndex();
+        String sellMode = plugin.getShopConfig().getSellSystemMode();
+        Map<String, Double> customSellPrices = Map.copyOf(plugin.getShopConfig().getCustomSellItems());
+        sender.sendMessage("§7正在测量热点路径，请稍候...");
+
+        // 计时循环耗时较长，在独立线程上运行，不占用区域线程
+        Executor benchThread = task -> {
+            Thread thread = new Thread(task, "FoliaShop-Benchmark");
+            thread.setDaemon(true);
+            thread.start();
+        };
+        Executor replyExecutor = sender instanceof Player player
+            ? FoliaExecutors.entity(plugin, player) : FoliaExecutors.global(plugin);
+        CompletableFuture.supplyAsync(() -> {
+            List<HotPathBenchmark.Result> results = new ArrayList<>();
+            if (target.equals("all") || target.equals("catalog")) {
+                results.add(HotPathBenchmark.catalogLookup(catalog));
+            }
+            if (target.equals("all") || target.equals("nbt")) {
+                results.add(HotPathBenchmark.nbtPathNavigation());
+                results.add(HotPathBenchmark.nbtValueParsing());
+            }
+            if (target.equals("all") || target.equals("sell")) {
+                results.add(HotPathBenchmark.sellQuotes(catalog, sellPriceIndex, sellMode, customSellPrices));
+            }
+            return results;
+        }, benchThread).whenCompleteAsync((results, error) -> {
+            if (error != null) {
+                plugin.getLogger().warning("热点路径测量失败: " + error.getMessage());
+                sender.sendMessage("§c✘ 测量失败，请查看控制台日志");
+                return;
+            }
+            sender.sendMessage("§6========== 热点路径耗时 ==========");
+            for (HotPathBenchmark.Result result : results) {
+                sender.sendMessage(result.format());
+            }
+            sender.sendMessage("§6==============================");
+        }, replyExecutor);
+    }
+
     private void handleStatsCommand(CommandSender sender, String[] args) {
         if (args.length < 4) {
             sender.sendMessage("§c用法: /foliashop stats [-|<玩家名>] <machineId> <rewardId>");
@@ -696,6 +824,9 @@ public class FoliaShopCommand implements CommandExecutor, TabCompleter {
                 if (plugin.getGachaBlockManager() != null) {
                     plugin.getGachaBlockManager().reload();
                 }
+                if (plugin.getAutoSellManager() != null) {
+                    plugin.getAutoSellManager().reload();
+                }
 
                 sender.sendMessage("§7已重新加载商店和扭蛋数据");
             } else {
@@ -2,8 +2,13 @@ package dev.user.shop.command;
 
 import dev.user.shop.FoliaShopPlugin;
 import dev.user.shop.gui.ShopCategoryGUI;
+import dev.user.shop.gui.ShopSearchGUI;
+import dev.user.shop.shop.AutoSellManager;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -38,7 +43,31 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
             return true;
         }
 
-        if (args.length > 0) {
+        // 首次加载时显示物品分 tick 生成，完成前不打开商店界面
+        if (!plugin.getShopManager().isCatalogReady()) {
+            player.sendMessage(Component.text("商店正在加载中，请稍后再试").color(NamedTextColor.YELLOW));
+            return true;
+        }
+
+        if (args.length > 0 && args[0].equalsIgnoreCase("sellall")) {
+            plugin.getSellManager().sellInventory(player);
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("sellhand")) {
+            plugin.getSellManager().sellHand(player);
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("autosell")) {
+            handleAutoSellCommand(player, args);
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("search")) {
+            if (args.length < 2) {
+                player.sendMessage(Component.text("用法: /shop search <关键词>").color(NamedTextColor.RED));
+                return true;
+            }
+            String query = String.join(" ", java.util.Arrays.copyOfRange(args, 1, args.length));
+            ShopSearchGUI searchGUI = new ShopSearchGUI(plugin, player, query);
+            if (searchGUI.hasResults()) {
+                searchGUI.open();
+            } else {
+                player.sendMessage(Component.text("没有找到匹配 \"" + query + "\" 的商品").color(NamedTextColor.YELLOW));
+            }
+        } else if (args.length > 0) {
             String categoryId = args[0].toLowerCase();
             var category = plugin.getShopManager().getCategory(categoryId);
             if (category != null) {
@@ -58,7 +87,13 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
         List<String> completions = new ArrayList<>();
 
         if (args.length == 1) {
-            // 返回所有分类ID
+            // 返回子命令和所有分类ID
+            completions.add("search");
+            completions.add("sellall");
+            completions.add("sellhand");
+            if (sender.hasPermission("foliashop.shop.autosell")) {
+                completions.add("autosell");
+            }
             for (var category : plugin.getShopManager().getAllCategories()) {
                 completions.add(category.getId());
             }
@@ -67,6 +102,74 @@ public class ShopCommand implements CommandExecutor, TabCompleter {
                 .toList();
         }
 
+        if (args.length == 2 && args[0].equalsIgnoreCase("autosell") && sender.hasPermission("foliashop.shop.autosell")) {
+            return List.of("bind", "unbind", "list").stream()
+                .filter(s -> s.startsWith(args[1].toLowerCase()))
+                .toList();
+        }
+
         return completions;
     }
+
+    private void handleAutoSellCommand(Player player, String[] args) {
+        if (!player.hasPermission("foliashop.shop.autosell")) {
+            player.sendMessage(plugin.getShopConfig().getComponent("no-permission"));
+            return;
+        }
+        if (!plugin.getShopConfig().isAutoSellEnabled()) {
+            player.sendMessage(plugin.getShopConfig().getComponent("feature-disabled"));
+            return;
+        }
+
+        AutoSellManager manager = plugin.getAutoSellManager();
+        String action = args.length >= 2 ? args[1].toLowerCase() : "";
+        switch (action) {
+            case "bind" -> {
+                Block block = player.getTargetBlockExact(10);
+                if (block == null) {
+                    player.sendMessage("§c请看向10格内的容器！");
+                    return;
+                }
+                manager.bind(block, player, result -> {
+                    if (result.success()) {
+                        player.sendMessage("§a✔ 已将该容器设为自动出售容器，每 " +
+                            plugin.getShopConfig().getAutoSellIntervalSeconds() + " 秒结算一次（需在线）");
+                    } else {
+                        player.sendMessage("§c✘ 绑定失败: " + result.message());
+                    }
+                });
+            }
+            case "unbind" -> {
+                Block block = player.getTargetBlockExact(10);
+                AutoSellManager.AutoSellContainer container = block != null ? manager.getContainer(block) : null;
+                if (container == null) {
+                    player.sendMessage("§c请看向10格内的自动出售容器！");
+                    return;
+                }
+                if (!container.ownerUuid().equals(player.getUniqueId()) && !player.hasPermission("foliashop.admin")) {
+                    player.sendMessage("§c这不是你的自动出售容器！");
+                    return;
+                }
+                manager.unbind(container, result -> {
+                    if (result.success()) {
+                        player.sendMessage("§a✔ 已解除自动出售容器");
+                    } else {
+                        player.sendMessage("§c✘ 解绑失败: " + result.message());
+                    }
+                });
+            }
+            case "list" -> {
+                List<AutoSellManager.AutoSellContainer> owned = manager.getContainersByOwner(player.getUniqueId());
+                player.sendMessage("§6===== 自动出售容器 §7(" + owned.size() + "/" +
+                    plugin.getShopConfig().getAutoSellMaxPerPlayer() + ") §6=====");
+                for (AutoSellManager.AutoSellContainer container : owned) {
+                    World world = Bukkit.getWorld(container.worldUuid());
+                    player.sendMessage("§7世界: §f" + (world != null ? world.getName() : "未知") +
+                        " §7坐标: §f" + container.position().getBlockX() + "," +
+                        container.position().getBlockY() + "," + container.position().getBlockZ());
+                }
+            }
+            default -> player.sendMessage("§c用法: /shop autosell <bind|unbind|list>");
+        }
+    }
 }
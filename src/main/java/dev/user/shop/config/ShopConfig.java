@@ -28,6 +28,10 @@ public class ShopConfig {
     private String mysqlPassword;
     private int mysqlPoolSize;
     private String h2Filename;
+    private int databaseQueueLanes;
+    private long logFlushIntervalMs;
+    private int logBatchSize;
+    private int logBufferCapacity;
 
     // 经济设置
     private boolean economyEnabled;
@@ -42,11 +46,24 @@ public class ShopConfig {
     private boolean logTransactions;
     private int refreshInterval;
     private int dailyBuyLimit;
+    private int dailyResetHour;
 
     // 系统回收设置
     private boolean sellSystemEnabled;
     private String sellSystemMode;
     private boolean addStockOnSell;
+    private int purchaseWorkers;
+    private int purchaseQueueCapacity;
+    private int purchaseCoalesceWindowMs;
+    private int economyCoalesceWindowMs;
+    private int balanceCacheTtlMs;
+    private String stockMode;
+    private int stockFlushIntervalMs;
+    private int catalogMaterializeBudgetMs;
+    private boolean catalogSnapshotEnabled;
+    private boolean autoSellEnabled;
+    private int autoSellIntervalSeconds;
+    private int autoSellMaxPerPlayer;
     private Map<String, Double> customSellItems;
 
     // 扭蛋设置
@@ -190,6 +207,10 @@ public class ShopConfig {
         this.mysqlPassword = config.getString("database.mysql.password", "password");
         this.mysqlPoolSize = config.getInt("database.mysql.pool-size", 10);
         this.h2Filename = config.getString("database.h2.filename", "foliashop");
+        this.databaseQueueLanes = config.getInt("database.queue-lanes", 4);
+        this.logFlushIntervalMs = config.getLong("database.log-writer.flush-interval-ms", 1000);
+        this.logBatchSize = config.getInt("database.log-writer.batch-size", 200);
+        this.logBufferCapacity = config.getInt("database.log-writer.buffer-capacity", 10000);
 
         // 经济设置（仅从主配置读取）
         this.economyEnabled = config.getBoolean("economy.enabled", true);
@@ -204,11 +225,24 @@ public class ShopConfig {
         this.logTransactions = getShopBoolean("log-transactions", true);
         this.refreshInterval = getShopInt("refresh-interval", 0);
         this.dailyBuyLimit = getShopInt("daily-buy-limit", 0);
+        this.dailyResetHour = Math.floorMod(getShopInt("daily-reset-hour", 0), 24);
 
         // 系统回收设置（优先从 shop.yml 读取，shop.yml 中在根级别）
         this.sellSystemEnabled = getShopBoolean("sell-system.enabled", true);
         this.sellSystemMode = getShopString("sell-system.mode", "SHOP_ONLY").toUpperCase();
         this.addStockOnSell = getShopBoolean("sell-system.add-stock-on-sell", false);
+        this.purchaseWorkers = getShopInt("purchase.workers", 4);
+        this.purchaseQueueCapacity = getShopInt("purchase.queue-capacity", 1000);
+        this.purchaseCoalesceWindowMs = getShopInt("purchase.coalesce-window-ms", 150);
+        this.economyCoalesceWindowMs = getShopInt("economy.coalesce-window-ms", 50);
+        this.balanceCacheTtlMs = getShopInt("economy.balance-cache-ttl-ms", 3000);
+        this.stockMode = getShopString("stock.mode", "AUTO").toUpperCase();
+        this.stockFlushIntervalMs = getShopInt("stock.flush-interval-ms", 1000);
+        this.catalogMaterializeBudgetMs = getShopInt("catalog.materialize-budget-ms", 5);
+        this.catalogSnapshotEnabled = getShopBoolean("catalog.snapshot", true);
+        this.autoSellEnabled = getShopBoolean("auto-sell.enabled", true);
+        this.autoSellIntervalSeconds = getShopInt("auto-sell.interval-seconds", 60);
+        this.autoSellMaxPerPlayer = getShopInt("auto-sell.max-per-player", 5);
         this.customSellItems = new HashMap<>();
         ConfigurationSection customItemsSection = getShopSection("sell-system.custom-items");
         if (customItemsSection != null) {
@@ -287,6 +321,18 @@ public class ShopConfig {
     public String getMysqlPassword() { return mysqlPassword; }
     public int getMysqlPoolSize() { return mysqlPoolSize; }
     public String getH2Filename() { return h2Filename; }
+    public int getDatabaseQueueLanes() { return databaseQueueLanes; }
+    public long getLogFlushIntervalMs() { return logFlushIntervalMs; }
+    public int getLogBatchSize() { return logBatchSize; }
+    public int getLogBufferCapacity() { return logBufferCapacity; }
+
+    /**
+     * 获取数据库队列指定优先级的每通道容量
+     * @param tier 优先级配置名（interactive-read / interactive-write / background）
+     */
+    public int getDatabaseQueueCapacity(String tier, int defaultValue) {
+        return config.getInt("database.queue-capacity." + tier, defaultValue);
+    }
 
     public boolean isEconomyEnabled() { return economyEnabled; }
     public String getCurrencyName() { return currencyName; }
@@ -303,11 +349,24 @@ public class ShopConfig {
     public boolean isLogTransactions() { return logTransactions; }
     public int getRefreshInterval() { return refreshInterval; }
     public int getDailyBuyLimit() { return dailyBuyLimit; }
+    public int getDailyResetHour() { return dailyResetHour; }
 
     // 系统回收设置 Getter
     public boolean isSellSystemEnabled() { return sellSystemEnabled; }
     public String getSellSystemMode() { return sellSystemMode; }
     public boolean isAddStockOnSell() { return addStockOnSell; }
+    public int getPurchaseWorkers() { return purchaseWorkers; }
+    public int getPurchaseQueueCapacity() { return purchaseQueueCapacity; }
+    public int getPurchaseCoalesceWindowMs() { return purchaseCoalesceWindowMs; }
+    public int getEconomyCoalesceWindowMs() { return economyCoalesceWindowMs; }
+    public int getBalanceCacheTtlMs() { return balanceCacheTtlMs; }
+    public String getStockMode() { return stockMode; }
+    public int getStockFlushIntervalMs() { return stockFlushIntervalMs; }
+    public int getCatalogMaterializeBudgetMs() { return catalogMaterializeBudgetMs; }
+    public boolean isCatalogSnapshotEnabled() { return catalogSnapshotEnabled; }
+    public boolean isAutoSellEnabled() { return autoSellEnabled; }
+    public int getAutoSellIntervalSeconds() { return autoSellIntervalSeconds; }
+    public int getAutoSellMaxPerPlayer() { return autoSellMaxPerPlayer; }
     public Map<String, Double> getCustomSellItems() { return customSellItems; }
     public double getCustomSellPrice(String itemKey) { return customSellItems.getOrDefault(itemKey, 0.0); }
 
@@ -33,7 +33,8 @@ public class BackupManager {
     // 需要备份的表（按依赖顺序）
     private static final String[] CONFIG_TABLES = {
         "shop_items",
-        "gacha_block_bindings"
+        "gacha_block_bindings",
+        "auto_sell_containers"
     };
 
     private static final String[] STATE_TABLES = {
@@ -66,7 +67,11 @@ public class BackupManager {
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
         File backupFile = new File(backupDir, "backup_" + timestamp + ".sql");
 
-        plugin.getDatabaseQueue().submit("exportBackup", conn -> {
+        long watermark = plugin.getLogWriter().currentSequence();
+        plugin.getDatabaseQueue().submit("exportBackup", null, DatabaseQueue.Priority.BACKGROUND, conn -> {
+            // 先写入缓冲中的日志，保证备份包含导出前的所有记录
+            plugin.getLogWriter().flushUpTo(conn, watermark);
+
             try (BufferedWriter writer = new BufferedWriter(new FileWriter(backupFile))) {
                 // 写入文件头
                 writer.write("-- FoliaShop Database Backup\n");
@@ -119,7 +124,7 @@ public class BackupManager {
             return;
         }
 
-        plugin.getDatabaseQueue().submit("importBackup", conn -> {
+        plugin.getDatabaseQueue().submit("importBackup", null, DatabaseQueue.Priority.BACKGROUND, conn -> {
             conn.setAutoCommit(false);
             int totalRows = 0;
 
@@ -185,6 +190,10 @@ public class BackupManager {
                 }
 
                 conn.commit();
+                // 限购表可能已被替换，重新加载在线玩家的限购计数
+                plugin.getPlayerLimitCache().invalidateAll();
+                // 商品表可能已被替换，本地目录快照不再可信
+                plugin.getShopManager().invalidateSnapshotFile();
                 return totalRows;
 
             } catch (IOException e) {
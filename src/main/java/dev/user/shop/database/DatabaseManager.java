@@ -77,7 +77,7 @@ public class DatabaseManager {
             plugin.getLogger().warning("MySQL 驱动注册失败（可能已注册）: " + e.getMessage());
         }
 
-        config.setJdbcUrl(String.format("jdbc:mysql://%s:%d/%s?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC",
+        config.setJdbcUrl(String.format("jdbc:mysql://%s:%d/%s?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC&rewriteBatchedStatements=true",
                 host, port, database));
         config.setUsername(username);
         config.setPassword(password);
@@ -288,6 +288,22 @@ public class DatabaseManager {
                     ")";
             stmt.execute(blockBindingTable);
 
+            // 自动出售容器绑定表
+            String autoSellIdColumn = isMySQL ? "id BIGINT AUTO_INCREMENT PRIMARY KEY" : "id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY";
+            String autoSellUnique = isMySQL ? "UNIQUE KEY unique_container (world_uuid, block_x, block_y, block_z)" : "UNIQUE (world_uuid, block_x, block_y, block_z)";
+            String autoSellTable = "CREATE TABLE IF NOT EXISTS auto_sell_containers (" +
+                    autoSellIdColumn + "," +
+                    "    world_uuid VARCHAR(36) NOT NULL," +
+                    "    block_x INT NOT NULL," +
+                    "    block_y INT NOT NULL," +
+                    "    block_z INT NOT NULL," +
+                    "    owner_uuid VARCHAR(36) NOT NULL," +
+                    "    owner_name VARCHAR(16)," +
+                    "    created_at BIGINT NOT NULL," +
+                    "    " + autoSellUnique +
+                    ")";
+            stmt.execute(autoSellTable);
+
             // 数据库迁移：添加缺失的 display_entity_uuid 列
             migrateAddDisplayEntityUuidColumn(conn);
 
@@ -315,7 +331,8 @@ public class DatabaseManager {
             {"idx_gacha_timestamp", "gacha_records", "timestamp"},
             {"idx_pity_player", "gacha_pity", "player_uuid"},
             {"idx_block_world", "gacha_block_bindings", "world_uuid"},
-            {"idx_block_machine", "gacha_block_bindings", "machine_id"}
+            {"idx_block_machine", "gacha_block_bindings", "machine_id"},
+            {"idx_auto_sell_owner", "auto_sell_containers", "owner_uuid"}
         };
 
         for (String[] index : indexes) {
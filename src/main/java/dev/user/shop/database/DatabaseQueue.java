@@ -1,61 +1,119 @@
 package dev.user.shop.database;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.util.FoliaExecutors;
 
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
+/**
+ * 数据库任务队列
+ * 按 key（玩家UUID、商品ID、扭蛋机ID等）分区到多条通道并行执行：
+ * - 同一个 key 的任务始终进入同一通道，保证先后顺序
+ * - 不同 key 的任务可在不同通道并发执行
+ * - 未指定 key 的任务（加载、备份、清理等）进入共享通道 0
+ * - 回调按 key 分发：key 为玩家UUID时回到该玩家所在区域线程，其余回到全局区域线程
+ *
+ * 每条通道内按优先级分层（交互读 > 交互写 > 后台批量），每层有独立容量上限：
+ * - 高优先级任务可以越过低优先级任务执行，但不会越过同一 key 更早提交的任务
+ * - 没有 key 的交互任务之间保持提交顺序；没有 key 的后台任务（备份、清理等）单独排序，
+ *   不会把没有 key 的交互读写压到后台层级之后
+ * - 队列满或队列已关闭时立即拒绝，不阻塞提交线程（通常是区域线程），通过错误回调或 Future 通知调用方
+ */
 public class DatabaseQueue {
 
+    // 标记当前线程是否为队列工作线程（Future 的后续逻辑可能在工作线程上继续提交任务）
+    private static final ThreadLocal<Boolean> WORKER_THREAD = ThreadLocal.withInitial(() -> false);
+    // 没有 key 的任务在通道内共用的顺序标记（交互层级共用一个，后台层级单独一个）
+    private static final Object NO_KEY = new Object();
+    private static final Object BACKGROUND_NO_KEY = new Object();
+
     private final FoliaShopPlugin plugin;
-    private final BlockingQueue<DatabaseTask<?>> taskQueue;
+    private final Lane[] lanes;
+    private final int[] tierCapacity;
+    private final TierStats[] tierStats;
     private final ExecutorService executor;
     private volatile boolean running = true;
 
     public DatabaseQueue(FoliaShopPlugin plugin) {
         this.plugin = plugin;
-        this.taskQueue = new LinkedBlockingQueue<>();
-        this.executor = Executors.newSingleThreadExecutor(r -> {
-            Thread t = new Thread(r, "FoliaShop-DB-Queue");
-            t.setDaemon(true);
-            return t;
+
+        Priority[] priorities = Priority.values();
+        this.tierCapacity = new int[priorities.length];
+        this.tierStats = new TierStats[priorities.length];
+        for (Priority priority : priorities) {
+            tierCapacity[priority.ordinal()] = Math.max(1, plugin.getShopConfig().getDatabaseQueueCapacity(priority.getConfigKey(), priority.getDefaultCapacity()));
+            tierStats[priority.ordinal()] = new TierStats();
+        }
+
+        int laneCount = Math.max(1, plugin.getShopConfig().getDatabaseQueueLanes());
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane();
+        }
+
+        this.executor = Executors.newFixedThreadPool(laneCount, new ThreadFactory() {
+            private int index = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "FoliaShop-DB-Queue-" + index++);
+                t.setDaemon(true);
+                return t;
+            }
         });
 
         startProcessing();
     }
 
     private void startProcessing() {
-        executor.submit(() -> {
-            while (running || !taskQueue.isEmpty()) {
-                try {
-                    DatabaseTask<?> task = taskQueue.poll(100, TimeUnit.MILLISECONDS);
-                    if (task != null) {
-                        processTask(task);
+        for (Lane lane : lanes) {
+            executor.submit(() -> {
+                WORKER_THREAD.set(true);
+                while (running || !lane.isEmpty()) {
+                    try {
+                        DatabaseTask<?> task = lane.poll(100, TimeUnit.MILLISECONDS);
+                        if (task != null) {
+                            processTask(task);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
                 }
-            }
-        });
+            });
+        }
     }
 
     private <T> void processTask(DatabaseTask<T> task) {
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
+        TierStats stats = tierStats[task.getPriority().ordinal()];
+        stats.recordWait(startTime - task.getEnqueueTime());
 
         // 使用 try-with-resources 确保连接被正确关闭
         try (java.sql.Connection connection = plugin.getDatabaseManager().getConnection()) {
             T result = task.getOperation().execute(connection);
-            long duration = System.currentTimeMillis() - startTime;
+            long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
 
             if (duration > 1000) {
                 plugin.getLogger().warning("慢查询 [" + task.getName() + "] 耗时: " + duration + "ms");
             }
 
-            // 回调到主线程
+            // Future 直接在数据库线程完成，由调用方决定在哪个线程继续
+            if (task.getFuture() != null) {
+                task.getFuture().complete(result);
+            }
+
+            // 回调到任务归属的线程（玩家UUID → 玩家所在区域，其余 → 全局区域）
             if (task.getCallback() != null) {
-                plugin.getServer().getGlobalRegionScheduler().execute(plugin, () -> {
+                FoliaExecutors.forOwner(plugin, task.getKey()).execute(() -> {
                     try {
                         task.getCallback().accept(result);
                     } catch (Exception e) {
@@ -65,32 +123,140 @@ public class DatabaseQueue {
             }
         } catch (SQLException e) {
             plugin.getLogger().warning("数据库操作失败 [" + task.getName() + "]: " + e.getMessage());
+            deliverError(task, e);
+        } catch (RuntimeException e) {
+            // 多通道下一个任务抛出异常不能终止整条通道
+            plugin.getLogger().warning("数据库任务异常 [" + task.getName() + "]: " + e.getMessage());
+            deliverError(task, new SQLException(e.getMessage(), e));
+        } finally {
+            stats.recordExecution(System.nanoTime() - startTime);
+        }
+    }
 
-            if (task.getErrorCallback() != null) {
-                plugin.getServer().getGlobalRegionScheduler().execute(plugin, () -> {
-                    task.getErrorCallback().accept(e);
+    private void deliverError(DatabaseTask<?> task, SQLException error) {
+        if (task.getFuture() != null) {
+            task.getFuture().completeExceptionally(error);
+        }
+        if (task.getErrorCallback() != null) {
+            try {
+                FoliaExecutors.forOwner(plugin, task.getKey()).execute(() -> {
+                    task.getErrorCallback().accept(error);
                 });
+            } catch (RuntimeException e) {
+                // 插件关闭过程中无法再调度回调
+                plugin.getLogger().warning("无法执行数据库错误回调 [" + task.getName() + "]: " + e.getMessage());
             }
         }
     }
 
+    /**
+     * 提交任务到共享通道（无分区 key，交互写优先级）
+     */
     public <T> void submit(String name, DatabaseOperation<T> operation, Consumer<T> callback, Consumer<SQLException> errorCallback) {
+        submit(name, null, Priority.INTERACTIVE_WRITE, operation, callback, errorCallback);
+    }
+
+    public void submit(String name, DatabaseOperation<Void> operation) {
+        submit(name, null, Priority.INTERACTIVE_WRITE, operation, null, null);
+    }
+
+    /**
+     * 按 key 提交任务（交互写优先级）
+     * @param key 分区 key（玩家UUID、商品ID、扭蛋机ID等），相同 key 的任务按提交顺序执行；null 表示共享通道
+     */
+    public <T> void submit(String name, Object key, DatabaseOperation<T> operation, Consumer<T> callback, Consumer<SQLException> errorCallback) {
+        submit(name, key, Priority.INTERACTIVE_WRITE, operation, callback, errorCallback);
+    }
+
+    public void submit(String name, Object key, DatabaseOperation<Void> operation) {
+        submit(name, key, Priority.INTERACTIVE_WRITE, operation, null, null);
+    }
+
+    public void submit(String name, Object key, Priority priority, DatabaseOperation<Void> operation) {
+        submit(name, key, priority, operation, null, null);
+    }
+
+    /**
+     * 按 key 和优先级提交任务
+     * 队列已满或已关闭被拒绝时，通过 errorCallback 通知调用方
+     */
+    public <T> void submit(String name, Object key, Priority priority, DatabaseOperation<T> operation,
+                           Consumer<T> callback, Consumer<SQLException> errorCallback) {
+        enqueue(new DatabaseTask<>(name, key, priority, operation, callback, errorCallback, null));
+    }
+
+    /**
+     * 按 key 提交任务并返回 Future（交互写优先级）
+     * Future 在数据库线程上完成，需要访问玩家或世界时请用 {@code thenXxxAsync(..., executor)} 切回对应线程
+     */
+    public <T> CompletableFuture<T> submitAsync(String name, Object key, DatabaseOperation<T> operation) {
+        return submitAsync(name, key, Priority.INTERACTIVE_WRITE, operation);
+    }
+
+    /**
+     * 按 key 和优先级提交任务并返回 Future
+     * 执行失败、队列已满或已关闭时以 {@link SQLException} 异常完成
+     */
+    public <T> CompletableFuture<T> submitAsync(String name, Object key, Priority priority, DatabaseOperation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        enqueue(new DatabaseTask<>(name, key, priority, operation, null, null, future));
+        return future;
+    }
+
+    private void enqueue(DatabaseTask<?> task) {
+        String name = task.getName();
+        Priority priority = task.getPriority();
+        Object key = task.getKey();
         if (!running) {
             plugin.getLogger().warning("数据库队列已关闭，无法提交任务: " + name);
+            deliverError(task, new SQLException("数据库队列已关闭"));
             return;
         }
 
-        DatabaseTask<T> task = new DatabaseTask<>(name, operation, callback, errorCallback);
-        try {
-            taskQueue.offer(task, 5, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            plugin.getLogger().warning("提交数据库任务被中断: " + name);
+        if (!laneFor(key).offer(task)) {
+            long rejected = tierStats[priority.ordinal()].rejected.incrementAndGet();
+            if (rejected % 100 == 1) {
+                plugin.getLogger().warning("数据库队列繁忙，拒绝任务 [" + name + "] (" + priority + ")，累计拒绝: " + rejected);
+            }
+            deliverError(task, new SQLException("数据库队列繁忙，请稍后再试"));
         }
     }
 
-    public void submit(String name, DatabaseOperation<Void> operation) {
-        submit(name, operation, null, null);
+    /**
+     * 计算 key 对应的通道
+     * 通道 0 保留给无 key 任务，避免备份/清理等长任务阻塞玩家相关的查询
+     */
+    private Lane laneFor(Object key) {
+        if (key == null || lanes.length == 1) {
+            return lanes[0];
+        }
+        return lanes[1 + Math.floorMod(key.hashCode(), lanes.length - 1)];
+    }
+
+    /**
+     * 获取当前排队中的任务总数
+     */
+    public int getPendingCount() {
+        int total = 0;
+        for (Lane lane : lanes) {
+            total += lane.size();
+        }
+        return total;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * 获取指定优先级的统计快照
+     */
+    public TierSnapshot getTierStats(Priority priority) {
+        int pending = 0;
+        for (Lane lane : lanes) {
+            pending += lane.pendingOf(priority);
+        }
+        return tierStats[priority.ordinal()].snapshot(pending);
     }
 
     public void shutdown() {
@@ -110,22 +276,223 @@ public class DatabaseQueue {
         T execute(java.sql.Connection connection) throws SQLException;
     }
 
+    /**
+     * 任务优先级
+     */
+    public enum Priority {
+        /** 玩家交互触发的只读查询（记录、统计、绑定查询等） */
+        INTERACTIVE_READ("interactive-read", 1000),
+        /** 玩家交互触发的写入及抽奖/购买流程内的读取（默认） */
+        INTERACTIVE_WRITE("interactive-write", 2000),
+        /** 后台维护和批量任务（备份、导入、清理等） */
+        BACKGROUND("background", 16);
+
+        private final String configKey;
+        private final int defaultCapacity;
+
+        Priority(String configKey, int defaultCapacity) {
+            this.configKey = configKey;
+            this.defaultCapacity = defaultCapacity;
+        }
+
+        public String getConfigKey() { return configKey; }
+        public int getDefaultCapacity() { return defaultCapacity; }
+    }
+
+    /**
+     * 单条执行通道（一个线程 + 按优先级分层的 FIFO 队列）
+     * 为保证同一 key 的顺序，新任务若发现同 key 仍有更低层级的任务在排队，会放入该低层级队列；
+     * 没有 key 的交互任务视为同一个 key，彼此之间同样保持提交顺序；没有 key 的后台任务另算一个 key
+     */
+    private class Lane {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        @SuppressWarnings("unchecked")
+        private final ArrayDeque<DatabaseTask<?>>[] queues = new ArrayDeque[Priority.values().length];
+        // 按任务声明的优先级统计排队数（用于容量限制）
+        private final int[] declaredCounts = new int[Priority.values().length];
+        // 每个 key 在各层级排队的任务数
+        private final Map<Object, int[]> pendingByKey = new HashMap<>();
+        private int size = 0;
+
+        Lane() {
+            for (int i = 0; i < queues.length; i++) {
+                queues[i] = new ArrayDeque<>();
+            }
+        }
+
+        /**
+         * 加入任务，该层级已满时立即返回 false（不等待）
+         */
+        boolean offer(DatabaseTask<?> task) {
+            int declared = task.getPriority().ordinal();
+
+            // 工作线程上提交的任务属于已接纳任务的后续步骤，不做容量限制
+            boolean bypassCapacity = WORKER_THREAD.get();
+
+            lock.lock();
+            try {
+                if (!bypassCapacity && declaredCounts[declared] >= tierCapacity[declared]) {
+                    return false;
+                }
+
+                // 同 key 仍有更低层级任务排队时，放入最低的那一层，保证同 key 先后顺序
+                int effective = declared;
+                int[] counts = pendingByKey.computeIfAbsent(orderKey(task), k -> new int[queues.length]);
+                for (int i = queues.length - 1; i > effective; i--) {
+                    if (counts[i] > 0) {
+                        effective = i;
+                        break;
+                    }
+                }
+                counts[effective]++;
+
+                task.setEffectiveTier(effective);
+                task.setEnqueueTime(System.nanoTime());
+                queues[effective].addLast(task);
+                declaredCounts[declared]++;
+                size++;
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        DatabaseTask<?> poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long remainingNanos = unit.toNanos(timeout);
+            lock.lock();
+            try {
+                while (size == 0) {
+                    if (remainingNanos <= 0) {
+                        return null;
+                    }
+                    remainingNanos = notEmpty.awaitNanos(remainingNanos);
+                }
+
+                for (ArrayDeque<DatabaseTask<?>> queue : queues) {
+                    DatabaseTask<?> task = queue.pollFirst();
+                    if (task == null) continue;
+
+                    Object orderKey = orderKey(task);
+                    int[] counts = pendingByKey.get(orderKey);
+                    if (counts != null && --counts[task.getEffectiveTier()] == 0 && isAllZero(counts)) {
+                        pendingByKey.remove(orderKey);
+                    }
+                    declaredCounts[task.getPriority().ordinal()]--;
+                    size--;
+                    return task;
+                }
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean isEmpty() {
+            return size() == 0;
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int pendingOf(Priority priority) {
+            lock.lock();
+            try {
+                return declaredCounts[priority.ordinal()];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Object orderKey(DatabaseTask<?> task) {
+            if (task.getKey() != null) return task.getKey();
+            return task.getPriority() == Priority.BACKGROUND ? BACKGROUND_NO_KEY : NO_KEY;
+        }
+
+        private boolean isAllZero(int[] counts) {
+            for (int count : counts) {
+                if (count != 0) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 单个优先级的累计统计（排队等待时间与执行时间分开统计）
+     */
+    private static class TierStats {
+        private final AtomicLong executed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final AtomicLong totalExecNanos = new AtomicLong();
+
+        void recordWait(long nanos) {
+            totalWaitNanos.addAndGet(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        void recordExecution(long nanos) {
+            executed.incrementAndGet();
+            totalExecNanos.addAndGet(nanos);
+        }
+
+        TierSnapshot snapshot(int pending) {
+            long count = executed.get();
+            double avgWait = count == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / count;
+            double avgExec = count == 0 ? 0 : totalExecNanos.get() / 1_000_000.0 / count;
+            return new TierSnapshot(pending, count, rejected.get(), avgWait,
+                maxWaitNanos.get() / 1_000_000.0, avgExec);
+        }
+    }
+
+    /**
+     * 优先级统计快照（时间单位：毫秒）
+     */
+    public record TierSnapshot(int pending, long executed, long rejected,
+                               double avgWaitMillis, double maxWaitMillis, double avgExecMillis) {
+    }
+
     private static class DatabaseTask<T> {
         private final String name;
+        private final Object key;
+        private final Priority priority;
         private final DatabaseOperation<T> operation;
         private final Consumer<T> callback;
         private final Consumer<SQLException> errorCallback;
+        private final CompletableFuture<T> future;
+        private int effectiveTier;
+        private long enqueueTime;
 
-        public DatabaseTask(String name, DatabaseOperation<T> operation, Consumer<T> callback, Consumer<SQLException> errorCallback) {
+        public DatabaseTask(String name, Object key, Priority priority, DatabaseOperation<T> operation,
+                            Consumer<T> callback, Consumer<SQLException> errorCallback, CompletableFuture<T> future) {
             this.name = name;
+            this.key = key;
+            this.priority = priority;
             this.operation = operation;
             this.callback = callback;
             this.errorCallback = errorCallback;
+            this.future = future;
         }
 
         public String getName() { return name; }
+        public Object getKey() { return key; }
+        public Priority getPriority() { return priority; }
         public DatabaseOperation<T> getOperation() { return operation; }
         public Consumer<T> getCallback() { return callback; }
         public Consumer<SQLException> getErrorCallback() { return errorCallback; }
+        public CompletableFuture<T> getFuture() { return future; }
+
+        public int getEffectiveTier() { return effectiveTier; }
+        public void setEffectiveTier(int effectiveTier) { this.effectiveTier = effectiveTier; }
+        public long getEnqueueTime() { return enqueueTime; }
+        public void setEnqueueTime(long enqueueTime) { this.enqueueTime = enqueueTime; }
     }
 }
@@ -0,0 +1,337 @@
+package dev.user.shop.database;
+
+import dev.user.shop.FoliaShopPlugin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志批量写入器（write-behind）
+ * 交易记录（transactions）和扭蛋记录（gacha_records）只追加不修改，
+ * 先缓存在内存中，按时间间隔或行数阈值合并为每张表一次 executeBatch 写入
+ */
+public class LogBatchWriter {
+
+    private static final String INSERT_TRANSACTION_SQL =
+        "INSERT INTO transactions (player_uuid, player_name, item_id, item_key, amount, price, type, timestamp) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_GACHA_SQL =
+        "INSERT INTO gacha_records (player_uuid, player_name, machine_id, reward_id, item_key, amount, cost, timestamp) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final FoliaShopPlugin plugin;
+    private final int batchSize;
+    private final int bufferCapacity;
+
+    // 缓冲区（追加时加锁，保证队列顺序与序号顺序一致；写入失败的行放回队首，顺序不变）
+    private final Deque<TransactionRow> transactionBuffer = new ConcurrentLinkedDeque<>();
+    private final Deque<GachaRow> gachaBuffer = new ConcurrentLinkedDeque<>();
+    private final Object appendLock = new Object();
+    private final Object flushLock = new Object();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile int bufferedRows = 0;
+
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private volatile boolean running = true;
+
+    // 统计
+    private final AtomicLong totalRows = new AtomicLong();
+    private final AtomicLong droppedRows = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private volatile long lastFlushMillis = 0;
+    private volatile double rowsPerSecond = 0;
+    private long rateSampleRows = 0;
+    private long rateSampleTime = System.nanoTime();
+
+    public LogBatchWriter(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+        this.batchSize = Math.max(1, plugin.getShopConfig().getLogBatchSize());
+        this.bufferCapacity = Math.max(batchSize, plugin.getShopConfig().getLogBufferCapacity());
+        long flushInterval = Math.max(50, plugin.getShopConfig().getLogFlushIntervalMs());
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "FoliaShop-Log-Writer");
+            t.setDaemon(true);
+            return t;
+        });
+
+        executor.scheduleWithFixedDelay(this::flushSafely, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        executor.scheduleAtFixedRate(this::sampleRate, 5, 5, TimeUnit.SECONDS);
+    }
+
+    // ==================== 追加日志 ====================
+
+    public void appendTransaction(UUID playerUuid, String playerName, String itemId, String itemKey,
+                                  int amount, double price, String type) {
+        synchronized (appendLock) {
+            if (!reserve()) return;
+            transactionBuffer.add(new TransactionRow(sequence.incrementAndGet(), playerUuid.toString(), playerName,
+                itemId, itemKey, amount, price, type, System.currentTimeMillis()));
+        }
+        requestFlushIfFull();
+    }
+
+    public void appendGacha(UUID playerUuid, String playerName, String machineId, String rewardId, String itemKey,
+                            int amount, double cost) {
+        synchronized (appendLock) {
+            if (!reserve()) return;
+            gachaBuffer.add(new GachaRow(sequence.incrementAndGet(), playerUuid.toString(), playerName,
+                machineId, rewardId, itemKey, amount, cost, System.currentTimeMillis()));
+        }
+        requestFlushIfFull();
+    }
+
+    /**
+     * 占用一个缓冲位置（调用方需持有 appendLock）
+     * 缓冲区已满时丢弃该行，不阻塞调用线程（通常是区域线程），每次丢弃都计入统计并定期输出累计丢弃数
+     */
+    private boolean reserve() {
+        if (!running) {
+            droppedRows.incrementAndGet();
+            plugin.getLogger().warning("日志写入器已关闭，丢弃一条日志");
+            return false;
+        }
+        if (bufferedRows >= bufferCapacity) {
+            long dropped = droppedRows.incrementAndGet();
+            if (dropped == 1 || dropped % 100 == 0) {
+                plugin.getLogger().warning("日志缓冲区已满（" + bufferCapacity + " 行），正在丢弃新日志，累计丢弃: " + dropped);
+            }
+            requestFlush();
+            return false;
+        }
+        bufferedRows++;
+        return true;
+    }
+
+    private void requestFlushIfFull() {
+        if (bufferedRows >= batchSize) {
+            requestFlush();
+        }
+    }
+
+    private void requestFlush() {
+        if (running && flushRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::flushSafely);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 获取当前序号（用于读取前的水位线）
+     * 读取日志表的数据库任务应在提交时记录水位线，执行时调用 {@link #flushUpTo(Connection, long)}，
+     * 以确保读到提交之前追加的所有日志，而不会读到之后追加的日志
+     */
+    public long currentSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * 在给定连接上写入序号不超过水位线的缓冲日志（供数据库队列内的读取任务使用）
+     */
+    public void flushUpTo(Connection conn, long watermark) throws SQLException {
+        synchronized (flushLock) {
+            List<TransactionRow> transactions = drain(transactionBuffer, watermark);
+            List<GachaRow> gachaRows = drain(gachaBuffer, watermark);
+            if (transactions.isEmpty() && gachaRows.isEmpty()) return;
+
+            try {
+                writeBatch(conn, transactions, gachaRows);
+            } catch (SQLException e) {
+                requeue(transactions, gachaRows);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 写入全部缓冲日志（使用独立连接）
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            List<TransactionRow> transactions = drain(transactionBuffer, Long.MAX_VALUE);
+            List<GachaRow> gachaRows = drain(gachaBuffer, Long.MAX_VALUE);
+            if (transactions.isEmpty() && gachaRows.isEmpty()) return;
+
+            try (Connection conn = plugin.getDatabaseManager().getConnection()) {
+                writeBatch(conn, transactions, gachaRows);
+            } catch (SQLException e) {
+                plugin.getLogger().warning("批量写入日志失败（" + (transactions.size() + gachaRows.size()) + " 行，稍后重试）: " + e.getMessage());
+                requeue(transactions, gachaRows);
+            }
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            plugin.getLogger().warning("日志写入器异常: " + e.getMessage());
+        }
+    }
+
+    private <R extends LogRow> List<R> drain(Deque<R> buffer, long watermark) {
+        List<R> rows = new ArrayList<>();
+        R row;
+        while ((row = buffer.peek()) != null && row.sequence() <= watermark) {
+            buffer.poll();
+            rows.add(row);
+        }
+        if (!rows.isEmpty()) {
+            synchronized (appendLock) {
+                bufferedRows -= rows.size();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 写入失败时放回缓冲区队首（调用方需持有 flushLock）
+     * 取出的行序号都小于缓冲区中剩余的行，倒序放回队首后队列仍按序号排列，
+     * flushUpTo 不会因为旧行排在新行之后而漏写水位线以内的日志。
+     * 已接受的日志不会因为容量被丢弃，缓冲区暂时超出容量时由 reserve 拒绝新日志。
+     */
+    private void requeue(List<TransactionRow> transactions, List<GachaRow> gachaRows) {
+        synchronized (appendLock) {
+            pushFront(transactionBuffer, transactions);
+            pushFront(gachaBuffer, gachaRows);
+            bufferedRows += transactions.size() + gachaRows.size();
+        }
+    }
+
+    private <R extends LogRow> void pushFront(Deque<R> buffer, List<R> rows) {
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            buffer.addFirst(rows.get(i));
+        }
+    }
+
+    private void writeBatch(Connection conn, List<TransactionRow> transactions, List<GachaRow> gachaRows) throws SQLException {
+        long start = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            if (!transactions.isEmpty()) {
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_TRANSACTION_SQL)) {
+                    for (TransactionRow row : transactions) {
+                        ps.setString(1, row.playerUuid());
+                        ps.setString(2, row.playerName());
+                        ps.setString(3, row.itemId());
+                        ps.setString(4, row.itemKey());
+                        ps.setInt(5, row.amount());
+                        ps.setDouble(6, row.price());
+                        ps.setString(7, row.type());
+                        ps.setLong(8, row.timestamp());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+
+            if (!gachaRows.isEmpty()) {
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_GACHA_SQL)) {
+                    for (GachaRow row : gachaRows) {
+                        ps.setString(1, row.playerUuid());
+                        ps.setString(2, row.playerName());
+                        ps.setString(3, row.machineId());
+                        ps.setString(4, row.rewardId());
+                        ps.setString(5, row.itemKey());
+                        ps.setInt(6, row.amount());
+                        ps.setDouble(7, row.cost());
+                        ps.setLong(8, row.timestamp());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        totalRows.addAndGet(transactions.size() + gachaRows.size());
+        flushCount.incrementAndGet();
+        totalFlushNanos.addAndGet(elapsed);
+        lastFlushMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+    }
+
+    private void sampleRate() {
+        long now = System.nanoTime();
+        long rows = totalRows.get();
+        double seconds = (now - rateSampleTime) / 1_000_000_000.0;
+        if (seconds > 0) {
+            rowsPerSecond = (rows - rateSampleRows) / seconds;
+        }
+        rateSampleRows = rows;
+        rateSampleTime = now;
+    }
+
+    /**
+     * 关闭写入器并写入剩余日志（需在数据库连接池关闭前调用）
+     */
+    public void shutdown() {
+        running = false;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+        }
+        flush();
+        if (bufferedRows > 0) {
+            plugin.getLogger().warning("关闭时仍有 " + bufferedRows + " 行日志未能写入数据库，已丢弃");
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    public Stats getStats() {
+        long flushes = flushCount.get();
+        double avgFlushMillis = flushes == 0 ? 0 : totalFlushNanos.get() / 1_000_000.0 / flushes;
+        return new Stats(bufferedRows, totalRows.get(), droppedRows.get(), flushes,
+            rowsPerSecond, lastFlushMillis, avgFlushMillis);
+    }
+
+    /**
+     * 写入器统计信息
+     */
+    public record Stats(int bufferedRows, long totalRows, long droppedRows, long flushCount,
+                        double rowsPerSecond, long lastFlushMillis, double avgFlushMillis) {
+    }
+
+    // ==================== 行数据 ====================
+
+    private interface LogRow {
+        long sequence();
+    }
+
+    private record TransactionRow(long sequence, String playerUuid, String playerName, String itemId, String itemKey,
+                                  int amount, double price, String type, long timestamp) implements LogRow {
+    }
+
+    private record GachaRow(long sequence, String playerUuid, String playerName, String machineId, String rewardId,
+                            String itemKey, int amount, double cost, long timestamp) implements LogRow {
+    }
+}
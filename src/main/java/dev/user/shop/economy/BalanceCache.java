@@ -0,0 +1,126 @@
+package dev.user.shop.economy;
+
+import dev.user.shop.FoliaShopPlugin;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 玩家金币/点券余额短时缓存（仅用于购买前的预检查和购买条件）
+ * - 插件自己的每次查询、扣款、存款都会写入或修正缓存
+ * - 修正不会延长有效期，超过 economy.balance-cache-ttl-ms 后必须重新查询，外部的余额变化最多滞后这么久
+ * - 能检测到的外部变化（PlayerPoints 点券变化事件、玩家退出）直接使缓存失效
+ * 缓存只能用于放行：缓存显示余额足够时可以跳过预检查查询，显示不足时必须查询实际余额后再拒绝。
+ * 实际扣款始终以经济插件的余额为准，不读取本缓存。
+ */
+public class BalanceCache {
+
+    private final FoliaShopPlugin plugin;
+    private final Map<UUID, Entry> balances = new ConcurrentHashMap<>();
+    private final Map<UUID, Entry> points = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public BalanceCache(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 缓存的值及其查询时间
+     */
+    private record Entry(double value, long loadedAt) {
+    }
+
+    // ==================== 金币 ====================
+
+    /**
+     * @return 有效期内的金币余额，没有缓存或已过期时返回 null
+     */
+    public Double getBalance(UUID playerUuid) {
+        return get(balances, playerUuid);
+    }
+
+    /**
+     * 写入刚从经济插件查询到的金币余额
+     */
+    public void putBalance(UUID playerUuid, double balance) {
+        balances.put(playerUuid, new Entry(balance, System.currentTimeMillis()));
+    }
+
+    /**
+     * 插件扣款/存款成功后修正缓存的金币余额（没有缓存时不做任何事）
+     */
+    public void adjustBalance(UUID playerUuid, double delta) {
+        adjust(balances, playerUuid, delta);
+    }
+
+    // ==================== 点券 ====================
+
+    /**
+     * @return 有效期内的点券余额，没有缓存或已过期时返回 null
+     */
+    public Integer getPoints(UUID playerUuid) {
+        Double value = get(points, playerUuid);
+        return value != null ? value.intValue() : null;
+    }
+
+    /**
+     * 写入刚从 PlayerPoints 查询到的点券余额
+     */
+    public void putPoints(UUID playerUuid, int amount) {
+        points.put(playerUuid, new Entry(amount, System.currentTimeMillis()));
+    }
+
+    /**
+     * 插件扣除/给予点券成功后修正缓存的点券余额（没有缓存时不做任何事）
+     */
+    public void adjustPoints(UUID playerUuid, int delta) {
+        adjust(points, playerUuid, delta);
+    }
+
+    public void invalidatePoints(UUID playerUuid) {
+        points.remove(playerUuid);
+    }
+
+    // ==================== 失效与统计 ====================
+
+    /**
+     * 移除玩家的全部缓存（玩家退出时）
+     */
+    public void invalidate(UUID playerUuid) {
+        balances.remove(playerUuid);
+        points.remove(playerUuid);
+    }
+
+    public void clear() {
+        balances.clear();
+        points.clear();
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public int size() { return balances.size() + points.size(); }
+
+    private Double get(Map<UUID, Entry> cache, UUID playerUuid) {
+        Entry entry = cache.get(playerUuid);
+        if (entry == null || isExpired(entry)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value();
+    }
+
+    private void adjust(Map<UUID, Entry> cache, UUID playerUuid, double delta) {
+        cache.computeIfPresent(playerUuid, (uuid, entry) ->
+            isExpired(entry) ? null : new Entry(entry.value() + delta, entry.loadedAt()));
+    }
+
+    private boolean isExpired(Entry entry) {
+        long ttl = plugin.getShopConfig().getBalanceCacheTtlMs();
+        return ttl <= 0 || System.currentTimeMillis() - entry.loadedAt() > ttl;
+    }
+}
@@ -1,16 +1,36 @@
 package dev.user.shop.economy;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.util.FoliaExecutors;
 import me.yic.xconomy.api.XConomyAPI;
 import org.bukkit.entity.Player;
 
 import java.math.BigDecimal;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
+/**
+ * 经济操作管理器（XConomy）
+ * 所有操作提交到单个经济线程排队执行。经济线程每次从队列中取出一批任务（最多 {@link #MAX_BATCH_SIZE} 个）
+ * 在同一轮中执行：
+ * - 同一玩家的连续存款（中间没有该玩家的其他操作）合并为一次 XConomy 调用，每个任务得到相同的结果
+ * - 取出的任务中已有同一玩家的多笔存款时（批量出售、自动出售等连续存款），最多再等待 economy.coalesce-window-ms
+ *   收集后续任务；单独的存款不等待，不会拖慢其他玩家的操作
+ * {@link #submitBatch(List)} 一次提交多个操作（自动出售按主人结算等）并返回每个操作的结果；
+ * 队列深度和操作延迟见 {@link #getStats()}。
+ *
+ * 查询和扣款/存款的结果会写入 {@link BalanceCache}：余额检查（hasEnough）在缓存显示足够时直接返回，
+ * 不经过经济队列；扣款本身始终以 XConomy 的余额为准。
+ */
 public class EconomyManager {
 
+    // 经济线程每轮最多执行的任务数
+    private static final int MAX_BATCH_SIZE = 256;
+
     private final FoliaShopPlugin plugin;
+    private final BalanceCache balanceCache;
     private XConomyAPI xconomyAPI;
     private boolean enabled = false;
 
@@ -19,8 +39,17 @@ public class EconomyManager {
     private final ExecutorService executor;
     private volatile boolean running = true;
 
+    // 统计
+    private final AtomicLong completedOperations = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong coalescedOperations = new AtomicLong();
+    private final AtomicLong xconomyCalls = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
     public EconomyManager(FoliaShopPlugin plugin) {
         this.plugin = plugin;
+        this.balanceCache = plugin.getBalanceCache();
         this.taskQueue = new LinkedBlockingQueue<>();
         this.executor = Executors.newSingleThreadExecutor(r -> {
             Thread t = new Thread(r, "FoliaShop-Economy-Queue");
@@ -43,20 +72,102 @@ public class EconomyManager {
 
     private void startProcessing() {
         executor.submit(() -> {
+            List<EconomyTask<?>> batch = new ArrayList<>();
             while (running || !taskQueue.isEmpty()) {
                 try {
-                    EconomyTask<?> task = taskQueue.poll(100, TimeUnit.MILLISECONDS);
-                    if (task != null) {
-                        processTask(task);
-                    }
+                    EconomyTask<?> first = taskQueue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    collectBatch(batch);
+                    processBatch(batch);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     break;
+                } finally {
+                    batch.clear();
                 }
             }
         });
     }
 
+    /**
+     * 取出队列中已有的任务；其中已有同一玩家的多笔存款时在合并窗口内继续等待后续任务
+     */
+    private void collectBatch(List<EconomyTask<?>> batch) {
+        taskQueue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+
+        long windowMs = plugin.getShopConfig().getEconomyCoalesceWindowMs();
+        if (windowMs <= 0 || !running || !hasRepeatedDeposit(batch)) return;
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+        while (batch.size() < MAX_BATCH_SIZE) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) break;
+            EconomyTask<?> next;
+            try {
+                next = taskQueue.poll(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                // 已取出的任务仍然执行，下一次等待时退出
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (next == null) break;
+            batch.add(next);
+            taskQueue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+        }
+    }
+
+    /**
+     * 批次中是否有同一玩家的多笔存款（说明该玩家正在连续存款，值得等待合并）
+     */
+    private boolean hasRepeatedDeposit(List<EconomyTask<?>> batch) {
+        Set<UUID> depositors = new HashSet<>();
+        for (EconomyTask<?> task : batch) {
+            if (task.getType() == OperationType.DEPOSIT && !depositors.add(task.getPlayer().getUniqueId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 执行一批任务：同一玩家的连续存款合并执行，其余任务按提交顺序逐个执行
+     * 合并只跨过其他玩家的操作，不会改变同一玩家的操作顺序
+     */
+    private void processBatch(List<EconomyTask<?>> batch) {
+        batchCount.incrementAndGet();
+
+        List<List<EconomyTask<?>>> groups = new ArrayList<>();
+        Map<UUID, List<EconomyTask<?>>> openDeposits = new HashMap<>();
+        for (EconomyTask<?> task : batch) {
+            UUID playerUuid = task.getPlayer().getUniqueId();
+            if (task.getType() == OperationType.DEPOSIT) {
+                List<EconomyTask<?>> group = openDeposits.get(playerUuid);
+                if (group != null) {
+                    group.add(task);
+                    coalescedOperations.incrementAndGet();
+                    continue;
+                }
+                group = new ArrayList<>(1);
+                group.add(task);
+                openDeposits.put(playerUuid, group);
+                groups.add(group);
+            } else {
+                // 该玩家的其他操作之后的存款不能再并入之前的存款
+                openDeposits.remove(playerUuid);
+                groups.add(List.of(task));
+            }
+        }
+
+        for (List<EconomyTask<?>> group : groups) {
+            if (group.size() == 1) {
+                processTask(group.get(0));
+            } else {
+                processDepositGroup(group);
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private <T> void processTask(EconomyTask<T> task) {
         try {
@@ -68,28 +179,76 @@ public class EconomyManager {
                 case DEPOSIT -> result = (T) Boolean.valueOf(depositSync((Player) task.getPlayer(), (Double) task.getAmount()));
                 default -> throw new IllegalStateException("未知任务类型: " + task.getType());
             }
+            complete(task, result);
+        } catch (Exception e) {
+            fail(task, e);
+        }
+    }
 
-            // 回调到主线程
-            if (task.getCallback() != null) {
-                plugin.getServer().getGlobalRegionScheduler().execute(plugin, () -> {
-                    try {
-                        ((Consumer<T>) task.getCallback()).accept(result);
-                    } catch (Exception e) {
-                        plugin.getLogger().warning("经济操作回调执行失败: " + e.getMessage());
-                    }
-                });
+    /**
+     * 合并执行同一玩家的多笔存款（一次 XConomy 调用），所有任务得到相同的结果
+     */
+    @SuppressWarnings("unchecked")
+    private void processDepositGroup(List<EconomyTask<?>> group) {
+        double total = 0;
+        for (EconomyTask<?> task : group) {
+            total += task.getAmount();
+        }
+        try {
+            Boolean result = depositSync(group.get(0).getPlayer(), total);
+            for (EconomyTask<?> task : group) {
+                complete((EconomyTask<Boolean>) task, result);
             }
         } catch (Exception e) {
-            plugin.getLogger().warning("经济操作失败 [" + task.getType() + "]: " + e.getMessage());
-
-            if (task.getErrorCallback() != null) {
-                plugin.getServer().getGlobalRegionScheduler().execute(plugin, () -> {
-                    task.getErrorCallback().accept(e);
-                });
+            for (EconomyTask<?> task : group) {
+                fail(task, e);
             }
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private <T> void complete(EconomyTask<T> task, T result) {
+        recordLatency(task);
+
+        // Future 直接在经济线程完成，由调用方决定在哪个线程继续
+        if (task.getFuture() != null) {
+            task.getFuture().complete(result);
+        }
+
+        // 回调到玩家所在区域线程（玩家已下线时回到全局区域线程）
+        if (task.getCallback() != null) {
+            FoliaExecutors.entity(plugin, task.getPlayer()).execute(() -> {
+                try {
+                    ((Consumer<T>) task.getCallback()).accept(result);
+                } catch (Exception e) {
+                    plugin.getLogger().warning("经济操作回调执行失败: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private void fail(EconomyTask<?> task, Exception e) {
+        recordLatency(task);
+        plugin.getLogger().warning("经济操作失败 [" + task.getType() + "]: " + e.getMessage());
+
+        if (task.getFuture() != null) {
+            task.getFuture().completeExceptionally(e);
+        }
+
+        if (task.getErrorCallback() != null) {
+            FoliaExecutors.entity(plugin, task.getPlayer()).execute(() -> {
+                task.getErrorCallback().accept(e);
+            });
+        }
+    }
+
+    private void recordLatency(EconomyTask<?> task) {
+        long latency = System.nanoTime() - task.getEnqueueTime();
+        completedOperations.incrementAndGet();
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+    }
+
     public void shutdown() {
         running = false;
         executor.shutdown();
@@ -111,8 +270,10 @@ public class EconomyManager {
     private double getBalanceSync(Player player) {
         if (!enabled) return 0;
         try {
-            BigDecimal bal = xconomyAPI.getPlayerData(player.getUniqueId()).getBalance();
-            return bal.doubleValue();
+            xconomyCalls.incrementAndGet();
+            double balance = xconomyAPI.getPlayerData(player.getUniqueId()).getBalance().doubleValue();
+            balanceCache.putBalance(player.getUniqueId(), balance);
+            return balance;
         } catch (Exception e) {
             plugin.getLogger().warning("获取余额失败: " + e.getMessage());
             return 0;
@@ -123,16 +284,22 @@ public class EconomyManager {
         if (!enabled) return false;
         if (amount <= 0) return true;
         try {
+            xconomyCalls.incrementAndGet();
             BigDecimal bal = xconomyAPI.getPlayerData(player.getUniqueId()).getBalance();
             if (bal.compareTo(BigDecimal.valueOf(amount)) < 0) {
+                balanceCache.putBalance(player.getUniqueId(), bal.doubleValue());
                 return false;
             }
+            xconomyCalls.incrementAndGet();
             int result = xconomyAPI.changePlayerBalance(
                 player.getUniqueId(),
                 player.getName(),
                 BigDecimal.valueOf(amount),
                 false
             );
+            if (result == 0) {
+                balanceCache.putBalance(player.getUniqueId(), bal.doubleValue() - amount);
+            }
             return result == 0;
         } catch (Exception e) {
             plugin.getLogger().warning("扣除金钱失败: " + e.getMessage());
@@ -144,12 +311,16 @@ public class EconomyManager {
         if (!enabled) return false;
         if (amount <= 0) return true;
         try {
+            xconomyCalls.incrementAndGet();
             int result = xconomyAPI.changePlayerBalance(
                 player.getUniqueId(),
                 player.getName(),
                 BigDecimal.valueOf(amount),
                 true
             );
+            if (result == 0) {
+                balanceCache.adjustBalance(player.getUniqueId(), amount);
+            }
             return result == 0;
         } catch (Exception e) {
             plugin.getLogger().warning("给予金钱失败: " + e.getMessage());
@@ -159,7 +330,9 @@ public class EconomyManager {
 
     private boolean hasEnoughSync(Player player, double amount) {
         if (!enabled || amount <= 0) return true;
-        return getBalanceSync(player) >= amount;
+        // 缓存只用于判断足够；显示不足时重新查询，避免外部存入后在有效期内被误判
+        Double cached = balanceCache.getBalance(player.getUniqueId());
+        return (cached != null && cached >= amount) || getBalanceSync(player) >= amount;
     }
 
     // ==================== 同步方法（供主线程直接调用） ====================
@@ -187,7 +360,7 @@ public class EconomyManager {
     }
 
     public void getBalanceAsync(Player player, Consumer<Double> callback, Consumer<Exception> errorCallback) {
-        submitTask(TaskType.GET_BALANCE, player, 0, callback, errorCallback);
+        submitTask(OperationType.GET_BALANCE, player, 0, callback, errorCallback);
     }
 
     public void withdrawAsync(Player player, double amount, Consumer<Boolean> callback) {
@@ -195,7 +368,7 @@ public class EconomyManager {
     }
 
     public void withdrawAsync(Player player, double amount, Consumer<Boolean> callback, Consumer<Exception> errorCallback) {
-        submitTask(TaskType.WITHDRAW, player, amount, callback, errorCallback);
+        submitTask(OperationType.WITHDRAW, player, amount, callback, errorCallback);
     }
 
     public void depositAsync(Player player, double amount, Consumer<Boolean> callback) {
@@ -203,7 +376,7 @@ public class EconomyManager {
     }
 
     public void depositAsync(Player player, double amount, Consumer<Boolean> callback, Consumer<Exception> errorCallback) {
-        submitTask(TaskType.DEPOSIT, player, amount, callback, errorCallback);
+        submitTask(OperationType.DEPOSIT, player, amount, callback, errorCallback);
     }
 
     public void hasEnoughAsync(Player player, double amount, Consumer<Boolean> callback) {
@@ -211,24 +384,149 @@ public class EconomyManager {
     }
 
     public void hasEnoughAsync(Player player, double amount, Consumer<Boolean> callback, Consumer<Exception> errorCallback) {
-        submitTask(TaskType.HAS_ENOUGH, player, amount, callback, errorCallback);
+        // 缓存显示足够时不经过经济队列，回调仍在玩家所在区域线程执行
+        if (isEnoughCached(player, amount)) {
+            FoliaExecutors.entity(plugin, player).execute(() -> callback.accept(true));
+            return;
+        }
+        submitTask(OperationType.HAS_ENOUGH, player, amount, callback, errorCallback);
+    }
+
+    // ==================== 异步方法（返回 Future，在经济线程上完成） ====================
+
+    public CompletableFuture<Double> getBalanceAsync(Player player) {
+        return submitFuture(OperationType.GET_BALANCE, player, 0);
+    }
+
+    public CompletableFuture<Boolean> withdrawAsync(Player player, double amount) {
+        return submitFuture(OperationType.WITHDRAW, player, amount);
+    }
+
+    public CompletableFuture<Boolean> depositAsync(Player player, double amount) {
+        return submitFuture(OperationType.DEPOSIT, player, amount);
+    }
+
+    public CompletableFuture<Boolean> hasEnoughAsync(Player player, double amount) {
+        if (isEnoughCached(player, amount)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return submitFuture(OperationType.HAS_ENOUGH, player, amount);
+    }
+
+    /**
+     * 缓存的余额是否足够（缓存无效或显示不足时返回 false，需要排队查询实际余额，不凭缓存判定不足）
+     */
+    private boolean isEnoughCached(Player player, double amount) {
+        if (!enabled || amount <= 0) return true;
+        Double cached = balanceCache.getBalance(player.getUniqueId());
+        return cached != null && cached >= amount;
+    }
+
+    // ==================== 批量操作 ====================
+
+    /**
+     * 一次提交多个操作（可以是不同玩家），在经济线程的同一轮中执行（超过单轮上限时分多轮）
+     * 同一玩家的连续存款会被合并为一次调用；单个操作出错时该操作的结果为失败，不影响其他操作
+     * @return 与输入顺序对应的结果，在经济线程完成；队列已关闭时以异常完成
+     */
+    public CompletableFuture<List<OperationResult>> submitBatch(List<Operation> operations) {
+        if (!running) {
+            plugin.getLogger().warning("经济队列已关闭，无法提交 " + operations.size() + " 个批量任务");
+            return CompletableFuture.failedFuture(new IllegalStateException("经济队列不可用"));
+        }
+
+        List<CompletableFuture<OperationResult>> results = new ArrayList<>(operations.size());
+        List<EconomyTask<?>> tasks = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            tasks.add(new EconomyTask<>(operation.type(), operation.player(), operation.amount(), null, null, future));
+            results.add(future.handle((value, error) -> error != null
+                ? new OperationResult(false, 0) : OperationResult.of(value)));
+        }
+        // 无界队列，一次性加入，经济线程取出时通常在同一批中
+        taskQueue.addAll(tasks);
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+            .thenApply(v -> results.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * 批量操作中的单个操作
+     */
+    public record Operation(OperationType type, Player player, double amount) {
+        public static Operation balance(Player player) {
+            return new Operation(OperationType.GET_BALANCE, player, 0);
+        }
+
+        public static Operation hasEnough(Player player, double amount) {
+            return new Operation(OperationType.HAS_ENOUGH, player, amount);
+        }
+
+        public static Operation withdraw(Player player, double amount) {
+            return new Operation(OperationType.WITHDRAW, player, amount);
+        }
+
+        public static Operation deposit(Player player, double amount) {
+            return new Operation(OperationType.DEPOSIT, player, amount);
+        }
+    }
+
+    /**
+     * 单个操作的结果
+     * @param success 扣款/存款是否成功，余额是否足够（查询余额时为 true）；操作出错时为 false
+     * @param balance 查询余额的结果（其他操作为 0）
+     */
+    public record OperationResult(boolean success, double balance) {
+        private static OperationResult of(Object value) {
+            if (value instanceof Double balance) {
+                return new OperationResult(true, balance);
+            }
+            return new OperationResult(Boolean.TRUE.equals(value), 0);
+        }
+    }
+
+    // ==================== 统计 ====================
+
+    public Stats getStats() {
+        long completed = completedOperations.get();
+        double avgLatencyMillis = completed == 0 ? 0 : totalLatencyNanos.get() / 1_000_000.0 / completed;
+        return new Stats(taskQueue.size(), completed, batchCount.get(), coalescedOperations.get(), xconomyCalls.get(),
+            avgLatencyMillis, maxLatencyNanos.get() / 1_000_000.0);
+    }
+
+    /**
+     * 经济队列统计信息（延迟为提交到完成的时间）
+     */
+    public record Stats(int queueDepth, long completedOperations, long batchCount, long coalescedOperations,
+                        long xconomyCalls, double avgLatencyMillis, double maxLatencyMillis) {
     }
 
     // ==================== 内部辅助方法 ====================
 
-    @SuppressWarnings("unchecked")
-    private <T> void submitTask(TaskType type, Player player, double amount, Consumer<T> callback, Consumer<Exception> errorCallback) {
+    private <T> void submitTask(OperationType type, Player player, double amount, Consumer<T> callback, Consumer<Exception> errorCallback) {
+        enqueue(new EconomyTask<>(type, player, amount, callback, errorCallback, null));
+    }
+
+    private <T> CompletableFuture<T> submitFuture(OperationType type, Player player, double amount) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!enqueue(new EconomyTask<>(type, player, amount, null, null, future))) {
+            future.completeExceptionally(new IllegalStateException("经济队列不可用: " + type));
+        }
+        return future;
+    }
+
+    private boolean enqueue(EconomyTask<?> task) {
         if (!running) {
-            plugin.getLogger().warning("经济队列已关闭，无法提交任务: " + type);
-            return;
+            plugin.getLogger().warning("经济队列已关闭，无法提交任务: " + task.getType());
+            return false;
         }
 
-        EconomyTask<T> task = new EconomyTask<>(type, player, amount, callback, errorCallback);
         try {
-            taskQueue.offer(task, 5, TimeUnit.SECONDS);
+            return taskQueue.offer(task, 5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            plugin.getLogger().warning("提交经济任务被中断: " + type);
+            plugin.getLogger().warning("提交经济任务被中断: " + task.getType());
+            return false;
         }
     }
 
@@ -241,7 +539,7 @@ public class EconomyManager {
 
     // ==================== 内部类和枚举 ====================
 
-    private enum TaskType {
+    public enum OperationType {
         GET_BALANCE,
         HAS_ENOUGH,
         WITHDRAW,
@@ -249,24 +547,30 @@ public class EconomyManager {
     }
 
     private static class EconomyTask<T> {
-        private final TaskType type;
+        private final OperationType type;
         private final Player player;
         private final double amount;
         private final Consumer<T> callback;
         private final Consumer<Exception> errorCallback;
+        private final CompletableFuture<T> future;
+        private final long enqueueTime = System.nanoTime();
 
-        public EconomyTask(TaskType type, Player player, double amount, Consumer<T> callback, Consumer<Exception> errorCallback) {
+        public EconomyTask(OperationType type, Player player, double amount, Consumer<T> callback,
+                           Consumer<Exception> errorCallback, CompletableFuture<T> future) {
             this.type = type;
             this.player = player;
             this.amount = amount;
             this.callback = callback;
             this.errorCallback = errorCallback;
+            this.future = future;
         }
 
-        public TaskType getType() { return type; }
+        public OperationType getType() { return type; }
         public Player getPlayer() { return player; }
         public double getAmount() { return amount; }
         public Consumer<T> getCallback() { return callback; }
         public Consumer<Exception> getErrorCallback() { return errorCallback; }
+        public CompletableFuture<T> getFuture() { return future; }
+        public long getEnqueueTime() { return enqueueTime; }
     }
 }
@@ -0,0 +1,30 @@
+package dev.user.shop.economy;
+
+import org.black_ixx.playerpoints.event.PlayerPointsChangeEvent;
+import org.black_ixx.playerpoints.event.PlayerPointsResetEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+/**
+ * PlayerPoints 点数变化监听器 - 点数被修改时使缓存失效
+ * 只在 PlayerPoints 可用时注册（引用了 PlayerPoints 的事件类）
+ */
+public class PlayerPointsCacheListener implements Listener {
+
+    private final BalanceCache balanceCache;
+
+    public PlayerPointsCacheListener(BalanceCache balanceCache) {
+        this.balanceCache = balanceCache;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPointsChange(PlayerPointsChangeEvent event) {
+        balanceCache.invalidatePoints(event.getPlayerId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPointsReset(PlayerPointsResetEvent event) {
+        balanceCache.invalidatePoints(event.getPlayerId());
+    }
+}
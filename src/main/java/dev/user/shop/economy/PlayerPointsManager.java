@@ -1,25 +1,55 @@
 package dev.user.shop.economy;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.util.FoliaExecutors;
 import org.black_ixx.playerpoints.PlayerPoints;
 import org.black_ixx.playerpoints.PlayerPointsAPI;
 import org.bukkit.entity.Player;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * PlayerPoints 点数管理器（软依赖）
  * 处理 PlayerPoints 插件的点数操作
+ * 查询和修改结果写入 {@link BalanceCache}，点数检查在缓存有效时不再查询 PlayerPoints
  */
 public class PlayerPointsManager {
 
     private final FoliaShopPlugin plugin;
+    private final BalanceCache balanceCache;
     private PlayerPointsAPI playerPointsAPI;
     private boolean enabled = false;
 
+    // Future 方法使用的点数线程（PlayerPoints 的读写会访问其数据库，不占用区域线程）
+    private final ExecutorService executor;
+
     public PlayerPointsManager(FoliaShopPlugin plugin) {
         this.plugin = plugin;
+        this.balanceCache = plugin.getBalanceCache();
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "FoliaShop-Points-Queue");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+        }
     }
 
     /**
@@ -49,6 +79,8 @@ public class PlayerPointsManager {
             }
 
             this.enabled = true;
+            // 其他插件或指令修改点数时使缓存失效
+            plugin.getServer().getPluginManager().registerEvents(new PlayerPointsCacheListener(balanceCache), plugin);
             plugin.getLogger().info("已连接到 PlayerPoints 点数系统");
         } catch (Exception e) {
             plugin.getLogger().info("PlayerPoints 初始化失败: " + e.getMessage());
@@ -83,7 +115,9 @@ public class PlayerPointsManager {
     public int getPoints(UUID playerUuid) {
         if (!enabled || playerPointsAPI == null) return 0;
         try {
-            return playerPointsAPI.look(playerUuid);
+            int points = playerPointsAPI.look(playerUuid);
+            balanceCache.putPoints(playerUuid, points);
+            return points;
         } catch (Exception e) {
             plugin.getLogger().warning("获取点数余额失败: " + e.getMessage());
             return 0;
@@ -111,7 +145,11 @@ public class PlayerPointsManager {
         if (!enabled || playerPointsAPI == null) return false;
         if (amount <= 0) return true;
         try {
-            return playerPointsAPI.take(playerUuid, amount);
+            boolean success = playerPointsAPI.take(playerUuid, amount);
+            if (success) {
+                balanceCache.adjustPoints(playerUuid, -amount);
+            }
+            return success;
         } catch (Exception e) {
             plugin.getLogger().warning("扣除点数失败: " + e.getMessage());
             return false;
@@ -139,7 +177,11 @@ public class PlayerPointsManager {
         if (!enabled || playerPointsAPI == null) return false;
         if (amount <= 0) return true;
         try {
-            return playerPointsAPI.give(playerUuid, amount);
+            boolean success = playerPointsAPI.give(playerUuid, amount);
+            if (success) {
+                balanceCache.adjustPoints(playerUuid, amount);
+            }
+            return success;
         } catch (Exception e) {
             plugin.getLogger().warning("给予点数失败: " + e.getMessage());
             return false;
@@ -166,7 +208,11 @@ public class PlayerPointsManager {
     public boolean setPoints(UUID playerUuid, int amount) {
         if (!enabled || playerPointsAPI == null) return false;
         try {
-            return playerPointsAPI.set(playerUuid, amount);
+            boolean success = playerPointsAPI.set(playerUuid, amount);
+            if (success) {
+                balanceCache.putPoints(playerUuid, amount);
+            }
+            return success;
         } catch (Exception e) {
             plugin.getLogger().warning("设置点数失败: " + e.getMessage());
             return false;
@@ -191,7 +237,11 @@ public class PlayerPointsManager {
     public boolean resetPoints(UUID playerUuid) {
         if (!enabled || playerPointsAPI == null) return false;
         try {
-            return playerPointsAPI.reset(playerUuid);
+            boolean success = playerPointsAPI.reset(playerUuid);
+            if (success) {
+                balanceCache.putPoints(playerUuid, 0);
+            }
+            return success;
         } catch (Exception e) {
             plugin.getLogger().warning("重置点数失败: " + e.getMessage());
             return false;
@@ -221,7 +271,12 @@ public class PlayerPointsManager {
         if (!enabled || playerPointsAPI == null) return false;
         if (amount <= 0) return false;
         try {
-            return playerPointsAPI.pay(sourceUuid, targetUuid, amount);
+            boolean success = playerPointsAPI.pay(sourceUuid, targetUuid, amount);
+            if (success) {
+                balanceCache.adjustPoints(sourceUuid, -amount);
+                balanceCache.adjustPoints(targetUuid, amount);
+            }
+            return success;
         } catch (Exception e) {
             plugin.getLogger().warning("转账失败: " + e.getMessage());
             return false;
@@ -235,8 +290,7 @@ public class PlayerPointsManager {
      * @return 是否足够
      */
     public boolean hasEnoughPoints(Player player, int amount) {
-        if (!enabled || amount <= 0) return true;
-        return getPoints(player) >= amount;
+        return hasEnoughPoints(player.getUniqueId(), amount);
     }
 
     /**
@@ -247,7 +301,19 @@ public class PlayerPointsManager {
      */
     public boolean hasEnoughPoints(UUID playerUuid, int amount) {
         if (!enabled || amount <= 0) return true;
-        return getPoints(playerUuid) >= amount;
+        // 缓存只用于判断足够；显示不足时重新查询
+        Integer cached = balanceCache.getPoints(playerUuid);
+        return (cached != null && cached >= amount) || getPoints(playerUuid) >= amount;
+    }
+
+    /**
+     * 获取用于显示和预检查的点数：缓存有效时直接返回，否则查询一次并写入缓存（同步）
+     * 不能用于扣除判断，扣除时以 PlayerPoints 的余额为准
+     */
+    public int getCachedPoints(UUID playerUuid) {
+        if (!enabled || playerPointsAPI == null) return 0;
+        Integer cached = balanceCache.getPoints(playerUuid);
+        return cached != null ? cached : getPoints(playerUuid);
     }
 
     // ==================== 异步方法 ====================
@@ -273,20 +339,8 @@ public class PlayerPointsManager {
             return;
         }
 
-        // PlayerPoints 没有原生异步API，使用全局调度器
-        plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-            try {
-                int result = getPoints(player);
-                callback.accept(result);
-            } catch (Exception e) {
-                plugin.getLogger().warning("异步获取点数失败: " + e.getMessage());
-                if (errorCallback != null) {
-                    errorCallback.accept(e);
-                } else {
-                    callback.accept(0);
-                }
-            }
-        });
+        // PlayerPoints 没有原生异步API，在点数线程执行，结果回到玩家所在区域线程
+        deliver(player, getPointsAsync(player), callback, errorCallback, 0, "异步获取点数失败");
     }
 
     /**
@@ -316,26 +370,7 @@ public class PlayerPointsManager {
             return;
         }
 
-        plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-            try {
-                // 先检查余额
-                int balance = getPoints(player);
-                if (balance < amount) {
-                    callback.accept(false);
-                    return;
-                }
-                // 执行扣除
-                boolean result = takePoints(player, amount);
-                callback.accept(result);
-            } catch (Exception e) {
-                plugin.getLogger().warning("异步扣除点数失败: " + e.getMessage());
-                if (errorCallback != null) {
-                    errorCallback.accept(e);
-                } else {
-                    callback.accept(false);
-                }
-            }
-        });
+        deliver(player, takePointsAsync(player, amount), callback, errorCallback, false, "异步扣除点数失败");
     }
 
     /**
@@ -365,19 +400,7 @@ public class PlayerPointsManager {
             return;
         }
 
-        plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-            try {
-                boolean result = givePoints(player, amount);
-                callback.accept(result);
-            } catch (Exception e) {
-                plugin.getLogger().warning("异步给予点数失败: " + e.getMessage());
-                if (errorCallback != null) {
-                    errorCallback.accept(e);
-                } else {
-                    callback.accept(false);
-                }
-            }
-        });
+        deliver(player, givePointsAsync(player, amount), callback, errorCallback, false, "异步给予点数失败");
     }
 
     /**
@@ -403,19 +426,7 @@ public class PlayerPointsManager {
             return;
         }
 
-        plugin.getServer().getGlobalRegionScheduler().run(plugin, task -> {
-            try {
-                boolean result = setPoints(player, amount);
-                callback.accept(result);
-            } catch (Exception e) {
-                plugin.getLogger().warning("异步设置点数失败: " + e.getMessage());
-                if (errorCallback != null) {
-                    errorCallback.accept(e);
-                } else {
-                    callback.accept(false);
-                }
-            }
-        });
+        deliver(player, setPointsAsync(player, amount), callback, errorCallback, false, "异步设置点数失败");
     }
 
     /**
@@ -441,11 +452,98 @@ public class PlayerPointsManager {
             return;
         }
 
+        // 缓存显示足够时不经过点数线程，回调仍在玩家所在区域线程执行；显示不足时查询实际点数
+        Integer cached = balanceCache.getPoints(player.getUniqueId());
+        if (cached != null && cached >= amount) {
+            FoliaExecutors.entity(plugin, player).execute(() -> callback.accept(true));
+            return;
+        }
+
         getPointsAsync(player, balance -> {
             callback.accept(balance >= amount);
         }, errorCallback);
     }
 
+    // ==================== 异步方法（返回 Future，在点数线程上完成） ====================
+
+    /**
+     * 异步获取玩家点数余额
+     */
+    public CompletableFuture<Integer> getPointsAsync(Player player) {
+        if (!enabled) return CompletableFuture.completedFuture(0);
+        UUID playerUuid = player.getUniqueId();
+        return supply(() -> getPoints(playerUuid));
+    }
+
+    /**
+     * 异步扣除点数（余额不足时返回 false）
+     */
+    public CompletableFuture<Boolean> takePointsAsync(Player player, int amount) {
+        if (!enabled) return CompletableFuture.completedFuture(false);
+        if (amount <= 0) return CompletableFuture.completedFuture(true);
+        UUID playerUuid = player.getUniqueId();
+        return supply(() -> getPoints(playerUuid) >= amount && takePoints(playerUuid, amount));
+    }
+
+    /**
+     * 异步给予点数
+     */
+    public CompletableFuture<Boolean> givePointsAsync(Player player, int amount) {
+        if (!enabled) return CompletableFuture.completedFuture(false);
+        if (amount <= 0) return CompletableFuture.completedFuture(true);
+        UUID playerUuid = player.getUniqueId();
+        return supply(() -> givePoints(playerUuid, amount));
+    }
+
+    /**
+     * 异步检查是否足够点数
+     */
+    public CompletableFuture<Boolean> hasEnoughPointsAsync(Player player, int amount) {
+        if (!enabled || amount <= 0) return CompletableFuture.completedFuture(true);
+        Integer cached = balanceCache.getPoints(player.getUniqueId());
+        if (cached != null && cached >= amount) return CompletableFuture.completedFuture(true);
+        return getPointsAsync(player).thenApply(balance -> balance >= amount);
+    }
+
+    /**
+     * 异步设置点数
+     */
+    public CompletableFuture<Boolean> setPointsAsync(Player player, int amount) {
+        if (!enabled) return CompletableFuture.completedFuture(false);
+        UUID playerUuid = player.getUniqueId();
+        return supply(() -> setPoints(playerUuid, amount));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 将 Future 结果交给回调，回调在玩家所在区域线程执行（玩家已下线时在全局区域线程）
+     * 未提供错误回调时，出错以默认值调用成功回调
+     */
+    private <T> void deliver(Player player, CompletableFuture<T> future, Consumer<T> callback,
+                             Consumer<Exception> errorCallback, T fallback, String errorMessage) {
+        future.whenCompleteAsync((result, error) -> {
+            if (error == null) {
+                callback.accept(result);
+                return;
+            }
+
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            plugin.getLogger().warning(errorMessage + ": " + cause.getMessage());
+            if (errorCallback != null) {
+                errorCallback.accept(cause instanceof Exception e ? e : new Exception(cause));
+            } else {
+                callback.accept(fallback);
+            }
+        }, FoliaExecutors.entity(plugin, player));
+    }
+
     /**
      * 格式化点数显示（带千分位分隔符）
      * @param amount 点数数量
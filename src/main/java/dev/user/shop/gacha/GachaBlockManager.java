@@ -1,6 +1,7 @@
 package dev.user.shop.gacha;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.database.DatabaseQueue;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -266,7 +267,7 @@ public class GachaBlockManager {
      * @param callback 回调函数，参数为绑定列表
      */
     public void getAllBindings(Consumer<List<GachaBlockBinding>> callback) {
-        plugin.getDatabaseQueue().submit("getAllBindings", conn -> {
+        plugin.getDatabaseQueue().submit("getAllBindings", null, DatabaseQueue.Priority.INTERACTIVE_READ, conn -> {
             List<GachaBlockBinding> result = new ArrayList<>();
             try (Statement stmt = conn.createStatement();
                  ResultSet rs = stmt.executeQuery("SELECT * FROM gacha_block_bindings ORDER BY world_uuid, block_x, block_y, block_z")) {
@@ -287,7 +288,7 @@ public class GachaBlockManager {
      * @param callback 回调函数，参数为绑定列表
      */
     public void getBindingsByMachine(String machineId, Consumer<List<GachaBlockBinding>> callback) {
-        plugin.getDatabaseQueue().submit("getBindingsByMachine", conn -> {
+        plugin.getDatabaseQueue().submit("getBindingsByMachine", null, DatabaseQueue.Priority.INTERACTIVE_READ, conn -> {
             List<GachaBlockBinding> result = new ArrayList<>();
             try (PreparedStatement ps = conn.prepareStatement(
                     "SELECT * FROM gacha_block_bindings WHERE machine_id = ? ORDER BY world_uuid, block_x, block_y, block_z")) {
@@ -333,7 +334,7 @@ public class GachaBlockManager {
      * @param callback 回调函数，参数为绑定信息（可能为null）
      */
     public void getBinding(UUID worldUuid, BlockVector pos, Consumer<GachaBlockBinding> callback) {
-        plugin.getDatabaseQueue().submit("getBinding", conn -> {
+        plugin.getDatabaseQueue().submit("getBinding", null, DatabaseQueue.Priority.INTERACTIVE_READ, conn -> {
             try (PreparedStatement ps = conn.prepareStatement(
                     "SELECT * FROM gacha_block_bindings WHERE world_uuid = ? AND block_x = ? AND block_y = ? AND block_z = ?")) {
                 ps.setString(1, worldUuid.toString());
@@ -1,6 +1,7 @@
 package dev.user.shop.gacha;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.database.DatabaseQueue;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -511,7 +512,7 @@ public class GachaDisplayManager {
             }
 
             // 提交到数据库队列异步检查过时状态
-            plugin.getDatabaseQueue().submit("checkOutdated", conn -> {
+            plugin.getDatabaseQueue().submit("checkOutdated", null, DatabaseQueue.Priority.INTERACTIVE_READ, conn -> {
                 String sql = "SELECT outdated FROM gacha_block_bindings WHERE id = ?";
                 try (PreparedStatement ps = conn.prepareStatement(sql)) {
                     ps.setInt(1, bindingId);
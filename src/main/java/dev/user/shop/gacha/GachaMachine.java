@@ -1,14 +1,12 @@
 package dev.user.shop.gacha;
 
 import dev.user.shop.FoliaShopPlugin;
-import dev.user.shop.util.ItemUtil;
+import dev.user.shop.util.ItemPrototypeCache;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.*;
 
-import static dev.user.shop.util.ItemUtil.applyComponents;
-
 public class GachaMachine {
 
     private final String id;
@@ -300,13 +298,10 @@ public class GachaMachine {
     }
 
     public ItemStack createIconItem(FoliaShopPlugin plugin) {
-        ItemStack item = ItemUtil.createItemFromKey(plugin, icon);
+        ItemStack item = ItemPrototypeCache.create(plugin, icon, iconComponents);
         if (item == null) {
             item = new ItemStack(Material.CHEST);
         }
-        if (iconComponents != null && !iconComponents.isEmpty()) {
-            item = applyComponents(item, iconComponents);
-        }
         return item;
     }
 
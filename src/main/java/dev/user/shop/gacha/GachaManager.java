@@ -1,8 +1,12 @@
 package dev.user.shop.gacha;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.database.DatabaseQueue;
+import dev.user.shop.util.FoliaExecutors;
+import dev.user.shop.util.ItemPrototypeCache;
 import dev.user.shop.util.ItemUtil;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.Map;
@@ -12,6 +16,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 public class GachaManager {
@@ -98,13 +103,8 @@ public class GachaManager {
                 // 直接从 rewardMap 获取 components（getMapList 已经把 YAML 列表项转为 Map）
                 Map<String, String> rewardComponents = ItemUtil.parseComponents(rewardMap.get("components"));
 
-                // 创建显示物品并应用 NBT 组件
-                ItemStack item = ItemUtil.createItemFromKey(plugin, itemKey);
-                if (item != null) {
-                    if (!rewardComponents.isEmpty()) {
-                        item = ItemUtil.applyComponents(item, rewardComponents);
-                    }
-                }
+                // 创建显示物品并应用 NBT 组件（相同物品和组件只构建一次）
+                ItemStack item = ItemPrototypeCache.create(plugin, itemKey, rewardComponents);
 
                 GachaReward reward = new GachaReward(id, itemKey, amount, probability, displayName, broadcast, rewardComponents);
                 if (item != null) {
@@ -134,155 +134,163 @@ public class GachaManager {
      * 记录扭蛋抽奖
      */
     public void logGacha(UUID playerUuid, String playerName, String machineId, GachaReward reward, double cost) {
-        plugin.getDatabaseQueue().submit("logGacha", conn -> {
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "INSERT INTO gacha_records (player_uuid, player_name, machine_id, reward_id, item_key, amount, cost, timestamp) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
-                ps.setString(1, playerUuid.toString());
-                ps.setString(2, playerName);
-                ps.setString(3, machineId);
-                ps.setString(4, reward.getId());
-                ps.setString(5, reward.getItemKey());
-                ps.setInt(6, reward.getAmount());
-                ps.setDouble(7, cost);
-                ps.setLong(8, System.currentTimeMillis());
-                ps.executeUpdate();
-            }
-            return null;
-        });
+        // 扭蛋记录只追加，交给批量写入器合并写入
+        plugin.getLogWriter().appendGacha(playerUuid, playerName, machineId,
+            reward.getId(), reward.getItemKey(), reward.getAmount(), cost);
     }
 
     /**
      * 执行10连抽（带软保底计算）
+     * 保底计数读取、历史记录查询、抽奖计算和保底计数更新在玩家的数据库通道上作为一个任务完成，
+     * 不会与该玩家的其他抽奖交错
      * @param machine 扭蛋机
-     * @param pityCount 当前保底计数
-     * @param playerUuid 玩家UUID（用于查询历史记录）
-     * @param callback 回调函数，返回结果
+     * @param playerUuid 玩家UUID（用于查询保底计数和历史记录）
+     * @return 抽奖结果（在数据库线程上完成，数据库出错时异常完成，调用方负责退款）
      */
-    public void performTenGacha(GachaMachine machine, int pityCount, UUID playerUuid,
-                                Consumer<TenGachaResult> callback) {
-        // 先查询每个奖品的历史记录，用于计算显示次数
-        queryRewardHistories(playerUuid, machine.getId(), machine.getRewards(), histories -> {
-            List<GachaReward> rewards = new ArrayList<>();
-            Map<String, Integer> rewardDrawCounts = new HashMap<>();
-            int finalPityCount = pityCount;
-            int triggeredCount = 0;
-
-            // 用于跟踪本次十连抽中每个奖品已经抽到的次数
-            Map<String, Integer> rewardOccurrencesInBatch = new HashMap<>();
-
-            for (int i = 0; i < 10; i++) {
-                // 使用软保底抽奖
-                GachaMachine.PityResult result = machine.rollWithPity(finalPityCount);
-                GachaReward reward = result.reward();
-                String rewardId = reward.getId();
-
-                // 计算显示次数
-                int occurrenceInBatch = rewardOccurrencesInBatch.getOrDefault(rewardId, 0);
-                int drawCount;
-
-                if (occurrenceInBatch == 0) {
-                    // 第一次抽到该奖品，使用历史记录
-                    int historyCount = histories.getOrDefault(rewardId, 0);
-                    drawCount = historyCount + 1;  // +1 表示第N抽才抽到
-                } else {
-                    // 本次十连抽中已经抽到过，显示1抽（因为是本次中的）
-                    drawCount = 1;
-                }
+    public CompletableFuture<TenGachaResult> performTenGacha(GachaMachine machine, UUID playerUuid) {
+        long watermark = plugin.getLogWriter().currentSequence();
+        return plugin.getDatabaseQueue().submitAsync("performTenGacha", playerUuid, conn -> {
+            plugin.getLogWriter().flushUpTo(conn, watermark);
 
-                rewardDrawCounts.put(String.valueOf(i), drawCount);
-                rewardOccurrencesInBatch.put(rewardId, occurrenceInBatch + 1);
+            int pityCount = readPityCount(conn, playerUuid, machine.getId());
+            Map<String, Integer> histories = queryRewardHistories(conn, playerUuid, machine.getId(), machine.getRewards());
 
-                // 更新保底计数
-                if (machine.isPityTarget(reward)) {
-                    finalPityCount = 0;
-                    if (result.isPityTriggered()) {
-                        triggeredCount++;
-                    }
-                } else {
-                    finalPityCount++;
-                }
+            TenGachaResult result = rollTen(machine, pityCount, histories);
+
+            // 在同一任务内更新保底计数，确保后续抽奖基于最新状态
+            writePityCount(conn, playerUuid, machine.getId(), result.finalPityCount());
+            return result;
+        });
+    }
+
+    /**
+     * 十连抽失败（数据库出错）时退还费用并通知玩家
+     */
+    public void refundTenGacha(Player player, double totalCost, Throwable error) {
+        plugin.getLogger().warning("十连抽失败，退还 " + String.format("%.2f", totalCost) + " 给玩家 "
+            + player.getName() + ": " + error.getMessage());
+        plugin.getEconomyManager().depositAsync(player, totalCost)
+            .exceptionally(depositError -> {
+                plugin.getLogger().warning("十连抽退款失败: " + player.getName() + " " + String.format("%.2f", totalCost)
+                    + " - " + depositError.getMessage());
+                return false;
+            })
+            .thenAcceptAsync(refunded -> {
+                if (!refunded || !player.isOnline()) return;
+                player.sendMessage(plugin.getShopConfig().getComponent("gacha-cancelled",
+                    Map.of("amount", String.format("%.2f", totalCost),
+                           "currency", plugin.getShopConfig().getCurrencyName())));
+            }, FoliaExecutors.entity(plugin, player));
+    }
 
-                rewards.add(reward);
+    /**
+     * 按当前保底计数连抽10次
+     */
+    private TenGachaResult rollTen(GachaMachine machine, int pityCount, Map<String, Integer> histories) {
+        List<GachaReward> rewards = new ArrayList<>();
+        Map<String, Integer> rewardDrawCounts = new HashMap<>();
+        int finalPityCount = pityCount;
+        int triggeredCount = 0;
+
+        // 用于跟踪本次十连抽中每个奖品已经抽到的次数
+        Map<String, Integer> rewardOccurrencesInBatch = new HashMap<>();
+
+        for (int i = 0; i < 10; i++) {
+            // 使用软保底抽奖
+            GachaMachine.PityResult result = machine.rollWithPity(finalPityCount);
+            GachaReward reward = result.reward();
+            String rewardId = reward.getId();
+
+            // 计算显示次数
+            int occurrenceInBatch = rewardOccurrencesInBatch.getOrDefault(rewardId, 0);
+            int drawCount;
+
+            if (occurrenceInBatch == 0) {
+                // 第一次抽到该奖品，使用历史记录
+                int historyCount = histories.getOrDefault(rewardId, 0);
+                drawCount = historyCount + 1;  // +1 表示第N抽才抽到
+            } else {
+                // 本次十连抽中已经抽到过，显示1抽（因为是本次中的）
+                drawCount = 1;
             }
 
-            // 立即更新数据库中的保底计数，确保后续抽奖基于最新状态
-            batchUpdatePityCount(playerUuid, machine.getId(), finalPityCount);
+            rewardDrawCounts.put(String.valueOf(i), drawCount);
+            rewardOccurrencesInBatch.put(rewardId, occurrenceInBatch + 1);
 
-            callback.accept(new TenGachaResult(rewards, finalPityCount, triggeredCount, rewardDrawCounts));
-        });
+            // 更新保底计数
+            if (machine.isPityTarget(reward)) {
+                finalPityCount = 0;
+                if (result.isPityTriggered()) {
+                    triggeredCount++;
+                }
+            } else {
+                finalPityCount++;
+            }
+
+            rewards.add(reward);
+        }
+
+        return new TenGachaResult(rewards, finalPityCount, triggeredCount, rewardDrawCounts);
     }
 
     /**
-     * 查询玩家对每个奖品的历史抽奖次数（距离上次抽到的次数）
+     * 查询玩家对每个奖品的历史抽奖次数（距离上次抽到的次数，在数据库线程上调用）
      */
-    private void queryRewardHistories(UUID playerUuid, String machineId, List<GachaReward> rewards,
-                                      Consumer<Map<String, Integer>> callback) {
+    private Map<String, Integer> queryRewardHistories(Connection conn, UUID playerUuid, String machineId,
+                                                      List<GachaReward> rewards) {
         Map<String, Integer> histories = new HashMap<>();
+        for (GachaReward reward : rewards) {
+            try {
+                // 查询上次抽到该奖品的时间
+                Long lastTime = null;
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT timestamp FROM gacha_records " +
+                        "WHERE player_uuid = ? AND machine_id = ? AND reward_id = ? " +
+                        "ORDER BY timestamp DESC, id DESC LIMIT 1")) {
+                    ps.setString(1, playerUuid.toString());
+                    ps.setString(2, machineId);
+                    ps.setString(3, reward.getId());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            lastTime = rs.getLong("timestamp");
+                        }
+                    }
+                }
 
-        if (rewards.isEmpty()) {
-            callback.accept(histories);
-            return;
-        }
-
-        // 批量查询每个奖品的历史
-        plugin.getDatabaseQueue().submit("queryRewardHistories", conn -> {
-            for (GachaReward reward : rewards) {
-                try {
-                    // 查询上次抽到该奖品的时间
-                    Long lastTime = null;
+                // 统计从那时到现在抽了多少次
+                if (lastTime == null) {
+                    // 第一次抽到，查询总次数
                     try (PreparedStatement ps = conn.prepareStatement(
-                            "SELECT timestamp FROM gacha_records " +
-                            "WHERE player_uuid = ? AND machine_id = ? AND reward_id = ? " +
-                            "ORDER BY timestamp DESC, id DESC LIMIT 1")) {
+                            "SELECT COUNT(*) as count FROM gacha_records " +
+                            "WHERE player_uuid = ? AND machine_id = ?")) {
                         ps.setString(1, playerUuid.toString());
                         ps.setString(2, machineId);
-                        ps.setString(3, reward.getId());
                         try (ResultSet rs = ps.executeQuery()) {
                             if (rs.next()) {
-                                lastTime = rs.getLong("timestamp");
+                                histories.put(reward.getId(), rs.getInt("count"));
                             }
                         }
                     }
-
-                    // 统计从那时到现在抽了多少次
-                    if (lastTime == null) {
-                        // 第一次抽到，查询总次数
-                        try (PreparedStatement ps = conn.prepareStatement(
-                                "SELECT COUNT(*) as count FROM gacha_records " +
-                                "WHERE player_uuid = ? AND machine_id = ?")) {
-                            ps.setString(1, playerUuid.toString());
-                            ps.setString(2, machineId);
-                            try (ResultSet rs = ps.executeQuery()) {
-                                if (rs.next()) {
-                                    histories.put(reward.getId(), rs.getInt("count"));
-                                }
-                            }
-                        }
-                    } else {
-                        // 有记录，统计间隔
-                        try (PreparedStatement ps = conn.prepareStatement(
-                                "SELECT COUNT(*) as count FROM gacha_records " +
-                                "WHERE player_uuid = ? AND machine_id = ? AND timestamp > ?")) {
-                            ps.setString(1, playerUuid.toString());
-                            ps.setString(2, machineId);
-                            ps.setLong(3, lastTime);
-                            try (ResultSet rs = ps.executeQuery()) {
-                                if (rs.next()) {
-                                    histories.put(reward.getId(), rs.getInt("count"));
-                                }
+                } else {
+                    // 有记录，统计间隔
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "SELECT COUNT(*) as count FROM gacha_records " +
+                            "WHERE player_uuid = ? AND machine_id = ? AND timestamp > ?")) {
+                        ps.setString(1, playerUuid.toString());
+                        ps.setString(2, machineId);
+                        ps.setLong(3, lastTime);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            if (rs.next()) {
+                                histories.put(reward.getId(), rs.getInt("count"));
                             }
                         }
                     }
-                } catch (SQLException e) {
-                    plugin.getLogger().warning("查询奖品历史失败: " + reward.getId() + " - " + e.getMessage());
                 }
+            } catch (SQLException e) {
+                plugin.getLogger().warning("查询奖品历史失败: " + reward.getId() + " - " + e.getMessage());
             }
-            return histories;
-        }, callback, error -> {
-            plugin.getLogger().warning("批量查询奖品历史失败: " + error.getMessage());
-            callback.accept(histories);
-        });
+        }
+        return histories;
     }
 
     /**
@@ -318,22 +326,33 @@ public class GachaManager {
      * @return 当前保底计数，如果没有记录返回0
      */
     public void getPityCount(UUID playerUuid, String machineId, Consumer<Integer> callback) {
-        plugin.getDatabaseQueue().submit("getPityCount", conn -> {
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "SELECT draw_count FROM gacha_pity WHERE player_uuid = ? AND machine_id = ?")) {
-                ps.setString(1, playerUuid.toString());
-                ps.setString(2, machineId);
-                try (ResultSet rs = ps.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getInt("draw_count");
-                    }
+        getPityCount(playerUuid, machineId).thenAcceptAsync(callback, FoliaExecutors.player(plugin, playerUuid));
+    }
+
+    /**
+     * 获取玩家的保底计数（在数据库线程上完成，查询失败时返回0）
+     */
+    public CompletableFuture<Integer> getPityCount(UUID playerUuid, String machineId) {
+        return plugin.getDatabaseQueue().submitAsync("getPityCount", playerUuid,
+                conn -> readPityCount(conn, playerUuid, machineId))
+            .exceptionally(error -> {
+                plugin.getLogger().warning("获取保底计数失败: " + error.getMessage());
+                return 0;
+            });
+    }
+
+    private int readPityCount(Connection conn, UUID playerUuid, String machineId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT draw_count FROM gacha_pity WHERE player_uuid = ? AND machine_id = ?")) {
+            ps.setString(1, playerUuid.toString());
+            ps.setString(2, machineId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt("draw_count");
                 }
             }
-            return 0;
-        }, callback, error -> {
-            plugin.getLogger().warning("获取保底计数失败: " + error.getMessage());
-            callback.accept(0);
-        });
+        }
+        return 0;
     }
 
     /**
@@ -341,7 +360,7 @@ public class GachaManager {
      * @param isPityTarget 是否抽中了保底目标奖品
      */
     public void updatePityCount(UUID playerUuid, String machineId, boolean isPityTarget) {
-        plugin.getDatabaseQueue().submit("updatePityCount", conn -> {
+        plugin.getDatabaseQueue().submit("updatePityCount", playerUuid, conn -> {
             boolean isMySQL = plugin.getDatabaseManager().isMySQL();
             long currentTime = System.currentTimeMillis();
 
@@ -411,47 +430,47 @@ public class GachaManager {
     }
 
     /**
-     * 批量更新保底计数（用于10连抽）
+     * 写入保底计数（用于10连抽，在数据库线程上调用）
      * @param finalPityCount 最终保底计数
      */
-    public void batchUpdatePityCount(UUID playerUuid, String machineId, int finalPityCount) {
-        plugin.getDatabaseQueue().submit("batchUpdatePityCount", conn -> {
-            boolean isMySQL = plugin.getDatabaseManager().isMySQL();
-            long currentTime = System.currentTimeMillis();
-
-            if (isMySQL) {
-                String sql = "INSERT INTO gacha_pity (player_uuid, machine_id, draw_count, last_draw_time) " +
-                             "VALUES (?, ?, ?, ?) " +
-                             "ON DUPLICATE KEY UPDATE draw_count = ?, last_draw_time = ?";
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setString(1, playerUuid.toString());
-                    ps.setString(2, machineId);
-                    ps.setInt(3, finalPityCount);
-                    ps.setLong(4, currentTime);
-                    ps.setInt(5, finalPityCount);
-                    ps.setLong(6, currentTime);
-                    ps.executeUpdate();
-                }
-            } else {
-                String sql = "MERGE INTO gacha_pity KEY(player_uuid, machine_id) " +
-                             "VALUES (?, ?, ?, ?)";
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setString(1, playerUuid.toString());
-                    ps.setString(2, machineId);
-                    ps.setInt(3, finalPityCount);
-                    ps.setLong(4, currentTime);
-                    ps.executeUpdate();
-                }
+    private void writePityCount(Connection conn, UUID playerUuid, String machineId, int finalPityCount) throws SQLException {
+        boolean isMySQL = plugin.getDatabaseManager().isMySQL();
+        long currentTime = System.currentTimeMillis();
+
+        if (isMySQL) {
+            String sql = "INSERT INTO gacha_pity (player_uuid, machine_id, draw_count, last_draw_time) " +
+                         "VALUES (?, ?, ?, ?) " +
+                         "ON DUPLICATE KEY UPDATE draw_count = ?, last_draw_time = ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, playerUuid.toString());
+                ps.setString(2, machineId);
+                ps.setInt(3, finalPityCount);
+                ps.setLong(4, currentTime);
+                ps.setInt(5, finalPityCount);
+                ps.setLong(6, currentTime);
+                ps.executeUpdate();
             }
-            return null;
-        });
+        } else {
+            String sql = "MERGE INTO gacha_pity KEY(player_uuid, machine_id) " +
+                         "VALUES (?, ?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, playerUuid.toString());
+                ps.setString(2, machineId);
+                ps.setInt(3, finalPityCount);
+                ps.setLong(4, currentTime);
+                ps.executeUpdate();
+            }
+        }
     }
 
     /**
      * 获取玩家的抽奖记录（最近20次）
      */
     public void getPlayerGachaRecords(UUID playerUuid, Consumer<List<GachaRecord>> callback) {
-        plugin.getDatabaseQueue().submit("getGachaRecords", conn -> {
+        long watermark = plugin.getLogWriter().currentSequence();
+        plugin.getDatabaseQueue().submit("getGachaRecords", playerUuid, DatabaseQueue.Priority.INTERACTIVE_READ, conn -> {
+            plugin.getLogWriter().flushUpTo(conn, watermark);
+
             List<GachaRecord> records = new ArrayList<>();
             try (PreparedStatement ps = conn.prepareStatement(
                     "SELECT * FROM gacha_records WHERE player_uuid = ? ORDER BY timestamp DESC LIMIT 20")) {
@@ -519,7 +538,10 @@ public class GachaManager {
      */
     public void getDrawsSinceLastReward(UUID playerUuid, String machineId, String rewardId,
                                         java.util.function.Consumer<Integer> callback) {
-        plugin.getDatabaseQueue().submit("getDrawsSinceLastReward", conn -> {
+        long watermark = plugin.getLogWriter().currentSequence();
+        plugin.getDatabaseQueue().submit("getDrawsSinceLastReward", playerUuid, DatabaseQueue.Priority.INTERACTIVE_READ, conn -> {
+            plugin.getLogWriter().flushUpTo(conn, watermark);
+
             // 1. 查询上次抽到该奖品的时间
             Long lastTime = null;
             try (PreparedStatement ps = conn.prepareStatement(
@@ -582,7 +604,10 @@ public class GachaManager {
      */
     public void getRewardStats(UUID playerUuid, String machineId, String rewardId,
                                java.util.function.Consumer<StatsResult> callback) {
-        plugin.getDatabaseQueue().submit("getRewardStats", conn -> {
+        long watermark = plugin.getLogWriter().currentSequence();
+        plugin.getDatabaseQueue().submit("getRewardStats", playerUuid, DatabaseQueue.Priority.INTERACTIVE_READ, conn -> {
+            plugin.getLogWriter().flushUpTo(conn, watermark);
+
             int totalDraws = 0;
             int hitCount = 0;
 
@@ -665,7 +690,7 @@ public class GachaManager {
     public void cleanupOldRecords(int days, java.util.function.Consumer<Integer> callback) {
         long cutoffTime = System.currentTimeMillis() - (days * 24L * 60L * 60L * 1000L);
 
-        plugin.getDatabaseQueue().submit("cleanupGachaRecords", conn -> {
+        plugin.getDatabaseQueue().submit("cleanupGachaRecords", null, DatabaseQueue.Priority.BACKGROUND, conn -> {
             int deleted = 0;
             try (PreparedStatement ps = conn.prepareStatement(
                     "DELETE FROM gacha_records WHERE timestamp < ?")) {
@@ -2,6 +2,7 @@ package dev.user.shop.gui;
 
 import dev.user.shop.FoliaShopPlugin;
 import dev.user.shop.gacha.GachaManager;
+import dev.user.shop.util.FoliaExecutors;
 import dev.user.shop.util.ItemUtil;
 import dev.user.shop.util.MessageUtil;
 import org.bukkit.Material;
@@ -52,8 +53,8 @@ public class GachaHistoryGUI extends AbstractGUI {
 
     private void loadRecords() {
         plugin.getGachaManager().getPlayerGachaRecords(player.getUniqueId(), records -> {
-            // 回调可能在异步线程，需要切换到主线程更新GUI
-            plugin.getServer().getGlobalRegionScheduler().execute(plugin, () -> {
+            // 切换到玩家所在区域线程更新GUI
+            FoliaExecutors.entity(plugin, player).execute(() -> {
                 if (!player.isOnline() || player.getOpenInventory().getTopInventory() != inventory) {
                     return;
                 }
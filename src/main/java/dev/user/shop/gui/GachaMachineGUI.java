@@ -2,6 +2,7 @@ package dev.user.shop.gui;
 
 import dev.user.shop.FoliaShopPlugin;
 import dev.user.shop.gacha.GachaMachine;
+import dev.user.shop.util.FoliaExecutors;
 import dev.user.shop.util.ItemUtil;
 import dev.user.shop.util.MessageUtil;
 import org.bukkit.Material;
@@ -93,24 +94,25 @@ public class GachaMachineGUI extends AbstractGUI {
         double cost = machine.getCost();
 
         executeGachaWithPayment(player, cost, () -> {
-            // 获取保底计数并抽奖
-            plugin.getGachaManager().getPityCount(player.getUniqueId(), machine.getId(), pityCount -> {
-                if (!player.isOnline()) return;
-
-                // 使用软保底抽奖
-                GachaMachine.PityResult result = machine.rollWithPity(pityCount);
-
-                // 立即更新保底计数，确保后续抽奖基于最新状态
-                // 注意：即使玩家提前关闭界面，保底计数也不会回滚
-                plugin.getGachaManager().updatePityCount(
-                    player.getUniqueId(),
-                    machine.getId(),
-                    machine.isPityTarget(result.reward())
-                );
-
-                // 打开动画GUI
-                new GachaAnimationGUI(plugin, player, machine, result).open();
-            });
+            // 获取保底计数并抽奖（结果回到玩家所在区域线程）
+            plugin.getGachaManager().getPityCount(player.getUniqueId(), machine.getId())
+                .thenAcceptAsync(pityCount -> {
+                    if (!player.isOnline()) return;
+
+                    // 使用软保底抽奖
+                    GachaMachine.PityResult result = machine.rollWithPity(pityCount);
+
+                    // 立即更新保底计数，确保后续抽奖基于最新状态
+                    // 注意：即使玩家提前关闭界面，保底计数也不会回滚
+                    plugin.getGachaManager().updatePityCount(
+                        player.getUniqueId(),
+                        machine.getId(),
+                        machine.isPityTarget(result.reward())
+                    );
+
+                    // 打开动画GUI
+                    new GachaAnimationGUI(plugin, player, machine, result).open();
+                }, FoliaExecutors.entity(plugin, player));
         });
     }
 
@@ -118,37 +120,30 @@ public class GachaMachineGUI extends AbstractGUI {
         double totalCost = machine.getCost() * 10;
 
         executeGachaWithPayment(player, totalCost, () -> {
-            // 获取保底计数并进行10连抽（异步查询历史记录）
-            plugin.getGachaManager().getPityCount(player.getUniqueId(), machine.getId(), pityCount -> {
-                if (!player.isOnline()) return;
-
-                // 执行10连抽（异步查询历史并计算显示次数）
-                plugin.getGachaManager().performTenGacha(machine, pityCount, player.getUniqueId(), result -> {
+            // 保底计数和奖品历史在玩家的数据库通道上一次查询完成，然后回到玩家所在区域线程打开动画
+            plugin.getGachaManager().performTenGacha(machine, player.getUniqueId())
+                .whenCompleteAsync((result, error) -> {
+                    if (error != null) {
+                        // 已扣款但抽奖失败，退还费用
+                        plugin.getGachaManager().refundTenGacha(player, totalCost, error);
+                        return;
+                    }
                     if (!player.isOnline()) return;
 
                     // 打开10连抽动画GUI
                     new GachaTenAnimationGUI(plugin, player, machine, result).open();
-                });
-            });
+                }, FoliaExecutors.entity(plugin, player));
         });
     }
 
     /**
      * 执行扭蛋的通用支付和验证流程
+     * 扣款时会检查余额，余额不足直接提示，无需单独查询一次余额
      */
     private void executeGachaWithPayment(Player player, double cost, Runnable onSuccess) {
-        plugin.getEconomyManager().hasEnoughAsync(player, cost, hasEnough -> {
-            if (!hasEnough) {
-                player.sendMessage(plugin.getShopConfig().getComponent("insufficient-funds",
-                    java.util.Map.of("cost", String.format("%.2f", cost),
-                                    "currency", plugin.getShopConfig().getCurrencyName())));
-                return;
-            }
-
-            player.closeInventory();
-            if (!player.isOnline()) return;
-
-            plugin.getEconomyManager().withdrawAsync(player, cost, success -> {
+        plugin.getEconomyManager().withdrawAsync(player, cost)
+            .exceptionally(error -> false)
+            .thenAcceptAsync(success -> {
                 if (!success) {
                     player.sendMessage(plugin.getShopConfig().getComponent("insufficient-funds",
                         java.util.Map.of("cost", String.format("%.2f", cost),
@@ -161,8 +156,8 @@ public class GachaMachineGUI extends AbstractGUI {
                     return;
                 }
 
+                player.closeInventory();
                 onSuccess.run();
-            });
-        });
+            }, FoliaExecutors.entity(plugin, player));
     }
 }
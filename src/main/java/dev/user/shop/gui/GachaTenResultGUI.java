@@ -4,6 +4,7 @@ import dev.user.shop.FoliaShopPlugin;
 import dev.user.shop.gacha.GachaMachine;
 import dev.user.shop.gacha.GachaManager;
 import dev.user.shop.gacha.GachaReward;
+import dev.user.shop.util.FoliaExecutors;
 import dev.user.shop.util.ItemUtil;
 import dev.user.shop.util.MessageUtil;
 import net.kyori.adventure.text.Component;
@@ -229,50 +230,39 @@ public class GachaTenResultGUI extends AbstractGUI {
     private void startTenGachaDirectly(Player player) {
         double totalCost = machine.getCost() * 10;
 
-        // 先获取保底计数，确保在扣款前获取最新状态
-        plugin.getGachaManager().getPityCount(player.getUniqueId(), machine.getId(), pityCount -> {
-            if (!player.isOnline()) {
-                return;
-            }
-
-            // 异步检查余额并扣款
-            plugin.getEconomyManager().hasEnoughAsync(player, totalCost, hasEnough -> {
-                if (!hasEnough) {
+        // 扣款时会检查余额；保底计数在同一玩家的数据库通道内读取，总能读到此前的更新
+        plugin.getEconomyManager().withdrawAsync(player, totalCost)
+            .exceptionally(error -> false)
+            .thenAcceptAsync(success -> {
+                if (!success) {
                     player.sendMessage(plugin.getShopConfig().getComponent("insufficient-funds",
                         java.util.Map.of("cost", String.format("%.2f", totalCost),
                                         "currency", plugin.getShopConfig().getCurrencyName())));
                     return;
                 }
 
-                player.closeInventory();
-
                 if (!player.isOnline()) {
+                    // 玩家已掉线，退款
+                    plugin.getEconomyManager().deposit(player, totalCost);
                     return;
                 }
 
-                // 异步扣除金钱
-                plugin.getEconomyManager().withdrawAsync(player, totalCost, success -> {
-                    if (!success) {
-                        player.sendMessage(plugin.getShopConfig().getComponent("insufficient-funds",
-                            java.util.Map.of("cost", String.format("%.2f", totalCost),
-                                            "currency", plugin.getShopConfig().getCurrencyName())));
-                        return;
-                    }
-
-                    if (!player.isOnline()) {
-                        // 玩家已掉线，退款
-                        plugin.getEconomyManager().deposit(player, totalCost);
-                        return;
-                    }
-
-                    // 执行10连抽（异步查询历史记录）
-                    plugin.getGachaManager().performTenGacha(machine, pityCount, player.getUniqueId(), result -> {
+                player.closeInventory();
+
+                // 执行10连抽（保底计数和历史记录在同一个数据库任务中查询）
+                plugin.getGachaManager().performTenGacha(machine, player.getUniqueId())
+                    .whenCompleteAsync((result, error) -> {
+                        if (error != null) {
+                            // 已扣款但抽奖失败，退还费用
+                            plugin.getGachaManager().refundTenGacha(player, totalCost, error);
+                            return;
+                        }
+                        if (!player.isOnline()) return;
+
                         // 打开10连抽动画GUI
                         new GachaTenAnimationGUI(plugin, player, machine, result).open();
-                    });
-                });
-            });
-        });
+                    }, FoliaExecutors.entity(plugin, player));
+            }, FoliaExecutors.entity(plugin, player));
     }
 
     @Override
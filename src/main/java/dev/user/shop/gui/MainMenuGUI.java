@@ -2,6 +2,8 @@ package dev.user.shop.gui;
 
 import dev.user.shop.FoliaShopPlugin;
 import dev.user.shop.util.ItemUtil;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -26,6 +28,10 @@ public class MainMenuGUI extends AbstractGUI {
                 "§e购买和出售各种物品"
             ));
             setItem(11, shopBtn, p -> {
+                if (!plugin.getShopManager().isCatalogReady()) {
+                    p.sendMessage(Component.text("商店正在加载中，请稍后再试").color(NamedTextColor.YELLOW));
+                    return;
+                }
                 p.closeInventory();
                 new ShopCategoryGUI(plugin, p).open();
             });
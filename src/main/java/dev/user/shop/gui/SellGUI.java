@@ -1,18 +1,15 @@
 package dev.user.shop.gui;
 
 import dev.user.shop.FoliaShopPlugin;
-import dev.user.shop.shop.ShopItem;
+import dev.user.shop.shop.SellManager;
+import dev.user.shop.shop.SellPriceIndex;
 import dev.user.shop.util.ItemUtil;
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class SellGUI extends AbstractGUI {
 
@@ -79,176 +76,41 @@ public class SellGUI extends AbstractGUI {
             return;
         }
 
-        double totalReward = 0;
-        String mode = plugin.getShopConfig().getSellSystemMode();
-
-        // 第一阶段：计算总价值并验证所有物品（不修改物品）
-        List<SellEntry> entriesToSell = new ArrayList<>();
-        for (int slot : sellSlots) {
-            ItemStack item = inventory.getItem(slot);
-            if (item == null || item.getType() == Material.AIR) continue;
-
-            // 获取物品的回收价格
-            SellPriceResult result = getSellPrice(item, mode);
-            if (result.price <= 0) continue;
-
-            int amount = item.getAmount();
-            double reward = result.price * amount;
-
-            // 获取物品的实际ID用于记录
-            String itemKey = ItemUtil.getItemKey(item);
-
-            entriesToSell.add(new SellEntry(slot, item.clone(), reward, result.source, result.shopItemId, itemKey));
-            totalReward += reward;
+        // 第一阶段：一次遍历为所有格子报价（不修改物品）
+        ItemStack[] items = new ItemStack[sellSlots.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = inventory.getItem(sellSlots.get(i));
+        }
+        SellPriceIndex.Quote[] quotes = plugin.getShopManager().getSellPriceIndex().quoteAll(items);
+
+        List<Integer> slotsToSell = new ArrayList<>();
+        List<SellManager.SoldStack> sold = new ArrayList<>();
+        for (int i = 0; i < items.length; i++) {
+            if (quotes[i] == null || !quotes[i].isSellable()) continue;
+            slotsToSell.add(sellSlots.get(i));
+            sold.add(new SellManager.SoldStack(items[i].clone(), quotes[i]));
         }
 
-        if (entriesToSell.isEmpty() || totalReward <= 0) {
+        if (sold.isEmpty()) {
             player.sendMessage("§c没有可以出售的物品！");
             return;
         }
 
-        // 第二阶段：执行出售（原子性操作）
-        // 先清除所有要出售的物品格子
-        for (SellEntry entry : entriesToSell) {
+        // 第二阶段：清除要出售的物品格子
+        for (int i = 0; i < slotsToSell.size(); i++) {
             // 双重检查物品是否还在且未改变
-            ItemStack currentItem = inventory.getItem(entry.slot);
-            if (currentItem == null || !currentItem.isSimilar(entry.originalItem)) {
+            ItemStack currentItem = inventory.getItem(slotsToSell.get(i));
+            if (currentItem == null || !currentItem.isSimilar(sold.get(i).item())) {
                 player.sendMessage("§c出售失败：物品在确认期间发生变化，请重新放入物品！");
                 return;
             }
-            inventory.setItem(entry.slot, null);
         }
-
-        // 异步给予金钱
-        final double finalTotalReward = totalReward;
-        final List<SellEntry> finalEntriesToSell = new ArrayList<>(entriesToSell);
-        final int totalItems = entriesToSell.stream().mapToInt(e -> e.originalItem.getAmount()).sum();
-
-        plugin.getEconomyManager().depositAsync(player, totalReward, success -> {
-            if (!success) {
-                // 退款失败，将物品还给玩家
-                for (SellEntry entry : finalEntriesToSell) {
-                    returnItemToPlayer(player, entry.originalItem);
-                }
-                player.sendMessage(Component.text("经济系统错误，出售已取消，物品已返还！").color(NamedTextColor.RED));
-                return;
-            }
-
-            // 发送消息 - 批量出售显示总数量和物品种类
-            Component sellMessage = plugin.getShopConfig().getComponent("sell-success-batch",
-                Map.of("count", String.valueOf(finalEntriesToSell.size()),
-                       "total", String.valueOf(totalItems),
-                       "reward", String.format("%.2f", finalTotalReward),
-                       "currency", plugin.getShopConfig().getCurrencyName()));
-            player.sendMessage(sellMessage);
-
-            // 增加商店库存（如果是商店物品且配置允许）
-            if (plugin.getShopConfig().isAddStockOnSell()) {
-                for (SellEntry entry : finalEntriesToSell) {
-                    if (entry.shopItemId != null && !entry.shopItemId.isEmpty()) {
-                        plugin.getShopManager().atomicAddStock(entry.shopItemId, entry.originalItem.getAmount());
-                    }
-                }
-            }
-
-            // 记录交易（使用实际物品ID）
-            for (SellEntry entry : finalEntriesToSell) {
-                plugin.getShopManager().logTransaction(
-                    player.getUniqueId(), player.getName(),
-                    entry.itemKey != null ? entry.itemKey : "unknown",
-                    entry.itemKey != null ? entry.itemKey : "unknown",
-                    entry.originalItem.getAmount(),
-                    entry.reward,
-                    "SELL"
-                );
-            }
-
-            player.closeInventory();
-        });
-    }
-
-    /**
-     * 将物品返还给玩家（背包满了则掉落）
-     */
-    private void returnItemToPlayer(Player player, ItemStack item) {
-        java.util.HashMap<Integer, ItemStack> leftover = player.getInventory().addItem(item);
-        if (!leftover.isEmpty()) {
-            for (ItemStack drop : leftover.values()) {
-                player.getWorld().dropItemNaturally(player.getLocation(), drop);
-            }
-        }
-    }
-
-    /**
-     * 出售条目辅助类
-     */
-    private static class SellEntry {
-        final int slot;
-        final ItemStack originalItem;
-        final double reward;
-        final String source;
-        final String shopItemId; // 关联的商店商品ID（如果是商店物品）
-        final String itemKey; // 物品的实际ID（用于交易记录）
-
-        SellEntry(int slot, ItemStack originalItem, double reward, String source, String shopItemId, String itemKey) {
-            this.slot = slot;
-            this.originalItem = originalItem;
-            this.reward = reward;
-            this.source = source;
-            this.shopItemId = shopItemId;
-            this.itemKey = itemKey;
-        }
-    }
-
-    /**
-     * 获取物品的回收价格
-     * @param item 物品
-     * @param mode 回收模式 (SHOP_ONLY, CONFIG_ONLY, ALL)
-     * @return 价格结果
-     */
-    private SellPriceResult getSellPrice(ItemStack item, String mode) {
-        String itemKey = ItemUtil.getItemKey(item);
-
-        // SHOP_ONLY 或 ALL 模式：检查商店物品
-        if (mode.equals("SHOP_ONLY") || mode.equals("ALL")) {
-            ShopItem shopItem = plugin.getShopManager().findShopItemByStack(item);
-            if (shopItem != null && shopItem.canSell()) {
-                return new SellPriceResult(shopItem.getSellPrice(), "商店", shopItem.getId());
-            }
-            // 如果是SHOP_ONLY模式且没有找到商店物品，直接返回0
-            if (mode.equals("SHOP_ONLY")) {
-                return new SellPriceResult(0, null);
-            }
+        for (int slot : slotsToSell) {
+            inventory.setItem(slot, null);
         }
 
-        // CONFIG_ONLY 或 ALL 模式：检查自定义回收物品
-        if (mode.equals("CONFIG_ONLY") || mode.equals("ALL")) {
-            double price = plugin.getShopConfig().getCustomSellPrice(itemKey);
-            if (price > 0) {
-                return new SellPriceResult(price, "系统回收");
-            }
-        }
-
-        return new SellPriceResult(0, null);
-    }
-
-    /**
-     * 价格结果辅助类
-     */
-    private static class SellPriceResult {
-        final double price;
-        final String source;
-        final String shopItemId; // 关联的商店商品ID
-
-        SellPriceResult(double price, String source, String shopItemId) {
-            this.price = price;
-            this.source = source;
-            this.shopItemId = shopItemId;
-        }
-
-        SellPriceResult(double price, String source) {
-            this(price, source, null);
-        }
+        // 合并结算：一次存款，失败时返还物品
+        plugin.getSellManager().settle(player, sold, player::closeInventory);
     }
 
     public boolean isSellSlot(int slot) {
@@ -3,6 +3,7 @@ package dev.user.shop.gui;
 import dev.user.shop.FoliaShopPlugin;
 import dev.user.shop.shop.ShopItem;
 import dev.user.shop.shop.ShopManager;
+import dev.user.shop.util.FoliaExecutors;
 import dev.user.shop.util.ItemUtil;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
@@ -26,8 +27,8 @@ public class ShopAdminGUI extends AbstractGUI {
         fillBorder(Material.BLACK_STAINED_GLASS_PANE);
         // 打开管理界面时先从数据库刷新库存（跨服同步）
         plugin.getShopManager().refreshAllStocksFromDatabase(count -> {
-            // 在主线程刷新界面
-            plugin.getServer().getGlobalRegionScheduler().execute(plugin, () -> {
+            // 在玩家所在区域线程刷新界面
+            FoliaExecutors.entity(plugin, player).execute(() -> {
                 loadPage();
             });
         });
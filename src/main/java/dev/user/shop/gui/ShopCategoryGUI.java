@@ -4,6 +4,8 @@ import dev.user.shop.FoliaShopPlugin;
 import dev.user.shop.shop.ShopManager;
 import dev.user.shop.util.ItemUtil;
 import dev.user.shop.util.MessageUtil;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
@@ -21,6 +23,18 @@ public class ShopCategoryGUI extends AbstractGUI {
         this.categories = new ArrayList<>(plugin.getShopManager().getAllCategories());
     }
 
+    /**
+     * 首次加载时显示物品分 tick 生成，完成前不打开商店界面（所有入口都经过这里）
+     */
+    @Override
+    public void open() {
+        if (!plugin.getShopManager().isCatalogReady()) {
+            player.sendMessage(Component.text("商店正在加载中，请稍后再试").color(NamedTextColor.YELLOW));
+            return;
+        }
+        super.open();
+    }
+
     @Override
     protected void initialize() {
         // 确保页码不会小于0
@@ -1,6 +1,7 @@
 package dev.user.shop.gui;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.shop.CatalogSnapshot;
 import dev.user.shop.shop.ShopItem;
 import dev.user.shop.shop.ShopManager;
 import dev.user.shop.util.ItemUtil;
@@ -12,48 +13,112 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.inventory.ClickType;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class ShopItemsGUI extends AbstractGUI {
 
+    // 翻页按钮槽位（不注册action，由 handleItemClick 按点击类型处理）
+    private static final int PREV_PAGE_SLOT = 48;
+    private static final int NEXT_PAGE_SLOT = 50;
+    private static final int PAGE_INFO_SLOT = 45;
+    // 右键翻页的跨度
+    private static final int PAGE_JUMP = 10;
+    // 最多缓存的已渲染页数
+    private static final int MAX_CACHED_PAGES = 4;
+
     private final ShopManager.ShopCategory category;
     private final java.util.Map<Integer, ShopItem> slotToItem;
+    // 界面内容对应的目录版本（目录重载后界面中的商品对象已过期）
+    private long catalogVersion;
+    // 购买幂等键：界面实例的随机标识 + 槽位 + 该槽位本次绘制的令牌
+    // 令牌在槽位绘制时分配，购买结果返回后重新绘制该槽位才换新令牌：结果返回前的重复点击使用同一个键，只购买一次
+    private final String guiNonce = java.util.UUID.randomUUID().toString();
+    private final Map<Integer, Long> slotTokens = new java.util.HashMap<>();
+    private long renderSequence;
+    private int page;
+    private int pageCount = 1;
+    // 最近浏览过的页的显示物品（访问顺序LRU），来回翻页时不必重新生成lore；库存变化的商品在使用时重新生成
+    private final Map<Integer, RenderedPage> renderedPages = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, RenderedPage> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    /**
+     * 一页已生成的显示物品及生成时各商品的库存（库存显示在lore中）
+     */
+    private static final class RenderedPage {
+        final ItemStack[] items;
+        final int[] stocks;
+
+        RenderedPage(int size) {
+            this.items = new ItemStack[size];
+            this.stocks = new int[size];
+        }
+    }
 
     public ShopItemsGUI(FoliaShopPlugin plugin, Player player, ShopManager.ShopCategory category) {
+        this(plugin, player, category, 0);
+    }
+
+    /**
+     * @param page 打开时显示的页码（从 0 开始，超出范围时自动修正）
+     */
+    public ShopItemsGUI(FoliaShopPlugin plugin, Player player, ShopManager.ShopCategory category, int page) {
         super(plugin, player, MessageUtil.convertMiniMessageToLegacy(category.getName()), 54);
         this.category = category;
         this.slotToItem = new java.util.HashMap<>();
+        this.page = page;
+    }
+
+    /**
+     * 首次加载时显示物品分 tick 生成，完成前不打开商店界面（所有入口都经过这里）
+     */
+    @Override
+    public void open() {
+        if (!plugin.getShopManager().isCatalogReady()) {
+            player.sendMessage(Component.text("商店正在加载中，请稍后再试").color(NamedTextColor.YELLOW));
+            return;
+        }
+        super.open();
     }
 
     @Override
     protected void initialize() {
         fillBorder(Material.BLACK_STAINED_GLASS_PANE);
         slotToItem.clear();
+        slotTokens.clear();
 
-        List<ShopItem> items = plugin.getShopManager().getItemsByCategory(category.getId());
-
-        for (ShopItem shopItem : items) {
-            if (!shopItem.isEnabled()) continue;
-
-            ItemStack item = createItemDisplay(shopItem);
-            if (item == null) continue;
-
-            int slot = shopItem.getSlot();
-            if (slot > 0 && slot < 45 && slot % 9 != 0 && slot % 9 != 8) {
-                setItem(slot, item);  // 不设置action，让GUIListener处理点击
-                slotToItem.put(slot, shopItem);
-            } else {
-                // 自动寻找空位
-                for (int i = 10; i < 44; i++) {
-                    if (i % 9 == 0 || i % 9 == 8) continue;
-                    if (inventory.getItem(i) == null) {
-                        setItem(i, item);  // 不设置action，让GUIListener处理点击
-                        slotToItem.put(i, shopItem);
-                        break;
-                    }
-                }
+        CatalogSnapshot catalog = plugin.getShopManager().getCatalog();
+        if (catalog.getVersion() != catalogVersion) {
+            renderedPages.clear();
+        }
+        catalogVersion = catalog.getVersion();
+        pageCount = catalog.getCategoryPageCount(category.getId());
+        if (page >= pageCount) page = pageCount - 1;
+        if (page < 0) page = 0;
+
+        // 只取当前页的槽位布局，商品再多也只渲染一页（最多 28 个）
+        ShopItem[] layout = catalog.getCategoryPage(category.getId(), page);
+        RenderedPage rendered = renderedPages.computeIfAbsent(page, p -> new RenderedPage(layout.length));
+        for (int slot = 0; slot < layout.length; slot++) {
+            ShopItem shopItem = layout[slot];
+            if (shopItem == null) continue;
+            // 首次显示或库存已变化（其他玩家购买、出售补货等）时重新生成，其余沿用缓存
+            int stock = shopItem.getStock();
+            if (rendered.items[slot] == null || rendered.stocks[slot] != stock) {
+                rendered.items[slot] = createItemDisplay(shopItem);
+                rendered.stocks[slot] = stock;
             }
+            setItem(slot, rendered.items[slot]);  // 不设置action，让GUIListener处理点击
+            slotToItem.put(slot, shopItem);
+            slotTokens.put(slot, ++renderSequence);
+        }
+
+        if (pageCount > 1) {
+            addPageButtons();
         }
 
         // 返回按钮
@@ -63,13 +128,74 @@ public class ShopItemsGUI extends AbstractGUI {
         addCloseButton(52);
     }
 
+    /**
+     * 页码指示和翻页按钮
+     */
+    private void addPageButtons() {
+        ItemStack pageInfo = new ItemStack(Material.PAPER);
+        ItemUtil.setDisplayName(pageInfo, "§e§l第 " + (page + 1) + "/" + pageCount + " 页");
+        setItem(PAGE_INFO_SLOT, pageInfo);
+
+        if (page > 0) {
+            ItemStack prevBtn = ItemUtil.createItemFromKey(plugin,
+                plugin.getShopConfig().getGUIDecoration("prev-page").getMaterial());
+            ItemUtil.setDisplayName(prevBtn, "§e上一页");
+            ItemUtil.setLore(prevBtn, java.util.List.of(
+                "§e左键 §7上一页",
+                "§e右键 §7后退 " + PAGE_JUMP + " 页",
+                "§eShift+左键 §7第一页"
+            ));
+            setItem(PREV_PAGE_SLOT, prevBtn);
+        }
+
+        if (page < pageCount - 1) {
+            ItemStack nextBtn = ItemUtil.createItemFromKey(plugin,
+                plugin.getShopConfig().getGUIDecoration("next-page").getMaterial());
+            ItemUtil.setDisplayName(nextBtn, "§e下一页");
+            ItemUtil.setLore(nextBtn, java.util.List.of(
+                "§e左键 §7下一页",
+                "§e右键 §7前进 " + PAGE_JUMP + " 页",
+                "§eShift+左键 §7最后一页"
+            ));
+            setItem(NEXT_PAGE_SLOT, nextBtn);
+        }
+    }
+
+    /**
+     * 处理翻页按钮点击
+     * @return 是否为翻页按钮
+     */
+    private boolean handlePageClick(int slot, ClickType clickType) {
+        int target;
+        if (slot == PREV_PAGE_SLOT && page > 0) {
+            target = switch (clickType) {
+                case SHIFT_LEFT -> 0;
+                case RIGHT, SHIFT_RIGHT -> page - PAGE_JUMP;
+                default -> page - 1;
+            };
+        } else if (slot == NEXT_PAGE_SLOT && page < pageCount - 1) {
+            target = switch (clickType) {
+                case SHIFT_LEFT -> pageCount - 1;
+                case RIGHT, SHIFT_RIGHT -> page + PAGE_JUMP;
+                default -> page + 1;
+            };
+        } else {
+            return false;
+        }
+        page = Math.max(0, Math.min(pageCount - 1, target));
+        refresh();
+        return true;
+    }
+
     /**
      * 通过slot处理物品点击 - 由GUIListener调用
      */
     public void handleItemClick(Player player, int slot, ClickType clickType) {
+        if (handlePageClick(slot, clickType)) return;
         ShopItem shopItem = slotToItem.get(slot);
         if (shopItem == null) return;
-        handleItemClick(player, shopItem, clickType);
+        String requestKey = player.getUniqueId() + ":" + guiNonce + ":" + slot + ":" + slotTokens.get(slot);
+        handleItemClick(player, shopItem, clickType, requestKey);
     }
 
     /**
@@ -77,18 +203,29 @@ public class ShopItemsGUI extends AbstractGUI {
      * 左键购买1个，Shift+左键购买64个，右键和Shift+右键不处理
      */
     public void handleItemClick(Player player, ShopItem shopItem, ClickType clickType) {
+        handleItemClick(player, shopItem, clickType, null);
+    }
+
+    private void handleItemClick(Player player, ShopItem shopItem, ClickType clickType, String requestKey) {
         // 右键和Shift+右键不处理
         if (clickType == ClickType.RIGHT || clickType == ClickType.SHIFT_RIGHT) {
             return;
         }
 
+        // 目录已重载，刷新界面让玩家重新选择，避免购买已被替换的商品对象
+        if (plugin.getShopManager().getCatalog().getVersion() != catalogVersion) {
+            refresh();
+            player.sendMessage(Component.text("商店已更新，请重新选择商品").color(NamedTextColor.YELLOW));
+            return;
+        }
+
         // 购买
         if (!shopItem.canBuy()) {
             player.sendMessage(Component.text("该物品不可购买！").color(NamedTextColor.RED));
             return;
         }
         int amount = (clickType == ClickType.SHIFT_LEFT) ? 64 : 1;
-        buyItem(player, shopItem, amount);
+        buyItem(player, shopItem, amount, requestKey);
     }
 
     /**
@@ -96,10 +233,10 @@ public class ShopItemsGUI extends AbstractGUI {
      */
     private void handleItemClick(Player player, ShopItem shopItem) {
         // 默认购买1个
-        buyItem(player, shopItem, 1);
+        buyItem(player, shopItem, 1, null);
     }
 
-    private void buyItem(Player player, ShopItem shopItem, int amount) {
+    private void buyItem(Player player, ShopItem shopItem, int amount, String requestKey) {
         // 限制单次最大购买数量
         final int finalAmount = Math.min(amount, 64);
 
@@ -114,12 +251,16 @@ public class ShopItemsGUI extends AbstractGUI {
         }
 
         // 提交购买请求（限额检查在 PurchaseManager 中统一处理）
-        submitPurchase(player, shopItem, finalAmount);
+        submitPurchase(player, shopItem, finalAmount, requestKey);
     }
 
-    private void submitPurchase(Player player, ShopItem shopItem, int amount) {
-        // 提交到 PurchaseManager 处理
-        plugin.getPurchaseManager().submitPurchase(player, shopItem, amount, result -> {
+    private void submitPurchase(Player player, ShopItem shopItem, int amount, String requestKey) {
+        // 提交到 PurchaseManager 处理（连续点击会被合并，合并后只回调一次）
+        plugin.getPurchaseManager().submitPurchase(player, shopItem, amount, requestKey, result -> {
+            // 已合并到同一批的第一个请求或重复提交，由那个请求展示结果
+            if (result.merged) return;
+            // 重新绘制槽位（更新库存并换新令牌），之后的点击才是新的购买
+            refreshItemDisplay(shopItem);
             if (result.success) {
                 // 使用新的 Component API 构建购买成功消息
                 Component successMessage = plugin.getShopConfig().getItemMessage(
@@ -133,14 +274,21 @@ public class ShopItemsGUI extends AbstractGUI {
                     )
                 );
                 player.sendMessage(successMessage);
-                // 刷新GUI显示
-                refreshItemDisplay(shopItem);
             } else {
                 player.sendMessage(Component.text(result.message).color(NamedTextColor.RED));
             }
         });
     }
 
+    /**
+     * 按最新目录重新绘制整个界面
+     */
+    private void refresh() {
+        inventory.clear();
+        actions.clear();
+        initialize();
+    }
+
     /**
      * 刷新指定商品的显示（更新库存等信息）
      */
@@ -150,8 +298,15 @@ public class ShopItemsGUI extends AbstractGUI {
             if (entry.getValue().getId().equals(shopItem.getId())) {
                 int slot = entry.getKey();
                 // 重新创建物品显示
+                int stock = shopItem.getStock();
                 ItemStack newDisplay = createItemDisplay(shopItem);
                 inventory.setItem(slot, newDisplay);
+                RenderedPage rendered = renderedPages.get(page);
+                if (rendered != null) {
+                    rendered.items[slot] = newDisplay;
+                    rendered.stocks[slot] = stock;
+                }
+                slotTokens.put(slot, ++renderSequence);
                 break;
             }
         }
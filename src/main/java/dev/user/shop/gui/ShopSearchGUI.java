@@ -0,0 +1,142 @@
+package dev.user.shop.gui;
+
+import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.shop.CatalogSnapshot;
+import dev.user.shop.shop.ShopItem;
+import dev.user.shop.shop.ShopManager;
+import dev.user.shop.util.ItemUtil;
+import dev.user.shop.util.MessageUtil;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 商店搜索结果界面
+ * 结果在打开时一次性从目录的搜索索引中查出（已排序），翻页只渲染当前页；
+ * 点击结果跳转到商品所在分类的对应页，在分类界面中购买
+ */
+public class ShopSearchGUI extends AbstractGUI {
+
+    private static final int[] RESULT_SLOTS = {
+        10, 11, 12, 13, 14, 15, 16,
+        19, 20, 21, 22, 23, 24, 25,
+        28, 29, 30, 31, 32, 33, 34,
+        37, 38, 39, 40, 41, 42, 43
+    };
+
+    private final String query;
+    private final List<ShopItem> results;
+    private int page = 0;
+
+    public ShopSearchGUI(FoliaShopPlugin plugin, Player player, String query) {
+        super(plugin, player, "§8搜索: " + query, 54);
+        this.query = query;
+        this.results = plugin.getShopManager().getCatalog().getSearchIndex().search(query);
+    }
+
+    public boolean hasResults() {
+        return !results.isEmpty();
+    }
+
+    @Override
+    protected void initialize() {
+        fillBorder(Material.BLACK_STAINED_GLASS_PANE);
+
+        int totalPages = Math.max(1, (results.size() + RESULT_SLOTS.length - 1) / RESULT_SLOTS.length);
+        if (page >= totalPages) page = totalPages - 1;
+        if (page < 0) page = 0;
+
+        int start = page * RESULT_SLOTS.length;
+        for (int i = 0; i < RESULT_SLOTS.length && start + i < results.size(); i++) {
+            ShopItem shopItem = results.get(start + i);
+            setItem(RESULT_SLOTS[i], createResultDisplay(shopItem), p -> openInCategory(p, shopItem));
+        }
+
+        // 页码信息
+        ItemStack pageInfo = new ItemStack(Material.PAPER);
+        ItemUtil.setDisplayName(pageInfo, "§e§l第 " + (page + 1) + "/" + totalPages + " 页");
+        ItemUtil.setLore(pageInfo, List.of("§7关键词: §f" + query, "§7共 " + results.size() + " 个结果"));
+        setItem(45, pageInfo);
+
+        // 上一页按钮
+        if (page > 0) {
+            ItemStack prevBtn = ItemUtil.createItemFromKey(plugin,
+                plugin.getShopConfig().getGUIDecoration("prev-page").getMaterial());
+            ItemUtil.setDisplayName(prevBtn, "§e上一页");
+            setItem(48, prevBtn, p -> {
+                page--;
+                inventory.clear();
+                actions.clear();
+                initialize();
+            });
+        }
+
+        // 下一页按钮
+        if (page < totalPages - 1) {
+            ItemStack nextBtn = ItemUtil.createItemFromKey(plugin,
+                plugin.getShopConfig().getGUIDecoration("next-page").getMaterial());
+            ItemUtil.setDisplayName(nextBtn, "§e下一页");
+            setItem(50, nextBtn, p -> {
+                page++;
+                inventory.clear();
+                actions.clear();
+                initialize();
+            });
+        }
+
+        // 返回按钮
+        addBackButton(49, () -> new ShopCategoryGUI(plugin, player).open());
+
+        // 关闭按钮
+        addCloseButton(52);
+    }
+
+    /**
+     * 打开商品所在分类的对应页（按最新目录查找，商品已被移除或禁用时提示）
+     */
+    private void openInCategory(Player player, ShopItem shopItem) {
+        CatalogSnapshot catalog = plugin.getShopManager().getCatalog();
+        ShopItem current = catalog.getItem(shopItem.getId());
+        ShopManager.ShopCategory category = current != null ? catalog.getCategory(current.getCategory()) : null;
+        int targetPage = current != null ? catalog.findCategoryPage(current) : -1;
+        if (category == null || targetPage < 0) {
+            player.sendMessage(Component.text("该商品已下架").color(NamedTextColor.RED));
+            return;
+        }
+        new ShopItemsGUI(plugin, player, category, targetPage).open();
+    }
+
+    private ItemStack createResultDisplay(ShopItem shopItem) {
+        ItemStack displayItem = shopItem.getDisplayItem();
+        if (displayItem == null) return new ItemStack(Material.BARRIER);
+
+        ItemStack item = displayItem.clone();
+        List<String> lore = new ArrayList<>();
+
+        ShopManager.ShopCategory category = plugin.getShopManager().getCatalog().getCategory(shopItem.getCategory());
+        if (category != null) {
+            lore.add("§7分类: §f" + MessageUtil.convertMiniMessageToLegacy(category.getName()));
+        }
+        if (shopItem.canBuy()) {
+            StringBuilder priceStr = new StringBuilder();
+            if (shopItem.getBuyPrice() > 0) {
+                priceStr.append("§e").append(plugin.getShopConfig().formatCurrency(shopItem.getBuyPrice()));
+            }
+            if (shopItem.requiresPoints()) {
+                if (priceStr.length() > 0) priceStr.append(" §7+ ");
+                priceStr.append("§e").append(shopItem.getBuyPoints()).append(" 点券");
+            }
+            lore.add("§7购买价格: " + priceStr);
+        }
+        lore.add("");
+        lore.add("§e点击 §7前往所在分类");
+
+        ItemUtil.addLore(item, lore);
+        return item;
+    }
+}
@@ -0,0 +1,41 @@
+package dev.user.shop.listener;
+
+import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.shop.AutoSellManager;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+
+/**
+ * 自动出售容器监听器 - 容器被破坏时移除绑定
+ */
+public class AutoSellContainerListener implements Listener {
+
+    private final FoliaShopPlugin plugin;
+
+    public AutoSellContainerListener(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        AutoSellManager manager = plugin.getAutoSellManager();
+        if (manager == null) {
+            return;
+        }
+
+        AutoSellManager.AutoSellContainer container = manager.getContainer(event.getBlock());
+        if (container == null) {
+            return;
+        }
+
+        manager.unbind(container, result -> {
+            if (result.success()) {
+                event.getPlayer().sendMessage(Component.text("自动出售容器已被破坏，绑定已移除").color(NamedTextColor.YELLOW));
+            }
+        });
+    }
+}
@@ -0,0 +1,18 @@
+package dev.user.shop.listener;
+
+import dev.user.shop.util.ItemPrototypeCache;
+import net.momirealms.craftengine.bukkit.api.event.CraftEngineReloadEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+/**
+ * CraftEngine 重载监听器
+ * CE 物品定义可能已变化，丢弃缓存的物品原型，之后构建物品时重新从 CE 获取
+ */
+public class CraftEngineReloadListener implements Listener {
+
+    @EventHandler
+    public void onCraftEngineReload(CraftEngineReloadEvent event) {
+        ItemPrototypeCache.invalidate();
+    }
+}
@@ -0,0 +1,32 @@
+package dev.user.shop.listener;
+
+import dev.user.shop.FoliaShopPlugin;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * 玩家进出服监听器
+ * 进服时预加载限购计数，退出时移除限购和余额缓存
+ */
+public class PlayerConnectionListener implements Listener {
+
+    private final FoliaShopPlugin plugin;
+
+    public PlayerConnectionListener(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        plugin.getPlayerLimitCache().load(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getPlayerLimitCache().evict(event.getPlayer().getUniqueId());
+        plugin.getBalanceCache().invalidate(event.getPlayer().getUniqueId());
+    }
+}
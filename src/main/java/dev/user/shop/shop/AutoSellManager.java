@@ -0,0 +1,401 @@
+package dev.user.shop.shop;
+
+import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.util.FoliaExecutors;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Chest;
+import org.bukkit.block.Container;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.EquipmentSlot;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.BlockVector;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 自动出售容器管理器
+ * 与扭蛋机方块绑定相同的模型：绑定关系保存在 auto_sell_containers 表中，内存中按世界和坐标索引。
+ * 每个结算间隔（auto-sell.interval-seconds）执行一轮：
+ * - 在每个容器所在的区域线程上用回收价格索引一次遍历报价，取出可回收的物品
+ * - 所有容器取完后按主人合并，每个主人只结算一次（一次存款、一次批量增加库存、每种物品一条交易记录）
+ * 每轮的数据库和经济操作次数只与主人数和物品种类数有关，与物品数量无关。
+ *
+ * 主人不在线或容器所在区块未加载时跳过该容器，物品留在容器中等待下一轮。
+ * 大箱子的两半分别绑定、分别只取出自己这一半的物品。
+ */
+public class AutoSellManager {
+
+    private final FoliaShopPlugin plugin;
+    // Map<WorldUUID, Map<Position, Container>>
+    private final Map<UUID, Map<BlockVector, AutoSellContainer>> containers = new ConcurrentHashMap<>();
+    // 上一轮尚未取完时不开始新一轮
+    private final AtomicBoolean cycleRunning = new AtomicBoolean(false);
+    private final ScheduledTask timer;
+    private long nextCycleMillis;
+
+    public AutoSellManager(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+        loadContainersAsync();
+
+        // 每秒检查一次是否到达结算时间（间隔随配置重载生效）
+        this.nextCycleMillis = System.currentTimeMillis() + plugin.getShopConfig().getAutoSellIntervalSeconds() * 1000L;
+        this.timer = plugin.getServer().getGlobalRegionScheduler().runAtFixedRate(plugin, t -> tick(), 20L, 20L);
+    }
+
+    /**
+     * 自动出售容器绑定
+     */
+    public record AutoSellContainer(UUID worldUuid, BlockVector position, UUID ownerUuid, String ownerName) {
+    }
+
+    /**
+     * 绑定操作结果
+     */
+    public record BindResult(boolean success, String message) {
+    }
+
+    /**
+     * 一个容器本轮取出的物品
+     */
+    private record Drained(AutoSellContainer container, List<SellManager.SoldStack> sold) {
+    }
+
+    // ==================== 加载 ====================
+
+    /**
+     * 重新加载容器绑定（用于导入后刷新）
+     */
+    public void reload() {
+        loadContainersAsync();
+    }
+
+    private void loadContainersAsync() {
+        plugin.getDatabaseQueue().submit("loadAutoSellContainers", conn -> {
+            List<AutoSellContainer> result = new ArrayList<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT * FROM auto_sell_containers")) {
+                while (rs.next()) {
+                    result.add(new AutoSellContainer(
+                        UUID.fromString(rs.getString("world_uuid")),
+                        new BlockVector(rs.getInt("block_x"), rs.getInt("block_y"), rs.getInt("block_z")),
+                        UUID.fromString(rs.getString("owner_uuid")),
+                        rs.getString("owner_name")
+                    ));
+                }
+            }
+            return result;
+        }, result -> {
+            containers.clear();
+            for (AutoSellContainer container : result) {
+                containers
+                    .computeIfAbsent(container.worldUuid(), k -> new ConcurrentHashMap<>())
+                    .put(container.position(), container);
+            }
+            plugin.getLogger().info("已加载 " + getTotalCount() + " 个自动出售容器");
+        }, error -> {
+            plugin.getLogger().severe("加载自动出售容器失败: " + error.getMessage());
+        });
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 获取方块上的自动出售容器绑定
+     * @return 绑定，未绑定返回 null
+     */
+    public AutoSellContainer getContainer(Block block) {
+        Map<BlockVector, AutoSellContainer> worldContainers = containers.get(block.getWorld().getUID());
+        if (worldContainers == null) {
+            return null;
+        }
+        return worldContainers.get(new BlockVector(block.getX(), block.getY(), block.getZ()));
+    }
+
+    /**
+     * 获取玩家绑定的所有容器
+     */
+    public List<AutoSellContainer> getContainersByOwner(UUID ownerUuid) {
+        List<AutoSellContainer> result = new ArrayList<>();
+        for (Map<BlockVector, AutoSellContainer> worldContainers : containers.values()) {
+            for (AutoSellContainer container : worldContainers.values()) {
+                if (container.ownerUuid().equals(ownerUuid)) {
+                    result.add(container);
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getTotalCount() {
+        return containers.values().stream().mapToInt(Map::size).sum();
+    }
+
+    // ==================== 绑定/解绑 ====================
+
+    /**
+     * 将容器方块绑定为玩家的自动出售容器（异步，需在方块所在区域线程调用）
+     */
+    public void bind(Block block, Player owner, Consumer<BindResult> callback) {
+        if (!(block.getState(false) instanceof Container)) {
+            callback.accept(new BindResult(false, "该方块不是容器"));
+            return;
+        }
+        AutoSellContainer existing = getContainer(block);
+        if (existing != null) {
+            callback.accept(new BindResult(false, "该容器已是 " + existing.ownerName() + " 的自动出售容器"));
+            return;
+        }
+        if (plugin.getGachaBlockManager() != null && plugin.getGachaBlockManager().getMachineByBlock(block) != null) {
+            callback.accept(new BindResult(false, "该方块已绑定扭蛋机"));
+            return;
+        }
+        if (!canAccess(owner, block)) {
+            callback.accept(new BindResult(false, "你没有权限使用该容器"));
+            return;
+        }
+        int max = plugin.getShopConfig().getAutoSellMaxPerPlayer();
+        if (!owner.hasPermission("foliashop.admin") && getContainersByOwner(owner.getUniqueId()).size() >= max) {
+            callback.accept(new BindResult(false, "最多只能绑定 " + max + " 个自动出售容器"));
+            return;
+        }
+
+        AutoSellContainer container = new AutoSellContainer(block.getWorld().getUID(),
+            new BlockVector(block.getX(), block.getY(), block.getZ()), owner.getUniqueId(), owner.getName());
+
+        plugin.getDatabaseQueue().submit("bindAutoSellContainer", conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO auto_sell_containers (world_uuid, block_x, block_y, block_z, owner_uuid, owner_name, created_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                ps.setString(1, container.worldUuid().toString());
+                ps.setInt(2, container.position().getBlockX());
+                ps.setInt(3, container.position().getBlockY());
+                ps.setInt(4, container.position().getBlockZ());
+                ps.setString(5, container.ownerUuid().toString());
+                ps.setString(6, container.ownerName());
+                ps.setLong(7, System.currentTimeMillis());
+                ps.executeUpdate();
+            }
+            return null;
+        }, ignored -> {
+            containers
+                .computeIfAbsent(container.worldUuid(), k -> new ConcurrentHashMap<>())
+                .put(container.position(), container);
+            callback.accept(new BindResult(true, null));
+        }, error -> callback.accept(new BindResult(false, "数据库错误: " + error.getMessage())));
+    }
+
+    /**
+     * 模拟玩家右键打开该方块，交给领地等保护插件判断（被拒绝则视为无权使用）
+     */
+    private boolean canAccess(Player player, Block block) {
+        PlayerInteractEvent event = new PlayerInteractEvent(player, Action.RIGHT_CLICK_BLOCK,
+            player.getInventory().getItemInMainHand(), block, BlockFace.UP, EquipmentSlot.HAND);
+        Bukkit.getPluginManager().callEvent(event);
+        return event.useInteractedBlock() != Event.Result.DENY;
+    }
+
+    /**
+     * 容器方块自身的物品栏（大箱子只取这一半，避免两个绑定共享同一个物品栏）
+     */
+    private static Inventory blockInventory(Container container) {
+        return container instanceof Chest chest ? chest.getBlockInventory() : container.getInventory();
+    }
+
+    /**
+     * 解绑自动出售容器（异步）
+     */
+    public void unbind(AutoSellContainer container, Consumer<BindResult> callback) {
+        plugin.getDatabaseQueue().submit("unbindAutoSellContainer", conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "DELETE FROM auto_sell_containers WHERE world_uuid = ? AND block_x = ? AND block_y = ? AND block_z = ?")) {
+                ps.setString(1, container.worldUuid().toString());
+                ps.setInt(2, container.position().getBlockX());
+                ps.setInt(3, container.position().getBlockY());
+                ps.setInt(4, container.position().getBlockZ());
+                return ps.executeUpdate() > 0;
+            }
+        }, removed -> {
+            Map<BlockVector, AutoSellContainer> worldContainers = containers.get(container.worldUuid());
+            if (worldContainers != null) {
+                worldContainers.remove(container.position());
+                if (worldContainers.isEmpty()) {
+                    containers.remove(container.worldUuid());
+                }
+            }
+            callback.accept(new BindResult(removed, removed ? null : "该容器未绑定"));
+        }, error -> callback.accept(new BindResult(false, "数据库错误: " + error.getMessage())));
+    }
+
+    // ==================== 定时结算 ====================
+
+    private void tick() {
+        if (!plugin.getShopConfig().isAutoSellEnabled() || !plugin.getShopConfig().isSellSystemEnabled()) return;
+        if (!plugin.getShopManager().isCatalogReady()) return;
+
+        long now = System.currentTimeMillis();
+        if (now < nextCycleMillis) return;
+        nextCycleMillis = now + Math.max(1, plugin.getShopConfig().getAutoSellIntervalSeconds()) * 1000L;
+        startCycle();
+    }
+
+    /**
+     * 开始一轮结算：在各容器所在区域线程取出可回收物品，全部完成后按主人结算
+     */
+    private void startCycle() {
+        List<AutoSellContainer> targets = new ArrayList<>();
+        for (Map<BlockVector, AutoSellContainer> worldContainers : containers.values()) {
+            for (AutoSellContainer container : worldContainers.values()) {
+                if (Bukkit.getPlayer(container.ownerUuid()) != null) {
+                    targets.add(container);
+                }
+            }
+        }
+        if (targets.isEmpty() || !cycleRunning.compareAndSet(false, true)) return;
+
+        SellPriceIndex index = plugin.getShopManager().getSellPriceIndex();
+        Map<UUID, Queue<Drained>> drainedByOwner = new ConcurrentHashMap<>();
+        AtomicInteger pending = new AtomicInteger(targets.size());
+        Runnable finishOne = () -> {
+            if (pending.decrementAndGet() == 0) {
+                cycleRunning.set(false);
+                settleCycle(drainedByOwner);
+            }
+        };
+
+        for (AutoSellContainer container : targets) {
+            World world = Bukkit.getWorld(container.worldUuid());
+            if (world == null) {
+                finishOne.run();
+                continue;
+            }
+            Location location = container.position().toLocation(world);
+            FoliaExecutors.region(plugin, location).execute(() -> {
+                try {
+                    List<SellManager.SoldStack> sold = drain(world, container, index);
+                    if (!sold.isEmpty()) {
+                        drainedByOwner.computeIfAbsent(container.ownerUuid(), k -> new ConcurrentLinkedQueue<>())
+                            .add(new Drained(container, sold));
+                    }
+                } catch (Exception e) {
+                    plugin.getLogger().warning("自动出售容器取出物品失败: " + e.getMessage());
+                } finally {
+                    finishOne.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * 取出容器中所有可回收的物品（在容器所在区域线程执行）
+     * 与 /shop sellall 相同，自定义回收价格只出售普通物品：改过名、附魔等的物品留在容器中
+     */
+    private List<SellManager.SoldStack> drain(World world, AutoSellContainer container, SellPriceIndex index) {
+        BlockVector pos = container.position();
+        // 不为自动出售加载区块
+        if (!world.isChunkLoaded(pos.getBlockX() >> 4, pos.getBlockZ() >> 4)) {
+            return List.of();
+        }
+
+        BlockState state = world.getBlockAt(pos.getBlockX(), pos.getBlockY(), pos.getBlockZ()).getState(false);
+        if (!(state instanceof Container blockContainer)) {
+            // 方块已不是容器（例如被其他插件替换），移除绑定
+            unbind(container, result -> { });
+            return List.of();
+        }
+
+        Inventory inventory = blockInventory(blockContainer);
+        ItemStack[] contents = inventory.getContents();
+        SellPriceIndex.Quote[] quotes = index.quoteAll(contents);
+
+        SellManager sellManager = plugin.getSellManager();
+        List<SellManager.SoldStack> sold = new ArrayList<>();
+        Map<String, ItemStack> plainItems = new HashMap<>();
+        for (int i = 0; i < contents.length; i++) {
+            if (quotes[i] == null || !quotes[i].isSellable()) continue;
+            if (!sellManager.isPlain(contents[i], quotes[i], plainItems)) continue;
+            sold.add(new SellManager.SoldStack(contents[i].clone(), quotes[i]));
+            inventory.setItem(i, null);
+        }
+        return sold;
+    }
+
+    /**
+     * 按主人合并本轮取出的物品并结算：每个主人一次存款，所有主人的存款作为一批提交
+     */
+    private void settleCycle(Map<UUID, Queue<Drained>> drainedByOwner) {
+        Map<Player, List<SellManager.SoldStack>> soldByOwner = new LinkedHashMap<>();
+        Map<UUID, List<Drained>> drainedOfOwner = new HashMap<>();
+        for (Map.Entry<UUID, Queue<Drained>> entry : drainedByOwner.entrySet()) {
+            List<Drained> drained = new ArrayList<>(entry.getValue());
+            Player owner = Bukkit.getPlayer(entry.getKey());
+            if (owner == null) {
+                // 取出期间主人下线，物品放回容器
+                returnToContainers(drained);
+                continue;
+            }
+
+            List<SellManager.SoldStack> sold = new ArrayList<>();
+            for (Drained d : drained) {
+                sold.addAll(d.sold());
+            }
+            soldByOwner.put(owner, sold);
+            drainedOfOwner.put(owner.getUniqueId(), drained);
+        }
+        if (soldByOwner.isEmpty()) return;
+
+        plugin.getSellManager().settleAll(soldByOwner, "auto-sell-success", owner -> {
+            plugin.getLogger().warning("自动出售存款失败，物品已放回容器（玩家 " + owner.getName() + "）");
+            returnToContainers(drainedOfOwner.get(owner.getUniqueId()));
+        });
+    }
+
+    /**
+     * 将取出的物品放回原容器（放不下或容器已不存在时掉落在容器位置）
+     */
+    private void returnToContainers(List<Drained> drained) {
+        for (Drained d : drained) {
+            World world = Bukkit.getWorld(d.container().worldUuid());
+            if (world == null) {
+                plugin.getLogger().warning("自动出售容器所在世界不存在，" + d.sold().size() + " 组物品无法放回");
+                continue;
+            }
+            Location location = d.container().position().toLocation(world);
+            FoliaExecutors.region(plugin, location).execute(() -> {
+                ItemStack[] items = d.sold().stream().map(SellManager.SoldStack::item).toArray(ItemStack[]::new);
+                Collection<ItemStack> leftover = List.of(items);
+                if (location.getBlock().getState(false) instanceof Container blockContainer) {
+                    leftover = blockInventory(blockContainer).addItem(items).values();
+                }
+                Location dropLocation = location.clone().add(0.5, 1.0, 0.5);
+                for (ItemStack item : leftover) {
+                    world.dropItemNaturally(dropLocation, item);
+                }
+            });
+        }
+    }
+
+    /**
+     * 停止定时结算（插件关闭时调用）
+     */
+    public void shutdown() {
+        timer.cancel();
+    }
+}
@@ -0,0 +1,275 @@
+package dev.user.shop.shop;
+
+import dev.user.shop.util.ItemNameTranslations;
+import dev.user.shop.util.ItemUtil;
+
+import java.util.*;
+
+/**
+ * 商店目录的搜索索引（不可变）
+ * 对每个已启用商品的 ID、物品ID（及其路径部分）、纯文本显示名称建立字符 n-gram 倒排表：
+ * - 单字符查询直接取单字倒排表
+ * - 多字符查询取查询中所有二元组倒排表的交集，再逐个确认包含关系并打分
+ * 查询只访问命中的倒排表，不遍历目录；中文名称按字切分，不需要分词。
+ * 没有自定义名称的物品通过 {@link ItemNameTranslations} 解析出中文名称，同时保留英文名称。
+ *
+ * 每个商品的可搜索文本和 n-gram 缓存在 {@link Entry} 中，由上一版索引派生新索引时，
+ * 未变化的商品直接复用已有条目，只重新切分变化的商品。
+ */
+public final class CatalogSearchIndex {
+
+    // 单次查询最多返回的结果数
+    public static final int MAX_RESULTS = 280;
+
+    static final CatalogSearchIndex EMPTY = new CatalogSearchIndex(new Entry[0]);
+
+    private final Entry[] entries;
+    private final Map<Integer, int[]> unigrams;
+    private final Map<Integer, int[]> bigrams;
+
+    private CatalogSearchIndex(Entry[] entries) {
+        this.entries = entries;
+
+        Map<Integer, List<Integer>> uni = new HashMap<>();
+        Map<Integer, List<Integer>> bi = new HashMap<>();
+        for (int i = 0; i < entries.length; i++) {
+            for (int gram : entries[i].unigrams) {
+                uni.computeIfAbsent(gram, k -> new ArrayList<>()).add(i);
+            }
+            for (int gram : entries[i].bigrams) {
+                bi.computeIfAbsent(gram, k -> new ArrayList<>()).add(i);
+            }
+        }
+        this.unigrams = toPostings(uni);
+        this.bigrams = toPostings(bi);
+    }
+
+    /**
+     * 为目录中已启用的商品建立索引
+     * @param previous 上一版索引（可为 null），其中同一商品对象的条目会被复用
+     * @param changedIds 需要重新切分的商品ID（previous 为 null 时忽略）
+     */
+    static CatalogSearchIndex build(Collection<ShopItem> items, CatalogSearchIndex previous, Set<String> changedIds) {
+        Map<String, Entry> reusable = new HashMap<>();
+        if (previous != null) {
+            for (Entry entry : previous.entries) {
+                if (!changedIds.contains(entry.item.getId())) {
+                    reusable.put(entry.item.getId(), entry);
+                }
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(items.size());
+        for (ShopItem item : items) {
+            if (!item.isEnabled()) continue;
+            Entry entry = reusable.get(item.getId());
+            entries.add(entry != null && entry.item == item ? entry : new Entry(item));
+        }
+        return new CatalogSearchIndex(entries.toArray(new Entry[0]));
+    }
+
+    /**
+     * 搜索商品，按匹配程度排序（完全匹配 > 前缀匹配 > 包含），同级按文本长度、目录顺序排序
+     */
+    public List<ShopItem> search(String query) {
+        String q = normalize(query);
+        if (q.isEmpty()) return List.of();
+
+        int[] candidates;
+        if (q.length() == 1) {
+            candidates = unigrams.get((int) q.charAt(0));
+        } else {
+            candidates = null;
+            for (int i = 0; i + 1 < q.length(); i++) {
+                int[] postings = bigrams.get(bigram(q.charAt(i), q.charAt(i + 1)));
+                if (postings == null) return List.of();
+                candidates = candidates == null ? postings : intersect(candidates, postings);
+                if (candidates.length == 0) return List.of();
+            }
+        }
+        if (candidates == null) return List.of();
+
+        // 二元组全部命中不代表连续出现，逐个确认并打分
+        long[] scored = new long[candidates.length];
+        int count = 0;
+        for (int ordinal : candidates) {
+            int rank = entries[ordinal].rank(q);
+            if (rank < 0) continue;
+            // 高位：匹配级别和文本长度，低位：目录顺序
+            scored[count++] = ((long) rank << 32) | ordinal;
+        }
+        Arrays.sort(scored, 0, count);
+
+        int limit = Math.min(count, MAX_RESULTS);
+        List<ShopItem> result = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            result.add(entries[(int) scored[i]].item);
+        }
+        return result;
+    }
+
+    public int getIndexedCount() {
+        return entries.length;
+    }
+
+    public int getGramCount() {
+        return unigrams.size() + bigrams.size();
+    }
+
+    /**
+     * 统一大小写并去掉颜色代码和空白
+     */
+    static String normalize(String text) {
+        if (text == null) return "";
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '§' || c == '&') {
+                if (i + 1 < text.length() && isColorCode(text.charAt(i + 1))) {
+                    i++;
+                    continue;
+                }
+            }
+            if (Character.isWhitespace(c)) continue;
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static boolean isColorCode(char c) {
+        return "0123456789abcdefklmnorxABCDEFKLMNORX".indexOf(c) >= 0;
+    }
+
+    /**
+     * 显示名称的纯文本（可能有多个）：
+     * 有自定义名称时直接使用；<lang:键> 形式时取翻译后的中文名称，以及默认名或材质英文名
+     */
+    private static List<String> plainNames(ShopItem item) {
+        if (item.getDisplayItem() == null) return List.of();
+        String name = ItemUtil.getDisplayName(item.getDisplayItem());
+        if (!name.startsWith("<lang:")) {
+            return List.of(name);
+        }
+
+        List<String> names = new ArrayList<>(2);
+        int close = name.indexOf('>');
+        if (close > 6) {
+            String translated = ItemNameTranslations.translate(name.substring(6, close));
+            if (translated != null && !translated.isEmpty()) {
+                names.add(translated);
+            }
+        }
+        int end = name.indexOf("</lang>");
+        if (close > 0 && end > close + 1) {
+            names.add(name.substring(close + 1, end));
+        } else {
+            names.add(item.getDisplayItem().getType().name().replace('_', ' '));
+        }
+        return names;
+    }
+
+    /**
+     * 物品ID的路径部分（去掉命名空间，例如 default:ruby_sword -> ruby_sword）
+     */
+    private static String keyPath(String itemKey) {
+        if (itemKey == null) return "";
+        int colon = itemKey.indexOf(':');
+        return colon >= 0 ? itemKey.substring(colon + 1) : itemKey;
+    }
+
+    private static int bigram(char a, char b) {
+        return (a << 16) | b;
+    }
+
+    private static Map<Integer, int[]> toPostings(Map<Integer, List<Integer>> lists) {
+        Map<Integer, int[]> postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Integer, List<Integer>> entry : lists.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            postings.put(entry.getKey(), array);
+        }
+        return postings;
+    }
+
+    /**
+     * 两个有序倒排表的交集
+     */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * 单个商品的可搜索文本及其 n-gram（同一字段内切分，不跨字段）
+     */
+    private static final class Entry {
+        private final ShopItem item;
+        private final String[] fields;
+        private final int[] unigrams;
+        private final int[] bigrams;
+
+        Entry(ShopItem item) {
+            this.item = item;
+            List<String> texts = new ArrayList<>(5);
+            texts.add(normalize(item.getId()));
+            for (String name : plainNames(item)) {
+                texts.add(normalize(name));
+            }
+            texts.add(normalize(item.getItemKey()));
+            texts.add(normalize(keyPath(item.getItemKey())));
+            this.fields = texts.toArray(new String[0]);
+
+            Set<Integer> uni = new HashSet<>();
+            Set<Integer> bi = new HashSet<>();
+            for (String field : fields) {
+                for (int i = 0; i < field.length(); i++) {
+                    uni.add((int) field.charAt(i));
+                    if (i + 1 < field.length()) {
+                        bi.add(bigram(field.charAt(i), field.charAt(i + 1)));
+                    }
+                }
+            }
+            this.unigrams = uni.stream().mapToInt(Integer::intValue).toArray();
+            this.bigrams = bi.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * @return 匹配得分（越小越靠前），不匹配返回 -1
+         */
+        int rank(String query) {
+            int best = -1;
+            for (String field : fields) {
+                int level;
+                if (field.equals(query)) {
+                    level = 0;
+                } else if (field.startsWith(query)) {
+                    level = 1;
+                } else if (field.contains(query)) {
+                    level = 2;
+                } else {
+                    continue;
+                }
+                int score = (level << 16) | Math.min(field.length(), 0xFFFF);
+                if (best < 0 || score < best) {
+                    best = score;
+                }
+            }
+            return best;
+        }
+    }
+}
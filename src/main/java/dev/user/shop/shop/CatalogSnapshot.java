@@ -0,0 +1,327 @@
+package dev.user.shop.shop;
+
+import dev.user.shop.util.ItemUtil;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.*;
+
+/**
+ * 不可变的商店目录快照
+ * 加载/重载时先在私有的 Map 中构建完整的新目录，构建完成后由 {@link ShopManager} 用一次 volatile 写发布。
+ * GUI、出售界面等读取方拿到快照引用后无锁读取，不会看到清空或加载到一半的目录。
+ * 单个商品的增删同样复制出新快照再发布（写时复制），已发布的快照永远不会被修改。
+ *
+ * 版本号随每次发布单调递增，GUI 可以据此判断自己展示的内容是否已过期。
+ * 注意：快照只固定目录结构，其中的 {@link ShopItem} 仍携带库存等运行时状态。
+ */
+public final class CatalogSnapshot {
+
+    // 分类界面大小（6 行）
+    public static final int LAYOUT_SIZE = 54;
+    // 自动放置商品的槽位：第 2-5 行中间 7 列
+    private static final int[] CONTENT_SLOTS = {
+        10, 11, 12, 13, 14, 15, 16,
+        19, 20, 21, 22, 23, 24, 25,
+        28, 29, 30, 31, 32, 33, 34,
+        37, 38, 39, 40, 41, 42, 43
+    };
+
+    public static final CatalogSnapshot EMPTY = new CatalogSnapshot(0, Map.of(), Map.of());
+
+    private final long version;
+    private final Map<String, ShopItem> items;
+    private final Map<String, ShopManager.ShopCategory> categories;
+    // 分类ID（小写） -> 已启用商品（按槽位、ID 排序）
+    private final Map<String, ShopItem[]> itemsByCategory;
+    // 分类ID（小写） -> 分类界面的分页布局
+    private final Map<String, CategoryLayout> layoutsByCategory;
+    // 物品指纹 -> 指纹相同的商店物品（按目录顺序），按物品查找时只比较同一桶内的商品
+    private final Map<Fingerprint, ShopItem[]> itemsByFingerprint;
+    // 搜索索引在首次搜索时建立；建立前保留上一版快照的索引用于复用未变化的商品
+    private volatile CatalogSearchIndex searchIndex;
+    private CatalogSearchIndex previousSearchIndex;
+    private Set<String> changedItemIds;
+
+    CatalogSnapshot(long version, Map<String, ShopItem> items, Map<String, ShopManager.ShopCategory> categories) {
+        this(version, items, categories, null, null);
+    }
+
+    private CatalogSnapshot(long version, Map<String, ShopItem> items, Map<String, ShopManager.ShopCategory> categories,
+                            CatalogSearchIndex previousSearchIndex, Set<String> changedItemIds) {
+        this.version = version;
+        this.previousSearchIndex = previousSearchIndex;
+        this.changedItemIds = changedItemIds;
+        this.items = Collections.unmodifiableMap(new LinkedHashMap<>(items));
+        this.categories = Collections.unmodifiableMap(new LinkedHashMap<>(categories));
+
+        Map<String, List<ShopItem>> grouped = new HashMap<>();
+        Map<Fingerprint, List<ShopItem>> byFingerprint = new HashMap<>();
+        for (ShopItem item : this.items.values()) {
+            if (item.isEnabled()) {
+                grouped.computeIfAbsent(categoryKey(item.getCategory()), k -> new ArrayList<>()).add(item);
+            }
+            if (item.getDisplayItem() != null) {
+                byFingerprint.computeIfAbsent(Fingerprint.of(item.getDisplayItem()), k -> new ArrayList<>(1)).add(item);
+            }
+        }
+
+        Comparator<ShopItem> order = Comparator.comparingInt(ShopItem::getSlot).thenComparing(ShopItem::getId);
+        Map<String, ShopItem[]> byCategory = new HashMap<>();
+        for (Map.Entry<String, List<ShopItem>> entry : grouped.entrySet()) {
+            ShopItem[] array = entry.getValue().toArray(new ShopItem[0]);
+            Arrays.sort(array, order);
+            byCategory.put(entry.getKey(), array);
+        }
+        this.itemsByCategory = byCategory;
+
+        Map<String, CategoryLayout> layouts = new HashMap<>();
+        for (Map.Entry<String, ShopItem[]> entry : byCategory.entrySet()) {
+            layouts.put(entry.getKey(), CategoryLayout.of(entry.getValue()));
+        }
+        this.layoutsByCategory = layouts;
+
+        Map<Fingerprint, ShopItem[]> buckets = new HashMap<>(byFingerprint.size() * 2);
+        for (Map.Entry<Fingerprint, List<ShopItem>> entry : byFingerprint.entrySet()) {
+            buckets.put(entry.getKey(), entry.getValue().toArray(new ShopItem[0]));
+        }
+        this.itemsByFingerprint = buckets;
+    }
+
+    /**
+     * 复制出加入（或替换）一个商品后的新快照
+     */
+    CatalogSnapshot withItem(long newVersion, ShopItem item) {
+        Map<String, ShopItem> copy = new LinkedHashMap<>(items);
+        copy.put(item.getId(), item);
+        return derive(newVersion, copy, item.getId());
+    }
+
+    /**
+     * 复制出移除一个商品后的新快照
+     */
+    CatalogSnapshot withoutItem(long newVersion, String id) {
+        Map<String, ShopItem> copy = new LinkedHashMap<>(items);
+        copy.remove(id);
+        return derive(newVersion, copy, id);
+    }
+
+    /**
+     * 内容不变、重建索引后的新快照（商品显示物品等被原地修改后调用）
+     */
+    CatalogSnapshot reindex(long newVersion) {
+        return new CatalogSnapshot(newVersion, items, categories);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public ShopItem getItem(String id) {
+        return items.get(id);
+    }
+
+    public Collection<ShopItem> getItems() {
+        return items.values();
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    public ShopManager.ShopCategory getCategory(String id) {
+        return categories.get(id);
+    }
+
+    public Collection<ShopManager.ShopCategory> getCategories() {
+        return categories.values();
+    }
+
+    /**
+     * 获取分类下已启用的商品（分类ID不区分大小写）
+     */
+    public List<ShopItem> getItemsByCategory(String category) {
+        ShopItem[] array = itemsByCategory.get(categoryKey(category));
+        return array != null ? Collections.unmodifiableList(Arrays.asList(array)) : List.of();
+    }
+
+    /**
+     * 获取分类界面的页数（至少 1 页）
+     */
+    public int getCategoryPageCount(String category) {
+        CategoryLayout layout = layoutsByCategory.get(categoryKey(category));
+        return layout != null ? layout.getPageCount() : 1;
+    }
+
+    /**
+     * 获取分类界面某一页的槽位布局（长度为界面大小，空槽位为 null）
+     * 只生成所请求的一页，开销与分类商品总数无关
+     */
+    public ShopItem[] getCategoryPage(String category, int page) {
+        CategoryLayout layout = layoutsByCategory.get(categoryKey(category));
+        return layout != null ? layout.getPage(page) : new ShopItem[LAYOUT_SIZE];
+    }
+
+    /**
+     * 查找商品在其分类界面中的页码（不在分类界面中时返回 -1）
+     */
+    public int findCategoryPage(ShopItem item) {
+        CategoryLayout layout = layoutsByCategory.get(categoryKey(item.getCategory()));
+        return layout != null ? layout.findPage(item) : -1;
+    }
+
+    /**
+     * 分类界面的分页布局
+     * 第 1 页先放置指定了有效槽位的商品（槽位冲突时后者改为自动放置），再把其余商品按顺序放入空位；
+     * 第 1 页放不下的商品依次排在后续页的内容槽位中
+     */
+    private static final class CategoryLayout {
+        private final ShopItem[] firstPage;
+        private final ShopItem[] overflow;
+
+        private CategoryLayout(ShopItem[] firstPage, ShopItem[] overflow) {
+            this.firstPage = firstPage;
+            this.overflow = overflow;
+        }
+
+        static CategoryLayout of(ShopItem[] items) {
+            ShopItem[] firstPage = new ShopItem[LAYOUT_SIZE];
+            List<ShopItem> autoPlaced = new ArrayList<>();
+            for (ShopItem item : items) {
+                int slot = item.getSlot();
+                if (slot > 0 && slot < 45 && slot % 9 != 0 && slot % 9 != 8 && firstPage[slot] == null) {
+                    firstPage[slot] = item;
+                } else {
+                    autoPlaced.add(item);
+                }
+            }
+
+            int placed = 0;
+            for (int slot : CONTENT_SLOTS) {
+                if (placed >= autoPlaced.size()) break;
+                if (firstPage[slot] == null) {
+                    firstPage[slot] = autoPlaced.get(placed++);
+                }
+            }
+            ShopItem[] overflow = autoPlaced.subList(placed, autoPlaced.size()).toArray(new ShopItem[0]);
+            return new CategoryLayout(firstPage, overflow);
+        }
+
+        int getPageCount() {
+            return 1 + (overflow.length + CONTENT_SLOTS.length - 1) / CONTENT_SLOTS.length;
+        }
+
+        int findPage(ShopItem item) {
+            for (ShopItem placed : firstPage) {
+                if (placed == item) return 0;
+            }
+            for (int i = 0; i < overflow.length; i++) {
+                if (overflow[i] == item) return 1 + i / CONTENT_SLOTS.length;
+            }
+            return -1;
+        }
+
+        ShopItem[] getPage(int page) {
+            if (page <= 0) {
+                return firstPage.clone();
+            }
+            ShopItem[] result = new ShopItem[LAYOUT_SIZE];
+            int start = (page - 1) * CONTENT_SLOTS.length;
+            for (int i = 0; i < CONTENT_SLOTS.length && start + i < overflow.length; i++) {
+                result[CONTENT_SLOTS[i]] = overflow[start + i];
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 获取搜索索引（首次调用时建立，之后的搜索不再遍历目录）
+     */
+    public CatalogSearchIndex getSearchIndex() {
+        CatalogSearchIndex index = searchIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = searchIndex;
+                if (index == null) {
+                    index = items.isEmpty() ? CatalogSearchIndex.EMPTY
+                        : CatalogSearchIndex.build(items.values(), previousSearchIndex, changedItemIds);
+                    searchIndex = index;
+                    previousSearchIndex = null;
+                    changedItemIds = null;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 派生单个商品变化后的新快照，并传递可复用的搜索索引：
+     * 本快照的索引已建立时用它，否则沿用本快照保留的上一版索引，同时累积变化过的商品
+     */
+    private CatalogSnapshot derive(long newVersion, Map<String, ShopItem> newItems, String changedId) {
+        synchronized (this) {
+            if (searchIndex != null) {
+                return new CatalogSnapshot(newVersion, newItems, categories, searchIndex, Set.of(changedId));
+            }
+            if (previousSearchIndex == null) {
+                return new CatalogSnapshot(newVersion, newItems, categories);
+            }
+            Set<String> changed = new HashSet<>(changedItemIds);
+            changed.add(changedId);
+            return new CatalogSnapshot(newVersion, newItems, categories, previousSearchIndex, changed);
+        }
+    }
+
+    /**
+     * 通过物品查找对应的商店物品
+     * 指纹与 {@link ItemStack#isSimilar} 一致（相似的物品指纹一定相同），未命中即表示没有对应商品，无需遍历目录
+     */
+    public ShopItem findByStack(ItemStack item) {
+        if (item == null) return null;
+
+        ShopItem[] bucket = itemsByFingerprint.get(Fingerprint.of(item));
+        if (bucket == null) return null;
+        for (ShopItem shopItem : bucket) {
+            if (shopItem.getDisplayItem().isSimilar(item)) {
+                return shopItem;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 指纹索引（用于在目录之上建立其他按物品查找的索引）
+     */
+    Map<Fingerprint, ShopItem[]> getFingerprintBuckets() {
+        return itemsByFingerprint;
+    }
+
+    /**
+     * 指纹索引的桶数和最大桶大小（用于诊断）
+     */
+    public int getFingerprintBucketCount() {
+        return itemsByFingerprint.size();
+    }
+
+    public int getMaxFingerprintBucketSize() {
+        int max = 0;
+        for (ShopItem[] bucket : itemsByFingerprint.values()) {
+            max = Math.max(max, bucket.length);
+        }
+        return max;
+    }
+
+    private static String categoryKey(String category) {
+        return category != null ? category.toLowerCase(Locale.ROOT) : "";
+    }
+
+    /**
+     * 物品指纹：物品ID（CraftEngine 物品为 CE ID）+ 物品组件的哈希
+     * 组件哈希取自 ItemMeta 的内容哈希，与 isSimilar 使用的 ItemMeta 相等比较一致，且不包含数量；
+     * 不同物品偶尔指纹相同时落在同一个桶里，由 isSimilar 区分，不会查错
+     */
+    record Fingerprint(String itemKey, int componentHash) {
+        static Fingerprint of(ItemStack item) {
+            return new Fingerprint(ItemUtil.getItemKey(item), item.hasItemMeta() ? item.getItemMeta().hashCode() : 0);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package dev.user.shop.shop;
+
+import dev.user.shop.FoliaShopPlugin;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 本地二进制目录快照（catalog.snapshot，单服 H2 模式）
+ * 目录发布后把完整解析好的商品定义（与配置同步之后的结果，不含库存）写入数据文件夹；
+ * 下次启动时若配置文件校验和一致，则内存映射读取快照，跳过逐行读取 shop_items、
+ * 解析 JSON 列以及与 shop.yml 的比较，只需一次查询商品ID和库存：
+ * - 数据库中的商品ID集合与快照不一致时视为失效，回退到完整加载
+ * - 目录每次变化（包括管理员修改单个商品）后延迟写入，写入时先写临时文件再原子替换
+ *
+ * MySQL 可能被多个服务器共享，其他服务器修改商品后本地快照无法察觉，因此不启用。
+ */
+public class CatalogSnapshotFile {
+
+    private static final String FILE_NAME = "catalog.snapshot";
+    private static final int MAGIC = 0x46534353; // "FSCS"
+    private static final int FORMAT_VERSION = 1;
+    private static final long WRITE_DELAY_MS = 1000;
+
+    private final FoliaShopPlugin plugin;
+    private final File file;
+    private final boolean enabled;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+    private volatile Supplier<CatalogSnapshot> pendingSource;
+    private volatile long pendingConfigHash;
+
+    public CatalogSnapshotFile(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), FILE_NAME);
+        this.enabled = plugin.getShopConfig().isCatalogSnapshotEnabled() && !plugin.getDatabaseManager().isMySQL();
+        if (enabled) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "FoliaShop-Catalog-Snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+        } else if (file.exists() && !file.delete()) {
+            plugin.getLogger().warning("删除目录快照失败: " + file.getName());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算商品配置的校验和（shop.yml 和主配置文件内容）
+     */
+    public long computeConfigHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String name : new String[] {"shop.yml", "config.yml"}) {
+                File configFile = new File(plugin.getDataFolder(), name);
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                if (configFile.exists()) {
+                    digest.update(Files.readAllBytes(configFile.toPath()));
+                }
+            }
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            plugin.getLogger().warning("计算配置校验和失败: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 读取快照中的商品定义（库存为 -1，需由调用方从数据库填充）
+     * @return 商品（按目录顺序），快照不存在、已损坏或配置校验和不一致时返回 null
+     */
+    public Map<String, ShopItem> read(long configHash) {
+        if (!enabled || !file.exists()) return null;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (buffer.getLong() != configHash) {
+                plugin.getLogger().info("商品配置已变化，目录快照失效");
+                return null;
+            }
+
+            int count = buffer.getInt();
+            Map<String, ShopItem> items = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                ShopItem item = readItem(buffer);
+                items.put(item.getId(), item);
+            }
+            return items;
+        } catch (IOException | RuntimeException e) {
+            // BufferUnderflowException 等表示文件不完整
+            plugin.getLogger().warning("读取目录快照失败（将完整加载）: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private ShopItem readItem(ByteBuffer buffer) {
+        String id = readString(buffer);
+        String itemKey = readString(buffer);
+        double buyPrice = buffer.getDouble();
+        double sellPrice = buffer.getDouble();
+        int buyPoints = buffer.getInt();
+        String category = readString(buffer);
+        int slot = buffer.getInt();
+        int dailyLimit = buffer.getInt();
+        int playerLimit = buffer.getInt();
+        boolean giveItem = buffer.get() != 0;
+
+        int componentCount = buffer.getInt();
+        Map<String, String> components = new HashMap<>(componentCount * 2);
+        for (int i = 0; i < componentCount; i++) {
+            components.put(readString(buffer), readString(buffer));
+        }
+        List<String> commands = readStringList(buffer);
+        List<String> conditions = readStringList(buffer);
+
+        ShopItem item = new ShopItem(id, itemKey, buyPrice, sellPrice, buyPoints, -1, category, slot, dailyLimit, components);
+        item.setPlayerLimit(playerLimit);
+        item.setCommands(commands);
+        item.setConditions(conditions);
+        item.setGiveItem(giveItem);
+        return item;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readStringList(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(buffer));
+        }
+        return list;
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 延迟写入快照，短时间内的多次变化只写一次（写入时读取最新目录）
+     * @param source 提供最新目录
+     * @param configHash 目录所基于的配置校验和
+     */
+    public void scheduleWrite(Supplier<CatalogSnapshot> source, long configHash) {
+        if (!enabled) return;
+        pendingSource = source;
+        pendingConfigHash = configHash;
+        if (writeScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::writePending, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writePending() {
+        writeScheduled.set(false);
+        Supplier<CatalogSnapshot> source = pendingSource;
+        if (source == null) return;
+        try {
+            write(source.get(), pendingConfigHash);
+        } catch (IOException e) {
+            plugin.getLogger().warning("写入目录快照失败: " + e.getMessage());
+        }
+    }
+
+    private void write(CatalogSnapshot snapshot, long configHash) throws IOException {
+        File temp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(configHash);
+            out.writeInt(snapshot.getItemCount());
+            for (ShopItem item : snapshot.getItems()) {
+                writeItem(out, item);
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeItem(DataOutputStream out, ShopItem item) throws IOException {
+        writeString(out, item.getId());
+        writeString(out, item.getItemKey());
+        out.writeDouble(item.getBuyPrice());
+        out.writeDouble(item.getSellPrice());
+        out.writeInt(item.getBuyPoints());
+        writeString(out, item.getCategory());
+        out.writeInt(item.getSlot());
+        out.writeInt(item.getDailyLimit());
+        out.writeInt(item.getPlayerLimit());
+        out.writeByte(item.isGiveItem() ? 1 : 0);
+
+        Map<String, String> components = item.getComponents();
+        out.writeInt(components.size());
+        for (Map.Entry<String, String> entry : components.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+        writeStringList(out, item.getCommands());
+        writeStringList(out, item.getConditions());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStringList(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String value : list) {
+            writeString(out, value);
+        }
+    }
+
+    /**
+     * 删除快照（数据库被整体替换后调用）
+     */
+    public void invalidate() {
+        pendingSource = null;
+        if (file.exists() && !file.delete()) {
+            plugin.getLogger().warning("删除目录快照失败: " + file.getName());
+        }
+    }
+
+    /**
+     * 写入尚未写入的快照并停止写入线程
+     */
+    public void shutdown() {
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+        }
+        if (writeScheduled.get()) {
+            writePending();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package dev.user.shop.shop;
+
+import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.database.DatabaseQueue;
+import org.bukkit.entity.Player;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * 玩家限购计数缓存
+ * 玩家进服时用一次查询加载其每日限购（daily_limits）和终身限购（player_item_limits）计数，退出时移除。
+ * 购买时只读写内存中的计数，变更通过数据库队列按玩家UUID顺序异步写回：
+ * - 每日计数写回绝对值和所属日期
+ * - 终身计数写回增量，与管理员重置并发时不会覆盖重置结果
+ *
+ * 每日计数按 daily-reset-hour 划分日期，跨过重置时间后首次访问时在内存中清零，不需要重新查询。
+ * MySQL 跨服部署时玩家同一时间只在一个服务器上购买，进服时重新加载即可拿到其他服务器写入的计数。
+ */
+public class PlayerLimitCache {
+
+    private static final long LOAD_TIMEOUT_SECONDS = 5;
+
+    private static final String LOAD_SQL =
+        "SELECT 'D' AS kind, item_id, buy_count FROM daily_limits WHERE player_uuid = ? AND last_date = ? " +
+        "UNION ALL " +
+        "SELECT 'P' AS kind, item_id, buy_count FROM player_item_limits WHERE player_uuid = ?";
+
+    private final FoliaShopPlugin plugin;
+    private final Map<UUID, PlayerLimits> cache = new ConcurrentHashMap<>();
+
+    // 当前限购日期，只在跨过重置时间（或重置时间配置变化）时重新计算
+    private volatile String currentDay;
+    private volatile long nextRolloverMillis;
+    private volatile int currentResetHour = -1;
+
+    public PlayerLimitCache(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 获取当前限购日期（yyyy-MM-dd），重置时间之前仍算作前一天
+     */
+    public String today() {
+        int resetHour = plugin.getShopConfig().getDailyResetHour();
+        if (System.currentTimeMillis() >= nextRolloverMillis || resetHour != currentResetHour) {
+            synchronized (this) {
+                if (System.currentTimeMillis() >= nextRolloverMillis || resetHour != currentResetHour) {
+                    ZonedDateTime now = ZonedDateTime.now();
+                    LocalDate day = now.minusHours(resetHour).toLocalDate();
+                    ZonedDateTime next = day.plusDays(1).atStartOfDay(now.getZone()).plusHours(resetHour);
+                    currentDay = day.toString();
+                    currentResetHour = resetHour;
+                    nextRolloverMillis = next.toInstant().toEpochMilli();
+                }
+            }
+        }
+        return currentDay;
+    }
+
+    // ==================== 加载与移除 ====================
+
+    /**
+     * 玩家进服时异步加载限购计数
+     * 先移除可能残留的旧缓存，加载完成前的购买会通过 {@link #getOrLoad(UUID)} 排在加载之后读取
+     */
+    public void load(UUID playerUuid) {
+        cache.remove(playerUuid);
+        loadAsync(playerUuid).thenAccept(limits -> {
+            cache.putIfAbsent(playerUuid, limits);
+            // 加载期间玩家已退出，不保留缓存
+            if (plugin.getServer().getPlayer(playerUuid) == null) {
+                cache.remove(playerUuid, limits);
+            }
+        }).exceptionally(e -> {
+            plugin.getLogger().warning("加载玩家限购计数失败（将在购买时重试）: " + e.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * 加载所有在线玩家（插件重载或导入备份后）
+     */
+    public void loadOnlinePlayers() {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            load(player.getUniqueId());
+        }
+    }
+
+    /**
+     * 玩家退出时移除缓存（已提交的写回任务仍会按顺序执行）
+     */
+    public void evict(UUID playerUuid) {
+        cache.remove(playerUuid);
+    }
+
+    /**
+     * 获取玩家限购计数，未加载时在当前线程等待加载完成
+     * 加载任务与该玩家的写回任务在同一数据库通道上，读到的一定是已写回的最新计数
+     * 玩家已退出时只返回加载结果，不保留在缓存中（退出时的移除已经执行过）
+     * @return 限购计数，加载失败时返回 null
+     */
+    public PlayerLimits getOrLoad(UUID playerUuid) {
+        PlayerLimits limits = cache.get(playerUuid);
+        if (limits != null) {
+            return limits;
+        }
+
+        try {
+            PlayerLimits loaded = loadAsync(playerUuid).get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            PlayerLimits existing = cache.putIfAbsent(playerUuid, loaded);
+            if (existing != null) {
+                return existing;
+            }
+            // 玩家已退出（或加载期间退出），不保留缓存
+            if (plugin.getServer().getPlayer(playerUuid) == null) {
+                cache.remove(playerUuid, loaded);
+            }
+            return loaded;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            plugin.getLogger().warning("加载玩家限购计数失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private CompletableFuture<PlayerLimits> loadAsync(UUID playerUuid) {
+        String today = today();
+        return plugin.getDatabaseQueue().submitAsync("loadPlayerLimits", playerUuid,
+            DatabaseQueue.Priority.INTERACTIVE_READ, conn -> query(conn, playerUuid, today));
+    }
+
+    private PlayerLimits query(Connection conn, UUID playerUuid, String today) throws SQLException {
+        PlayerLimits limits = new PlayerLimits(today);
+        try (PreparedStatement ps = conn.prepareStatement(LOAD_SQL)) {
+            ps.setString(1, playerUuid.toString());
+            ps.setString(2, today);
+            ps.setString(3, playerUuid.toString());
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                String itemId = rs.getString("item_id");
+                int count = rs.getInt("buy_count");
+                if ("D".equals(rs.getString("kind"))) {
+                    limits.daily.put(itemId, count);
+                } else {
+                    limits.lifetime.put(itemId, count);
+                }
+            }
+        }
+        return limits;
+    }
+
+    // ==================== 计数变更 ====================
+
+    /**
+     * 增加每日购买计数并异步写回
+     */
+    public void recordDaily(UUID playerUuid, PlayerLimits limits, String itemId, int amount) {
+        String today = today();
+        int newCount = limits.addDaily(itemId, amount, today);
+
+        plugin.getDatabaseQueue().submit("writeDailyLimit", playerUuid, conn -> {
+            boolean isMySQL = plugin.getDatabaseManager().isMySQL();
+            String sql = isMySQL
+                ? "INSERT INTO daily_limits (player_uuid, item_id, buy_count, last_date) VALUES (?, ?, ?, ?) " +
+                  "ON DUPLICATE KEY UPDATE buy_count = ?, last_date = ?"
+                : "MERGE INTO daily_limits KEY(player_uuid, item_id) VALUES (?, ?, ?, ?)";
+
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, playerUuid.toString());
+                ps.setString(2, itemId);
+                ps.setInt(3, newCount);
+                ps.setString(4, today);
+                if (isMySQL) {
+                    ps.setInt(5, newCount);
+                    ps.setString(6, today);
+                }
+                ps.executeUpdate();
+            }
+            return null;
+        }, null, error -> plugin.getLogger().warning("写回每日购买计数失败 [" + playerUuid + ", " + itemId + "]: " + error.getMessage()));
+    }
+
+    /**
+     * 增加终身购买计数并异步写回
+     */
+    public void recordLifetime(UUID playerUuid, PlayerLimits limits, String itemId, int amount) {
+        limits.addLifetime(itemId, amount);
+
+        plugin.getDatabaseQueue().submit("writePlayerLimit", playerUuid, conn -> {
+            boolean isMySQL = plugin.getDatabaseManager().isMySQL();
+            String sql = isMySQL
+                ? "INSERT INTO player_item_limits (player_uuid, item_id, buy_count) VALUES (?, ?, ?) " +
+                  "ON DUPLICATE KEY UPDATE buy_count = buy_count + ?"
+                : "MERGE INTO player_item_limits KEY(player_uuid, item_id) VALUES (?, ?, " +
+                  "COALESCE((SELECT buy_count FROM player_item_limits WHERE player_uuid = ? AND item_id = ?), 0) + ?)";
+
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, playerUuid.toString());
+                ps.setString(2, itemId);
+                if (isMySQL) {
+                    ps.setInt(3, amount);
+                    ps.setInt(4, amount);
+                } else {
+                    ps.setString(3, playerUuid.toString());
+                    ps.setString(4, itemId);
+                    ps.setInt(5, amount);
+                }
+                ps.executeUpdate();
+            }
+            return null;
+        }, null, error -> plugin.getLogger().warning("写回终身购买计数失败 [" + playerUuid + ", " + itemId + "]: " + error.getMessage()));
+    }
+
+    /**
+     * 同步管理员重置终身限购后的缓存
+     * @param playerUuid 玩家UUID（null表示所有玩家）
+     * @param itemId 物品ID（null表示所有物品）
+     */
+    public void resetLifetime(UUID playerUuid, String itemId) {
+        if (playerUuid != null) {
+            PlayerLimits limits = cache.get(playerUuid);
+            if (limits != null) {
+                limits.resetLifetime(itemId);
+            }
+            return;
+        }
+        for (PlayerLimits limits : cache.values()) {
+            limits.resetLifetime(itemId);
+        }
+    }
+
+    /**
+     * 丢弃所有缓存并重新加载在线玩家（数据库被整体替换后调用）
+     */
+    public void invalidateAll() {
+        cache.clear();
+        loadOnlinePlayers();
+    }
+
+    public int getCachedPlayerCount() {
+        return cache.size();
+    }
+
+    /**
+     * 单个玩家的限购计数
+     * 同一玩家的购买已由购买管理器串行处理，这里的同步只用于与管理员重置互斥
+     */
+    public static class PlayerLimits {
+        private String day;
+        private final Map<String, Integer> daily = new HashMap<>();
+        private final Map<String, Integer> lifetime = new HashMap<>();
+
+        PlayerLimits(String day) {
+            this.day = day;
+        }
+
+        /**
+         * @return 今日剩余可购买数量
+         */
+        public synchronized int getDailyRemaining(String itemId, int limit, String today) {
+            rollover(today);
+            return Math.max(0, limit - daily.getOrDefault(itemId, 0));
+        }
+
+        /**
+         * @return 今日已购买数量
+         */
+        public synchronized int getDailyCount(String itemId, String today) {
+            rollover(today);
+            return daily.getOrDefault(itemId, 0);
+        }
+
+        /**
+         * @return 终身剩余可购买数量
+         */
+        public synchronized int getLifetimeRemaining(String itemId, int limit) {
+            return Math.max(0, limit - lifetime.getOrDefault(itemId, 0));
+        }
+
+        synchronized int addDaily(String itemId, int amount, String today) {
+            rollover(today);
+            return daily.merge(itemId, amount, Integer::sum);
+        }
+
+        synchronized void addLifetime(String itemId, int amount) {
+            lifetime.merge(itemId, amount, Integer::sum);
+        }
+
+        synchronized void resetLifetime(String itemId) {
+            if (itemId == null) {
+                lifetime.clear();
+            } else {
+                lifetime.remove(itemId);
+            }
+        }
+
+        private void rollover(String today) {
+            if (!today.equals(day)) {
+                daily.clear();
+                day = today;
+            }
+        }
+    }
+}
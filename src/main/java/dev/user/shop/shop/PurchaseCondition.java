@@ -0,0 +1,563 @@
+package dev.user.shop.shop;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.function.Consumer;
+
+/**
+ * 已编译的购买条件
+ * 商品加载时把 conditions 字符串编译为不可变的条件树，购买时直接求值，不再解析字符串。
+ *
+ * 支持的条件:
+ * - permission:xxx          拥有权限
+ * - world:world,world_nether 在指定世界
+ * - region:world,x1,y1,z1,x2,y2,z2 在指定长方体区域内
+ * - time:08:00-22:00        服务器时间在区间内（可跨越午夜，如 22:00-02:00）
+ * - min-balance:1000        金币余额不少于指定值
+ * - max-today:3             今日购买该商品（含本次购买）不超过指定数量
+ *
+ * 组合: {@code !} 取反，{@code &&} 与，{@code ||} 或，括号分组，例如
+ * {@code "permission:vip || (world:event && time:20:00-22:00)"}。
+ * 列表中的多个条件需要同时满足。与、或按求值开销从低到高排列子条件并短路求值，求值过程不分配对象。
+ */
+public abstract class PurchaseCondition {
+
+    // 求值开销（越小越先求值）
+    static final int COST_STATIC = 0;   // 只读取时间等全局状态
+    static final int COST_PLAYER = 1;   // 读取玩家权限、提交时的位置
+    static final int COST_CACHE = 2;    // 读取限购缓存
+    static final int COST_ECONOMY = 3;  // 调用经济插件
+
+    /**
+     * 求值时需要的外部数据，由购买管理器为每次购买提供
+     * 购买条件在购买线程上求值，不能直接读取玩家的世界和位置
+     */
+    public interface Context {
+        double getBalance(Player player);
+
+        int getBoughtToday(Player player, ShopItem item);
+
+        /**
+         * 本次购买的数量
+         */
+        int getAmount();
+
+        /**
+         * 提交购买时玩家的位置（在玩家所在区域线程记录）
+         */
+        Location getLocation();
+    }
+
+    /**
+     * 无条件（空列表或全部为无效条件）
+     */
+    public static final PurchaseCondition ALWAYS = new PurchaseCondition() {
+        @Override
+        public String check(Player player, ShopItem item, Context context) { return null; }
+        @Override
+        int cost() { return COST_STATIC; }
+        @Override
+        String describe() { return "无"; }
+        @Override
+        String negatedFailure() { return "不满足购买条件"; }
+    };
+
+    /**
+     * 求值
+     * @return null 表示通过，否则返回失败原因
+     */
+    public abstract String check(Player player, ShopItem item, Context context);
+
+    abstract int cost();
+
+    /**
+     * 条件描述（用于组合条件的失败原因）
+     */
+    abstract String describe();
+
+    /**
+     * 条件取反后不满足时的失败原因
+     */
+    abstract String negatedFailure();
+
+    /**
+     * 是否需要该商品的今日购买数量（需要时购买成功后也要累计每日计数）
+     */
+    public boolean needsDailyCount() {
+        return false;
+    }
+
+    // ==================== 编译 ====================
+
+    /**
+     * 编译条件列表，列表中的条件需要同时满足
+     * @param warn 无效条件的警告输出（无效条件会被忽略）
+     */
+    public static PurchaseCondition compile(List<String> conditions, Consumer<String> warn) {
+        if (conditions == null || conditions.isEmpty()) {
+            return ALWAYS;
+        }
+        List<PurchaseCondition> compiled = new ArrayList<>();
+        for (String condition : conditions) {
+            try {
+                PurchaseCondition c = new Parser(condition).parse();
+                if (c != ALWAYS) {
+                    compiled.add(c);
+                }
+            } catch (IllegalArgumentException e) {
+                warn.accept("无效的购买条件 \"" + condition + "\": " + e.getMessage());
+            }
+        }
+        return all(compiled);
+    }
+
+    private static PurchaseCondition all(List<PurchaseCondition> children) {
+        if (children.isEmpty()) return ALWAYS;
+        if (children.size() == 1) return children.get(0);
+        return new And(children);
+    }
+
+    /**
+     * 递归下降解析器
+     * expr := and ('||' and)* ; and := unary ('&&' unary)* ; unary := '!' unary | '(' expr ')' | atom
+     */
+    private static final class Parser {
+        private final String input;
+        private int pos;
+
+        Parser(String input) {
+            this.input = input;
+        }
+
+        PurchaseCondition parse() {
+            PurchaseCondition result = parseOr();
+            skipSpaces();
+            if (pos < input.length()) {
+                throw new IllegalArgumentException("多余的字符: " + input.substring(pos));
+            }
+            return result;
+        }
+
+        private PurchaseCondition parseOr() {
+            List<PurchaseCondition> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (consume("||")) {
+                children.add(parseAnd());
+            }
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        private PurchaseCondition parseAnd() {
+            List<PurchaseCondition> children = new ArrayList<>();
+            children.add(parseUnary());
+            while (consume("&&")) {
+                children.add(parseUnary());
+            }
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        private PurchaseCondition parseUnary() {
+            if (consume("!")) {
+                PurchaseCondition inner = parseUnary();
+                return inner instanceof Not not ? not.inner : new Not(inner);
+            }
+            if (consume("(")) {
+                PurchaseCondition inner = parseOr();
+                if (!consume(")")) {
+                    throw new IllegalArgumentException("缺少右括号");
+                }
+                return inner;
+            }
+            return parseAtom();
+        }
+
+        private PurchaseCondition parseAtom() {
+            skipSpaces();
+            int start = pos;
+            while (pos < input.length() && !isOperatorAt(pos)) {
+                pos++;
+            }
+            String atom = input.substring(start, pos).trim();
+            if (atom.isEmpty()) {
+                throw new IllegalArgumentException("缺少条件");
+            }
+            int colon = atom.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("格式应为 类型:参数");
+            }
+            String type = atom.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String arg = atom.substring(colon + 1).trim();
+            return switch (type) {
+                case "permission" -> new Permission(arg);
+                case "world" -> new World(arg);
+                case "region" -> Region.parse(arg);
+                case "time" -> TimeWindow.parse(arg);
+                case "min-balance" -> new MinBalance(parseNumber(arg));
+                case "max-today" -> new MaxToday((int) parseNumber(arg));
+                default -> throw new IllegalArgumentException("未知的条件类型: " + type);
+            };
+        }
+
+        private boolean isOperatorAt(int i) {
+            char c = input.charAt(i);
+            if (c == '(' || c == ')') return true;
+            return (c == '&' || c == '|') && i + 1 < input.length() && input.charAt(i + 1) == c;
+        }
+
+        private boolean consume(String token) {
+            skipSpaces();
+            if (input.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+
+    private static double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的数字: " + value);
+        }
+    }
+
+    // ==================== 组合条件 ====================
+
+    private static final class Not extends PurchaseCondition {
+        private final PurchaseCondition inner;
+        private final String description;
+        private final String negatedFailure;
+
+        Not(PurchaseCondition inner) {
+            this.inner = inner;
+            this.description = "非(" + inner.describe() + ")";
+            this.negatedFailure = "不满足: " + inner.describe();
+        }
+
+        @Override
+        public String check(Player player, ShopItem item, Context context) {
+            return inner.check(player, item, context) == null ? inner.negatedFailure() : null;
+        }
+
+        @Override
+        int cost() { return inner.cost(); }
+
+        @Override
+        String describe() { return description; }
+
+        @Override
+        String negatedFailure() { return negatedFailure; }
+
+        @Override
+        public boolean needsDailyCount() { return inner.needsDailyCount(); }
+    }
+
+    private static final class And extends PurchaseCondition {
+        private final PurchaseCondition[] children;
+        private final int cost;
+        private final String description;
+        private final String negatedFailure;
+
+        And(List<PurchaseCondition> children) {
+            this.children = sortByCost(children);
+            this.cost = maxCost(this.children);
+            this.description = join(this.children, " 且 ");
+            this.negatedFailure = "不能同时满足: " + description;
+        }
+
+        @Override
+        public String check(Player player, ShopItem item, Context context) {
+            for (PurchaseCondition child : children) {
+                String failure = child.check(player, item, context);
+                if (failure != null) return failure;
+            }
+            return null;
+        }
+
+        @Override
+        int cost() { return cost; }
+
+        @Override
+        String describe() { return "(" + description + ")"; }
+
+        @Override
+        String negatedFailure() { return negatedFailure; }
+
+        @Override
+        public boolean needsDailyCount() { return anyNeedsDailyCount(children); }
+    }
+
+    private static final class Or extends PurchaseCondition {
+        private final PurchaseCondition[] children;
+        private final int cost;
+        private final String description;
+        private final String failure;
+        private final String negatedFailure;
+
+        Or(List<PurchaseCondition> children) {
+            this.children = sortByCost(children);
+            this.cost = maxCost(this.children);
+            this.description = join(this.children, " 或 ");
+            this.failure = "需满足其一: " + description;
+            this.negatedFailure = "不能满足任何一个: " + description;
+        }
+
+        @Override
+        public String check(Player player, ShopItem item, Context context) {
+            for (PurchaseCondition child : children) {
+                if (child.check(player, item, context) == null) return null;
+            }
+            return failure;
+        }
+
+        @Override
+        int cost() { return cost; }
+
+        @Override
+        String describe() { return "(" + description + ")"; }
+
+        @Override
+        String negatedFailure() { return negatedFailure; }
+
+        @Override
+        public boolean needsDailyCount() { return anyNeedsDailyCount(children); }
+    }
+
+    private static PurchaseCondition[] sortByCost(List<PurchaseCondition> children) {
+        PurchaseCondition[] sorted = children.toArray(new PurchaseCondition[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(PurchaseCondition::cost));
+        return sorted;
+    }
+
+    private static int maxCost(PurchaseCondition[] children) {
+        int max = COST_STATIC;
+        for (PurchaseCondition child : children) {
+            max = Math.max(max, child.cost());
+        }
+        return max;
+    }
+
+    private static String join(PurchaseCondition[] children, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (PurchaseCondition child : children) {
+            if (sb.length() > 0) sb.append(separator);
+            sb.append(child.describe());
+        }
+        return sb.toString();
+    }
+
+    private static boolean anyNeedsDailyCount(PurchaseCondition[] children) {
+        for (PurchaseCondition child : children) {
+            if (child.needsDailyCount()) return true;
+        }
+        return false;
+    }
+
+    // ==================== 基本条件 ====================
+
+    /**
+     * 以失败原因为主的基本条件
+     */
+    private abstract static class Leaf extends PurchaseCondition {
+        private final int cost;
+        private final String description;
+        private final String failure;
+        private final String negatedFailure;
+
+        Leaf(int cost, String description, String failure, String negatedFailure) {
+            this.cost = cost;
+            this.description = description;
+            this.failure = failure;
+            this.negatedFailure = negatedFailure;
+        }
+
+        abstract boolean test(Player player, ShopItem item, Context context);
+
+        @Override
+        public final String check(Player player, ShopItem item, Context context) {
+            return test(player, item, context) ? null : failure;
+        }
+
+        @Override
+        final int cost() { return cost; }
+
+        @Override
+        final String describe() { return description; }
+
+        @Override
+        final String negatedFailure() { return negatedFailure; }
+    }
+
+    private static final class Permission extends Leaf {
+        private final String permission;
+
+        Permission(String permission) {
+            super(COST_PLAYER, "拥有权限 " + permission, "缺少权限: " + permission, "已拥有权限: " + permission);
+            if (permission.isEmpty()) {
+                throw new IllegalArgumentException("权限不能为空");
+            }
+            this.permission = permission;
+        }
+
+        @Override
+        boolean test(Player player, ShopItem item, Context context) {
+            return player.hasPermission(permission);
+        }
+    }
+
+    private static final class World extends Leaf {
+        private final String[] worlds;
+
+        World(String arg) {
+            super(COST_PLAYER, "位于世界 " + arg, "只能在以下世界购买: " + arg, "不能在以下世界购买: " + arg);
+            this.worlds = Arrays.stream(arg.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toArray(String[]::new);
+            if (worlds.length == 0) {
+                throw new IllegalArgumentException("世界不能为空");
+            }
+        }
+
+        @Override
+        boolean test(Player player, ShopItem item, Context context) {
+            String current = context.getLocation().getWorld().getName();
+            for (String world : worlds) {
+                if (world.equals(current)) return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Region extends Leaf {
+        private final String world;
+        private final double minX, minY, minZ, maxX, maxY, maxZ;
+
+        private Region(String arg, String world, double[] c) {
+            super(COST_PLAYER, "位于区域 " + arg, "不在可购买区域内", "当前区域不能购买");
+            this.world = world;
+            this.minX = Math.min(c[0], c[3]);
+            this.minY = Math.min(c[1], c[4]);
+            this.minZ = Math.min(c[2], c[5]);
+            // 方块坐标包含整格
+            this.maxX = Math.max(c[0], c[3]) + 1;
+            this.maxY = Math.max(c[1], c[4]) + 1;
+            this.maxZ = Math.max(c[2], c[5]) + 1;
+        }
+
+        static Region parse(String arg) {
+            String[] parts = arg.split(",");
+            if (parts.length != 7) {
+                throw new IllegalArgumentException("格式应为 region:世界,x1,y1,z1,x2,y2,z2");
+            }
+            double[] c = new double[6];
+            for (int i = 0; i < 6; i++) {
+                c[i] = parseNumber(parts[i + 1].trim());
+            }
+            return new Region(arg, parts[0].trim(), c);
+        }
+
+        @Override
+        boolean test(Player player, ShopItem item, Context context) {
+            Location loc = context.getLocation();
+            if (!loc.getWorld().getName().equals(world)) return false;
+            double x = loc.getX(), y = loc.getY(), z = loc.getZ();
+            return x >= minX && x < maxX && y >= minY && y < maxY && z >= minZ && z < maxZ;
+        }
+    }
+
+    private static final class TimeWindow extends Leaf {
+        private static final TimeZone ZONE = TimeZone.getDefault();
+        private static final long MINUTE_MILLIS = 60_000L;
+        private static final int MINUTES_PER_DAY = 24 * 60;
+
+        private final int startMinute;
+        private final int endMinute;
+
+        private TimeWindow(String arg, int startMinute, int endMinute) {
+            super(COST_STATIC, "时间 " + arg, "当前时间不可购买（开放时间 " + arg + "）", "当前时间不可购买（" + arg + " 期间关闭）");
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+        }
+
+        static TimeWindow parse(String arg) {
+            String[] parts = arg.split("-");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("格式应为 time:HH:mm-HH:mm");
+            }
+            return new TimeWindow(arg, parseMinute(parts[0].trim()), parseMinute(parts[1].trim()));
+        }
+
+        private static int parseMinute(String value) {
+            String[] hm = value.split(":");
+            try {
+                int hour = Integer.parseInt(hm[0]);
+                int minute = hm.length > 1 ? Integer.parseInt(hm[1]) : 0;
+                if (hour < 0 || hour > 24 || minute < 0 || minute > 59) {
+                    throw new IllegalArgumentException("无效的时间: " + value);
+                }
+                return hour * 60 + minute;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的时间: " + value);
+            }
+        }
+
+        @Override
+        boolean test(Player player, ShopItem item, Context context) {
+            long now = System.currentTimeMillis();
+            int minute = (int) Math.floorMod((now + ZONE.getOffset(now)) / MINUTE_MILLIS, (long) MINUTES_PER_DAY);
+            if (startMinute <= endMinute) {
+                return minute >= startMinute && minute < endMinute;
+            }
+            // 跨越午夜
+            return minute >= startMinute || minute < endMinute;
+        }
+    }
+
+    private static final class MinBalance extends Leaf {
+        private final double minBalance;
+
+        MinBalance(double minBalance) {
+            super(COST_ECONOMY, String.format("余额不少于 %.2f", minBalance),
+                String.format("余额需不少于 %.2f", minBalance), String.format("余额需少于 %.2f", minBalance));
+            this.minBalance = minBalance;
+        }
+
+        @Override
+        boolean test(Player player, ShopItem item, Context context) {
+            return context.getBalance(player) >= minBalance;
+        }
+    }
+
+    private static final class MaxToday extends Leaf {
+        private final int max;
+
+        MaxToday(int max) {
+            super(COST_CACHE, "今日购买不超过 " + max + " 个",
+                "超出今日购买上限 (" + max + ")", "今日需先购买至少 " + max + " 个");
+            this.max = max;
+        }
+
+        @Override
+        boolean test(Player player, ShopItem item, Context context) {
+            // 加上本次购买的数量，避免一次大批量购买绕过上限
+            return (long) context.getBoughtToday(player, item) + context.getAmount() <= max;
+        }
+
+        @Override
+        public boolean needsDailyCount() {
+            return true;
+        }
+    }
+}
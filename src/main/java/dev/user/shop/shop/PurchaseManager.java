@@ -1,9 +1,11 @@
 package dev.user.shop.shop;
 
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.economy.BalanceCache;
 import org.black_ixx.playerpoints.PlayerPoints;
 import org.black_ixx.playerpoints.PlayerPointsAPI;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
@@ -11,7 +13,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.*;
@@ -20,18 +24,37 @@ import java.util.function.Consumer;
 /**
  * 购买事务管理器
  * 统一处理商店购买流程，确保原子性和线程安全
+ *
+ * 并发模型：
+ * - 按玩家UUID分配到固定的购买线程，同一玩家的购买严格串行，余额检查、扣款和限购计数不会交错
+ * - 不同玩家可在不同线程上并行购买，购买线程之间不共享锁，不会互相阻塞
+ * - 同一商品的库存扣减依靠商品级原子操作：账本模式在内存中 CAS 扣减，数据库模式使用带库存条件的 UPDATE
+ * - 限购计数由 {@link PlayerLimitCache} 在内存中检查和累加，购买过程中不查询限购表
+ * - 连续点击先在合并窗口内合并为一次购买，只查询一次余额、提交一次事务、记录一条交易
+ * - 余额预检查和购买条件使用 {@link BalanceCache}；预检查用的是缓存值时，扣款前再查询一次实际余额
  */
 public class PurchaseManager {
 
+    private static final long REQUEST_KEY_TTL_MS = 30_000L;
+    private static final int REQUEST_SWEEP_THRESHOLD = 4096;
+
     private final FoliaShopPlugin plugin;
     private final me.yic.xconomy.api.XConomyAPI xconomyAPI;
     private final PlayerPointsAPI playerPointsAPI;
+    private final PlayerLimitCache limitCache;
+    private final BalanceCache balanceCache;
 
-    // 购买任务队列（单线程执行，保证顺序和原子性）
-    private final BlockingQueue<PurchaseTask> taskQueue;
-    private final ExecutorService executor;
+    // 购买线程（每个线程一个有界队列，按玩家UUID分配）
+    private final ExecutorService[] workers;
     private volatile boolean running = true;
 
+    // 点击合并（同一玩家同一商品在窗口内的请求合并为一次购买）
+    private final long coalesceWindowMs;
+    private final ScheduledExecutorService coalescer;
+    private final Map<String, PendingPurchase> pendingPurchases = new ConcurrentHashMap<>();
+    // 幂等键 -> 过期时间
+    private final Map<String, Long> recentRequests = new ConcurrentHashMap<>();
+
     public PurchaseManager(FoliaShopPlugin plugin) {
         this.plugin = plugin;
         this.xconomyAPI = plugin.getEconomyManager().isEnabled() ?
@@ -39,62 +62,142 @@ public class PurchaseManager {
 
         PlayerPoints pp = PlayerPoints.getInstance();
         this.playerPointsAPI = (pp != null && pp.getAPI() != null) ? pp.getAPI() : null;
+        this.limitCache = plugin.getPlayerLimitCache();
+        this.balanceCache = plugin.getBalanceCache();
+
+        int workerCount = Math.max(1, plugin.getShopConfig().getPurchaseWorkers());
+        int queueCapacity = Math.max(1, plugin.getShopConfig().getPurchaseQueueCapacity());
+        this.workers = new ExecutorService[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            String threadName = "FoliaShop-Purchase-Queue-" + i;
+            workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, threadName);
+                    t.setDaemon(true);
+                    return t;
+                });
+        }
 
-        this.taskQueue = new LinkedBlockingQueue<>();
-        this.executor = Executors.newSingleThreadExecutor(r -> {
-            Thread t = new Thread(r, "FoliaShop-Purchase-Queue");
-            t.setDaemon(true);
-            return t;
-        });
+        this.coalesceWindowMs = Math.max(0, plugin.getShopConfig().getPurchaseCoalesceWindowMs());
+        if (coalesceWindowMs > 0) {
+            this.coalescer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "FoliaShop-Purchase-Coalescer");
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            this.coalescer = null;
+        }
+    }
 
-        startProcessing();
+    private ExecutorService workerFor(UUID playerUuid) {
+        return workers[Math.floorMod(playerUuid.hashCode(), workers.length)];
     }
 
-    private void startProcessing() {
-        executor.submit(() -> {
-            while (running || !taskQueue.isEmpty()) {
-                try {
-                    PurchaseTask task = taskQueue.poll(100, TimeUnit.MILLISECONDS);
-                    if (task != null) {
-                        processPurchase(task);
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    plugin.getLogger().severe("购买处理异常: " + e.getMessage());
-                    e.printStackTrace();
-                }
-            }
-        });
+    /**
+     * 执行购买任务（在该玩家固定的购买线程上）
+     */
+    private void runPurchase(PurchaseTask task) {
+        try {
+            processPurchase(task);
+        } catch (Exception e) {
+            plugin.getLogger().severe("购买处理异常: " + e.getMessage());
+            e.printStackTrace();
+            task.callback.accept(new PurchaseResult(false, "购买处理异常", null, 0, 0));
+        }
     }
 
     /**
-     * 提交购买请求
+     * 提交购买请求（需在玩家所在区域线程调用，此时记录玩家位置供购买条件使用）
      */
     public void submitPurchase(Player player, ShopItem shopItem, int amount,
                                Consumer<PurchaseResult> callback) {
+        submitPurchase(player, shopItem, amount, null, callback);
+    }
+
+    /**
+     * 提交购买请求（带幂等键）
+     * 同一玩家对同一商品在合并窗口内的多次请求会合并为一次购买。每个请求都会收到回调：
+     * 第一个请求收到购买结果，被合并或去重的请求收到 {@link PurchaseResult#merged} 为 true 的同一结果
+     *
+     * @param requestKey 幂等键，相同的键在有效期内只处理一次（null 表示不去重）
+     */
+    public void submitPurchase(Player player, ShopItem shopItem, int amount, String requestKey,
+                               Consumer<PurchaseResult> callback) {
         if (!running) {
             callback.accept(new PurchaseResult(false, "商店系统已关闭", null, 0, 0));
             return;
         }
 
-        PurchaseTask task = new PurchaseTask(
-            player.getUniqueId(),
-            player.getName(),
-            shopItem,
-            amount,
-            callback
-        );
+        // 重复提交（同一次点击被重复处理等）不再购买，由第一次提交给出结果
+        if (requestKey != null && !markRequest(requestKey)) {
+            callback.accept(new PurchaseResult(false, "重复的购买请求", null, 0, 0, true));
+            return;
+        }
 
-        try {
-            if (!taskQueue.offer(task, 5, TimeUnit.SECONDS)) {
-                callback.accept(new PurchaseResult(false, "购买队列已满，请稍后再试", null, 0, 0));
+        // 购买线程不能读取玩家位置，在这里（玩家所在区域线程）先记录下来
+        Location location = player.getLocation();
+        if (coalescer == null) {
+            dispatch(new PurchaseTask(player.getUniqueId(), player.getName(), location, shopItem, amount, 1, callback));
+            return;
+        }
+
+        String key = player.getUniqueId() + ":" + shopItem.getId();
+        int maxAmount = Math.max(amount, shopItem.getDisplayItem().getMaxStackSize());
+        PendingPurchase[] created = new PendingPurchase[1];
+        pendingPurchases.compute(key, (k, existing) -> {
+            if (existing != null && existing.tryMerge(amount, maxAmount, callback)) {
+                return existing;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            callback.accept(new PurchaseResult(false, "提交购买请求被中断", null, 0, 0));
+            // 已开始处理或合并后超过一组，另起一批（旧批次仍会按时提交）
+            created[0] = new PendingPurchase(player.getUniqueId(), player.getName(), location, shopItem, amount, callback);
+            return created[0];
+        });
+
+        if (created[0] != null) {
+            PendingPurchase pending = created[0];
+            try {
+                coalescer.schedule(() -> flushPending(key, pending), coalesceWindowMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushPending(key, pending);
+            }
+        }
+    }
+
+    /**
+     * 合并窗口结束，把合并后的请求交给购买线程
+     */
+    private void flushPending(String key, PendingPurchase pending) {
+        pendingPurchases.remove(key, pending);
+        dispatch(pending.close());
+    }
+
+    private void dispatch(PurchaseTask task) {
+        try {
+            workerFor(task.playerUuid).execute(() -> runPurchase(task));
+        } catch (RejectedExecutionException e) {
+            task.callback.accept(new PurchaseResult(false, "购买队列已满，请稍后再试", null, 0, 0));
+        }
+    }
+
+    /**
+     * 记录幂等键
+     * @return true 表示首次提交，false 表示有效期内的重复提交
+     */
+    private boolean markRequest(String requestKey) {
+        long now = System.currentTimeMillis();
+        if (recentRequests.size() > REQUEST_SWEEP_THRESHOLD) {
+            recentRequests.values().removeIf(expireAt -> expireAt < now);
         }
+        Long previous = recentRequests.putIfAbsent(requestKey, now + REQUEST_KEY_TTL_MS);
+        if (previous == null) {
+            return true;
+        }
+        if (previous < now) {
+            // 已过期的键视为新请求
+            return recentRequests.replace(requestKey, previous, now + REQUEST_KEY_TTL_MS);
+        }
+        return false;
     }
 
     /**
@@ -107,7 +210,12 @@ public class PurchaseManager {
             return;
         }
 
-        ShopItem shopItem = task.shopItem;
+        // 使用当前已发布的商品（点击后目录可能已重载）
+        ShopItem shopItem = plugin.getShopManager().getItem(task.shopItem.getId());
+        if (shopItem == null) {
+            task.callback.accept(new PurchaseResult(false, "商品已下架", null, 0, 0));
+            return;
+        }
         int amount = task.amount;
 
         // 计算总费用
@@ -115,23 +223,66 @@ public class PurchaseManager {
         int totalPoints = shopItem.getBuyPoints() * amount;
 
         Connection conn = null;
+        // 账本模式下已在内存中扣减、尚未提交的库存（失败时归还）
+        int reservedStock = 0;
         try {
-            // 1. 先检查 conditions（如有）
-            if (shopItem.hasConditions()) {
-                String failedCondition = checkConditions(player, shopItem.getConditions());
-                if (failedCondition != null) {
-                    task.callback.accept(new PurchaseResult(false, "不满足购买条件: " + failedCondition, null, 0, 0));
+            // 1. 先检查 conditions（加载时已编译）
+            String failedCondition = shopItem.getCompiledConditions().check(player, shopItem,
+                new ConditionContext(task.location, amount));
+            if (failedCondition != null) {
+                task.callback.accept(new PurchaseResult(false, "不满足购买条件: " + failedCondition, null, 0, 0));
+                return;
+            }
+
+            // 2. 检查限购（内存缓存，同一玩家的购买在同一线程串行，检查与计数之间不会插入该玩家的其他购买）
+            PlayerLimitCache.PlayerLimits limits = null;
+            if (shopItem.tracksDailyPurchases() || shopItem.hasPlayerLimit()) {
+                limits = limitCache.getOrLoad(task.playerUuid);
+                if (limits == null) {
+                    task.callback.accept(new PurchaseResult(false, "限购数据加载失败，请稍后再试", null, 0, 0));
                     return;
                 }
             }
 
-            // 2. 检查金币余额（只读，无副作用）
+            // 检查玩家每日购买限额（daily-limit）
+            if (shopItem.hasDailyLimit()) {
+                int remaining = limits.getDailyRemaining(shopItem.getId(), shopItem.getDailyLimit(), limitCache.today());
+                if (remaining < amount && (!task.isCoalesced() || remaining == 0)) {
+                    task.callback.accept(new PurchaseResult(false,
+                        String.format("今日购买限额已满，剩余可购买 %d 个", remaining),
+                        null, 0, 0));
+                    return;
+                }
+                amount = Math.min(amount, remaining);
+            }
+
+            // 检查玩家终身购买限额（player-limit）
+            if (shopItem.hasPlayerLimit()) {
+                int remaining = limits.getLifetimeRemaining(shopItem.getId(), shopItem.getPlayerLimit());
+                if (remaining < amount && (!task.isCoalesced() || remaining == 0)) {
+                    task.callback.accept(new PurchaseResult(false,
+                        String.format("您已购买过该物品，剩余可购买 %d 个", remaining),
+                        null, 0, 0));
+                    return;
+                }
+                amount = Math.min(amount, remaining);
+            }
+
+            // 合并的请求按限购剩余数量截断后重新计算费用
+            totalCost = shopItem.getBuyPrice() * amount;
+            totalPoints = shopItem.getBuyPoints() * amount;
+
+            // 3. 预检查金币余额（缓存显示足够时不查询经济插件；缓存显示不足时以实际余额为准，不凭缓存拒绝）
             if (totalCost > 0) {
                 if (xconomyAPI == null) {
                     task.callback.accept(new PurchaseResult(false, "经济系统未启用", null, 0, 0));
                     return;
                 }
-                double balance = getPlayerBalance(player);
+                Double cachedBalance = balanceCache.getBalance(task.playerUuid);
+                if (cachedBalance != null && cachedBalance < totalCost) {
+                    cachedBalance = null;
+                }
+                double balance = cachedBalance != null ? cachedBalance : getPlayerBalance(player);
                 if (balance < totalCost) {
                     task.callback.accept(new PurchaseResult(false,
                         String.format("金币不足，需要 %.2f，拥有 %.2f", totalCost, balance),
@@ -140,13 +291,17 @@ public class PurchaseManager {
                 }
             }
 
-            // 3. 检查点券余额（只读，无副作用）
+            // 4. 预检查点券余额（同上，缓存只用于放行）
             if (totalPoints > 0) {
                 if (playerPointsAPI == null) {
                     task.callback.accept(new PurchaseResult(false, "点券系统未启用", null, 0, 0));
                     return;
                 }
-                int points = playerPointsAPI.look(player.getUniqueId());
+                Integer cachedPoints = balanceCache.getPoints(task.playerUuid);
+                if (cachedPoints != null && cachedPoints < totalPoints) {
+                    cachedPoints = null;
+                }
+                int points = cachedPoints != null ? cachedPoints : lookPoints(player);
                 if (points < totalPoints) {
                     task.callback.accept(new PurchaseResult(false,
                         String.format("点券不足，需要 %d，拥有 %d", totalPoints, points),
@@ -155,97 +310,72 @@ public class PurchaseManager {
                 }
             }
 
-            // 5. 确认货币足够后，开始数据库事务并扣减库存
-            conn = plugin.getDatabaseManager().getConnection();
-            conn.setAutoCommit(false);
-
-            // 4. 检查玩家每日购买限额（daily-limit）
-            if (shopItem.hasDailyLimit()) {
-                int remaining = getDailyLimitRemaining(conn, player.getUniqueId(), shopItem.getId(), shopItem.getDailyLimit());
-                if (remaining < amount) {
-                    conn.close();
-                    conn = null;
-                    task.callback.accept(new PurchaseResult(false,
-                        String.format("今日购买限额已满，剩余可购买 %d 个", remaining),
-                        null, 0, 0));
-                    return;
-                }
+            // 5. 确认货币和限购后扣减库存
+            // 账本模式在内存中 CAS 扣减，不占用数据库连接；数据库模式开始数据库事务并在事务中扣减
+            StockLedger ledger = plugin.getStockLedger();
+            if (!ledger.isEnabled()) {
+                conn = plugin.getDatabaseManager().getConnection();
+                conn.setAutoCommit(false);
             }
-
-            // 5. 检查玩家终身购买限额（player-limit）
-            if (shopItem.hasPlayerLimit()) {
-                int remaining = getPlayerLimitRemaining(conn, player.getUniqueId(), shopItem.getId(), shopItem.getPlayerLimit());
-                if (remaining < amount) {
-                    conn.close();
-                    conn = null;
-                    task.callback.accept(new PurchaseResult(false,
-                        String.format("您已购买过该物品，剩余可购买 %d 个", remaining),
-                        null, 0, 0));
-                    return;
-                }
+            int actualAmount;
+            if (ledger.isEnabled()) {
+                actualAmount = shopItem.isEnabled() && ledger.reserve(shopItem, amount) ? amount : 0;
+                reservedStock = actualAmount;
+            } else {
+                actualAmount = atomicReduceStock(conn, shopItem.getId(), amount);
             }
-
-            int actualAmount = atomicReduceStock(conn, shopItem.getId(), amount);
             if (actualAmount == 0) {
-                conn.rollback();
+                rollback(conn);
                 task.callback.accept(new PurchaseResult(false, "库存不足", null, 0, 0));
                 return;
             }
-            // 调整实际购买数量
+            // 调整实际购买数量（数量只会减少，之前的余额检查仍然成立）
             if (actualAmount != amount) {
                 totalCost = shopItem.getBuyPrice() * actualAmount;
                 totalPoints = shopItem.getBuyPoints() * actualAmount;
-
-                // 重新检查货币（因为数量变了）
-                if (totalCost > 0 && getPlayerBalance(player) < totalCost) {
-                    conn.rollback();
-                    task.callback.accept(new PurchaseResult(false, "金币不足（库存调整后）", null, 0, 0));
-                    return;
-                }
-                if (totalPoints > 0 && playerPointsAPI.look(player.getUniqueId()) < totalPoints) {
-                    conn.rollback();
-                    task.callback.accept(new PurchaseResult(false, "点券不足（库存调整后）", null, 0, 0));
-                    return;
-                }
             }
 
-            // 4. 扣除金币
+            // 4. 扣除金币（经济插件余额不足时扣款失败，预检查用的缓存值已过时也不会多扣）
             if (totalCost > 0) {
                 boolean success = deductMoney(player, totalCost);
                 if (!success) {
-                    conn.rollback();
-                    task.callback.accept(new PurchaseResult(false, "扣除金币失败", null, 0, 0));
+                    rollback(conn);
+                    task.callback.accept(new PurchaseResult(false, "扣除金币失败（金币不足或经济系统错误）", null, 0, 0));
                     return;
                 }
             }
 
-            // 5. 扣除点券
+            // 5. 扣除点券（同上，点券不足时扣除失败）
             if (totalPoints > 0) {
-                boolean success = playerPointsAPI.take(player.getUniqueId(), totalPoints);
+                boolean success = takePoints(player, totalPoints);
                 if (!success) {
                     // 回滚金币
                     if (totalCost > 0) {
                         returnMoney(player, totalCost);
                     }
-                    conn.rollback();
-                    task.callback.accept(new PurchaseResult(false, "扣除点券失败", null, 0, 0));
+                    rollback(conn);
+                    task.callback.accept(new PurchaseResult(false, "扣除点券失败（点券不足或点券系统错误）", null, 0, 0));
                     return;
                 }
             }
 
-            // 6. 增加玩家每日购买计数
-            if (shopItem.hasDailyLimit()) {
-                incrementDailyLimit(conn, player.getUniqueId(), shopItem.getId(), actualAmount);
+            // 提交库存事务
+            if (conn != null) {
+                conn.commit();
+            }
+            if (reservedStock > 0) {
+                ledger.commit(shopItem, reservedStock);
+                reservedStock = 0;
             }
 
-            // 7. 增加玩家终身购买计数
+            // 6. 增加玩家限购计数（内存立即生效，异步写回数据库）
+            if (shopItem.tracksDailyPurchases()) {
+                limitCache.recordDaily(task.playerUuid, limits, shopItem.getId(), actualAmount);
+            }
             if (shopItem.hasPlayerLimit()) {
-                incrementPlayerLimit(conn, player.getUniqueId(), shopItem.getId(), actualAmount);
+                limitCache.recordLifetime(task.playerUuid, limits, shopItem.getId(), actualAmount);
             }
 
-            // 提交库存事务
-            conn.commit();
-
             // 7. 在玩家 EntityScheduler 中给予物品
             final int finalAmount = actualAmount;
             final double finalCost = totalCost;
@@ -276,7 +406,13 @@ public class PurchaseManager {
                 task.callback.accept(new PurchaseResult(true, "购买成功",
                     shopItem.getItemKey(), finalAmount, finalCost));
 
-            }, null, 1L);
+            }, () -> {
+                // 玩家在发放前下线：交易已提交，记录交易并在控制台留下记录以便人工补发
+                logTransaction(task.playerUuid, task.playerName, shopItem.getId(),
+                    shopItem.getItemKey(), finalAmount, finalCost, finalPoints);
+                plugin.getLogger().warning("玩家 " + task.playerName + " 在发放前下线，未发放商品: " +
+                    shopItem.getId() + " x" + finalAmount);
+            }, 1L);
 
         } catch (SQLException e) {
             plugin.getLogger().severe("购买数据库异常: " + e.getMessage());
@@ -289,6 +425,10 @@ public class PurchaseManager {
             }
             task.callback.accept(new PurchaseResult(false, "数据库错误: " + e.getMessage(), null, 0, 0));
         } finally {
+            // 未提交的账本扣减一律归还（库存不足、扣款失败、数据库异常等）
+            if (reservedStock > 0) {
+                plugin.getStockLedger().restore(shopItem, reservedStock);
+            }
             if (conn != null) {
                 try {
                     conn.close();
@@ -299,6 +439,15 @@ public class PurchaseManager {
         }
     }
 
+    /**
+     * 回滚库存事务（账本模式没有数据库事务）
+     */
+    private static void rollback(Connection conn) throws SQLException {
+        if (conn != null) {
+            conn.rollback();
+        }
+    }
+
     /**
      * 原子性扣减库存
      * @return 实际扣减的数量（0表示库存不足）
@@ -340,171 +489,45 @@ public class PurchaseManager {
     }
 
     /**
-     * 获取玩家每日剩余购买次数
-     * @param conn 数据库连接（必须在事务中）
-     * @param playerUuid 玩家UUID
-     * @param itemId 物品ID
-     * @param limit 限制数量
-     * @return 剩余可购买次数
-     */
-    private int getDailyLimitRemaining(Connection conn, UUID playerUuid, String itemId, int limit) throws SQLException {
-        String today = getTodayString();
-        String selectSql = plugin.getDatabaseManager().isMySQL()
-            ? "SELECT buy_count, last_date FROM daily_limits WHERE player_uuid = ? AND item_id = ? FOR UPDATE"
-            : "SELECT buy_count, last_date FROM daily_limits WHERE player_uuid = ? AND item_id = ?";
-
-        try (PreparedStatement ps = conn.prepareStatement(selectSql)) {
-            ps.setString(1, playerUuid.toString());
-            ps.setString(2, itemId);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                int boughtCount = rs.getInt("buy_count");
-                String lastDate = rs.getString("last_date");
-                if (!today.equals(lastDate)) {
-                    // 跨天了，返回完整限额
-                    return limit;
-                }
-                return Math.max(0, limit - boughtCount);
-            } else {
-                // 没有记录表示今日还未购买
-                return limit;
-            }
-        }
-    }
-
-    /**
-     * 增加玩家每日购买计数
-     * @param conn 数据库连接（必须在事务中）
-     * @param playerUuid 玩家UUID
-     * @param itemId 物品ID
-     * @param amount 购买数量
+     * 获取玩家金币余额（查询经济插件并写入余额缓存）
      */
-    private void incrementDailyLimit(Connection conn, UUID playerUuid, String itemId, int amount) throws SQLException {
-        String today = getTodayString();
-        boolean isMySQL = plugin.getDatabaseManager().isMySQL();
-
-        // 先查询当前记录
-        String selectSql = isMySQL
-            ? "SELECT buy_count, last_date FROM daily_limits WHERE player_uuid = ? AND item_id = ? FOR UPDATE"
-            : "SELECT buy_count, last_date FROM daily_limits WHERE player_uuid = ? AND item_id = ?";
-
-        int newCount;
-        boolean recordExists = false;
-        String lastDate = null;
-
-        try (PreparedStatement ps = conn.prepareStatement(selectSql)) {
-            ps.setString(1, playerUuid.toString());
-            ps.setString(2, itemId);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                recordExists = true;
-                int currentCount = rs.getInt("buy_count");
-                lastDate = rs.getString("last_date");
-                if (today.equals(lastDate)) {
-                    newCount = currentCount + amount;
-                } else {
-                    newCount = amount; // 跨天重置
-                }
-            } else {
-                newCount = amount; // 新记录
-            }
-        }
-
-        // 插入或更新
-        String upsertSql;
-        if (isMySQL) {
-            upsertSql = "INSERT INTO daily_limits (player_uuid, item_id, buy_count, last_date) VALUES (?, ?, ?, ?) " +
-                       "ON DUPLICATE KEY UPDATE buy_count = ?, last_date = ?";
-        } else {
-            upsertSql = "MERGE INTO daily_limits KEY(player_uuid, item_id) VALUES (?, ?, ?, ?)";
-        }
-
-        try (PreparedStatement ps = conn.prepareStatement(upsertSql)) {
-            ps.setString(1, playerUuid.toString());
-            ps.setString(2, itemId);
-            if (isMySQL) {
-                ps.setInt(3, newCount);
-                ps.setString(4, today);
-                ps.setInt(5, newCount);
-                ps.setString(6, today);
-            } else {
-                ps.setInt(3, newCount);
-                ps.setString(4, today);
-            }
-            ps.executeUpdate();
+    private double getPlayerBalance(Player player) {
+        try {
+            double balance = xconomyAPI.getPlayerData(player.getUniqueId()).getBalance().doubleValue();
+            balanceCache.putBalance(player.getUniqueId(), balance);
+            return balance;
+        } catch (Exception e) {
+            plugin.getLogger().warning("获取金币余额失败: " + e.getMessage());
+            return 0;
         }
     }
 
-    private String getTodayString() {
-        return java.time.LocalDate.now().toString();
-    }
-
     /**
-     * 获取玩家剩余购买次数
-     * @param conn 数据库连接（必须在事务中）
-     * @param playerUuid 玩家UUID
-     * @param itemId 物品ID
-     * @param limit 限制数量
-     * @return 剩余可购买次数
+     * 获取玩家金币余额（缓存有效时直接返回，仅用于检查购买条件）
      */
-    private int getPlayerLimitRemaining(Connection conn, UUID playerUuid, String itemId, int limit) throws SQLException {
-        String selectSql = plugin.getDatabaseManager().isMySQL()
-            ? "SELECT buy_count FROM player_item_limits WHERE player_uuid = ? AND item_id = ? FOR UPDATE"
-            : "SELECT buy_count FROM player_item_limits WHERE player_uuid = ? AND item_id = ?";
-
-        try (PreparedStatement ps = conn.prepareStatement(selectSql)) {
-            ps.setString(1, playerUuid.toString());
-            ps.setString(2, itemId);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                int boughtCount = rs.getInt("buy_count");
-                return Math.max(0, limit - boughtCount);
-            } else {
-                // 没有记录表示还未购买
-                return limit;
-            }
-        }
+    private double getCachedBalance(Player player) {
+        Double cached = balanceCache.getBalance(player.getUniqueId());
+        return cached != null ? cached : getPlayerBalance(player);
     }
 
     /**
-     * 增加玩家购买计数
-     * @param conn 数据库连接（必须在事务中）
-     * @param playerUuid 玩家UUID
-     * @param itemId 物品ID
-     * @param amount 购买数量
+     * 获取玩家点券余额（查询 PlayerPoints 并写入余额缓存）
      */
-    private void incrementPlayerLimit(Connection conn, UUID playerUuid, String itemId, int amount) throws SQLException {
-        String upsertSql;
-        if (plugin.getDatabaseManager().isMySQL()) {
-            upsertSql = "INSERT INTO player_item_limits (player_uuid, item_id, buy_count) VALUES (?, ?, ?) " +
-                       "ON DUPLICATE KEY UPDATE buy_count = buy_count + ?";
-        } else {
-            // SQLite 使用 INSERT OR REPLACE
-            upsertSql = "INSERT INTO player_item_limits (player_uuid, item_id, buy_count) VALUES (?, ?, ?) " +
-                       "ON CONFLICT(player_uuid, item_id) DO UPDATE SET buy_count = buy_count + excluded.buy_count";
-        }
-
-        try (PreparedStatement ps = conn.prepareStatement(upsertSql)) {
-            ps.setString(1, playerUuid.toString());
-            ps.setString(2, itemId);
-            ps.setInt(3, amount);
-            if (plugin.getDatabaseManager().isMySQL()) {
-                ps.setInt(4, amount);
-            }
-            ps.executeUpdate();
-        }
+    private int lookPoints(Player player) {
+        int points = playerPointsAPI.look(player.getUniqueId());
+        balanceCache.putPoints(player.getUniqueId(), points);
+        return points;
     }
 
     /**
-     * 获取玩家金币余额
+     * 扣除玩家点券
      */
-    private double getPlayerBalance(Player player) {
-        try {
-            return xconomyAPI.getPlayerData(player.getUniqueId()).getBalance().doubleValue();
-        } catch (Exception e) {
-            plugin.getLogger().warning("获取金币余额失败: " + e.getMessage());
-            return 0;
+    private boolean takePoints(Player player, int amount) {
+        boolean success = playerPointsAPI.take(player.getUniqueId(), amount);
+        if (success) {
+            balanceCache.adjustPoints(player.getUniqueId(), -amount);
         }
+        return success;
     }
 
     /**
@@ -518,6 +541,9 @@ public class PurchaseManager {
                 java.math.BigDecimal.valueOf(amount),
                 false
             );
+            if (result == 0) {
+                balanceCache.adjustBalance(player.getUniqueId(), -amount);
+            }
             return result == 0;
         } catch (Exception e) {
             plugin.getLogger().warning("扣除金币失败: " + e.getMessage());
@@ -536,6 +562,9 @@ public class PurchaseManager {
                 java.math.BigDecimal.valueOf(amount),
                 true
             );
+            if (result == 0) {
+                balanceCache.adjustBalance(player.getUniqueId(), amount);
+            }
             return result == 0;
         } catch (Exception e) {
             plugin.getLogger().warning("退还金币失败: " + e.getMessage());
@@ -557,32 +586,6 @@ public class PurchaseManager {
         }
     }
 
-    /**
-     * 检查购买条件
-     * 支持: !permission:xxx (没有权限) 或 permission:xxx (有权限)
-     * @return null 表示通过，否则返回失败原因
-     */
-    private String checkConditions(Player player, java.util.List<String> conditions) {
-        for (String condition : conditions) {
-            String trimmed = condition.trim();
-            // 检查是否没有权限: !permission:xxx
-            if (trimmed.startsWith("!permission:")) {
-                String perm = trimmed.substring(12);
-                if (player.hasPermission(perm)) {
-                    return "已拥有权限: " + perm;
-                }
-            }
-            // 检查是否有权限: permission:xxx
-            else if (trimmed.startsWith("permission:")) {
-                String perm = trimmed.substring(11);
-                if (!player.hasPermission(perm)) {
-                    return "缺少权限: " + perm;
-                }
-            }
-        }
-        return null; // 全部通过
-    }
-
     /**
      * 执行命令列表（默认在控制台执行，{player} 替换为玩家名）
      * 注意：此方法在 GlobalRegionScheduler 中执行，因为 Bukkit.dispatchCommand 必须在主线程调用
@@ -606,33 +609,33 @@ public class PurchaseManager {
     private void logTransaction(UUID playerUuid, String playerName, String itemId,
                                 String itemKey, int amount, double cost, int points) {
         String type = points > 0 ? "BUY_POINTS" : "BUY";
-        plugin.getDatabaseQueue().submit("logTransaction", conn -> {
-            String sql = "INSERT INTO transactions (player_uuid, player_name, item_id, item_key, amount, price, type, timestamp) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, playerUuid.toString());
-                ps.setString(2, playerName);
-                ps.setString(3, itemId);
-                ps.setString(4, itemKey);
-                ps.setInt(5, amount);
-                ps.setDouble(6, cost);
-                ps.setString(7, type);
-                ps.setLong(8, System.currentTimeMillis());
-                ps.executeUpdate();
-            }
-            return null;
-        });
+        plugin.getLogWriter().appendTransaction(playerUuid, playerName, itemId, itemKey, amount, cost, type);
     }
 
     public void shutdown() {
         running = false;
-        executor.shutdown();
+        // 立即提交仍在合并窗口中的请求
+        if (coalescer != null) {
+            coalescer.shutdownNow();
+            for (Map.Entry<String, PendingPurchase> entry : pendingPurchases.entrySet()) {
+                flushPending(entry.getKey(), entry.getValue());
+            }
+        }
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
         try {
-            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
+            for (ExecutorService worker : workers) {
+                long remaining = deadline - System.nanoTime();
+                if (!worker.awaitTermination(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                    worker.shutdownNow();
+                }
             }
         } catch (InterruptedException e) {
-            executor.shutdownNow();
+            for (ExecutorService worker : workers) {
+                worker.shutdownNow();
+            }
         }
     }
 
@@ -642,18 +645,122 @@ public class PurchaseManager {
     private static class PurchaseTask {
         final UUID playerUuid;
         final String playerName;
+        final Location location;
         final ShopItem shopItem;
         final int amount;
+        final int requestCount;
         final Consumer<PurchaseResult> callback;
 
-        PurchaseTask(UUID playerUuid, String playerName, ShopItem shopItem,
-                     int amount, Consumer<PurchaseResult> callback) {
+        PurchaseTask(UUID playerUuid, String playerName, Location location, ShopItem shopItem,
+                     int amount, int requestCount, Consumer<PurchaseResult> callback) {
             this.playerUuid = playerUuid;
             this.playerName = playerName;
+            this.location = location;
             this.shopItem = shopItem;
             this.amount = amount;
+            this.requestCount = requestCount;
             this.callback = callback;
         }
+
+        /**
+         * 是否由多次点击合并而来（超出限购时按剩余数量购买，而不是整体失败）
+         */
+        boolean isCoalesced() {
+            return requestCount > 1;
+        }
+    }
+
+    /**
+     * 合并窗口中的购买请求
+     */
+    private static class PendingPurchase {
+        private final UUID playerUuid;
+        private final String playerName;
+        private final Location location;
+        private final ShopItem shopItem;
+        private final Consumer<PurchaseResult> callback;
+        // 被合并进来的请求的回调
+        private final List<Consumer<PurchaseResult>> mergedCallbacks = new ArrayList<>();
+        private int amount;
+        private int requestCount = 1;
+        private boolean closed;
+
+        PendingPurchase(UUID playerUuid, String playerName, Location location, ShopItem shopItem,
+                        int amount, Consumer<PurchaseResult> callback) {
+            this.playerUuid = playerUuid;
+            this.playerName = playerName;
+            this.location = location;
+            this.shopItem = shopItem;
+            this.amount = amount;
+            this.callback = callback;
+        }
+
+        /**
+         * 合并一次请求，已提交或合并后超过上限时返回 false
+         */
+        synchronized boolean tryMerge(int extra, int maxAmount, Consumer<PurchaseResult> extraCallback) {
+            if (closed || amount + extra > maxAmount) {
+                return false;
+            }
+            amount += extra;
+            requestCount++;
+            mergedCallbacks.add(extraCallback);
+            return true;
+        }
+
+        /**
+         * 结束合并，生成购买任务（结果回调给第一个请求，被合并的请求收到标记为已合并的同一结果）
+         */
+        synchronized PurchaseTask close() {
+            closed = true;
+            Consumer<PurchaseResult> all = callback;
+            if (!mergedCallbacks.isEmpty()) {
+                List<Consumer<PurchaseResult>> others = List.copyOf(mergedCallbacks);
+                all = result -> {
+                    callback.accept(result);
+                    PurchaseResult merged = result.asMerged();
+                    for (Consumer<PurchaseResult> other : others) {
+                        other.accept(merged);
+                    }
+                };
+            }
+            return new PurchaseTask(playerUuid, playerName, location, shopItem, amount, requestCount, all);
+        }
+    }
+
+    /**
+     * 单次购买的条件求值数据：位置在提交时记录，余额和今日购买数量从缓存读取
+     */
+    private final class ConditionContext implements PurchaseCondition.Context {
+        private final Location location;
+        private final int amount;
+
+        ConditionContext(Location location, int amount) {
+            this.location = location;
+            this.amount = amount;
+        }
+
+        @Override
+        public double getBalance(Player player) {
+            return xconomyAPI != null ? getCachedBalance(player) : 0;
+        }
+
+        @Override
+        public int getBoughtToday(Player player, ShopItem item) {
+            PlayerLimitCache.PlayerLimits limits = limitCache.getOrLoad(player.getUniqueId());
+            // 加载失败时视为已达上限
+            return limits != null ? limits.getDailyCount(item.getId(), limitCache.today()) : Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int getAmount() {
+            return amount;
+        }
+
+        @Override
+        public Location getLocation() {
+            return location;
+        }
     }
 
     /**
@@ -665,14 +772,26 @@ public class PurchaseManager {
         public final String itemKey;
         public final int amount;
         public final double cost;
+        // 该请求已合并到同一批的其他请求（或被去重），结果已由那个请求展示
+        public final boolean merged;
 
         public PurchaseResult(boolean success, String message, String itemKey,
                               int amount, double cost) {
+            this(success, message, itemKey, amount, cost, false);
+        }
+
+        public PurchaseResult(boolean success, String message, String itemKey,
+                              int amount, double cost, boolean merged) {
             this.success = success;
             this.message = message;
             this.itemKey = itemKey;
             this.amount = amount;
             this.cost = cost;
+            this.merged = merged;
+        }
+
+        PurchaseResult asMerged() {
+            return new PurchaseResult(success, message, itemKey, amount, cost, true);
         }
     }
 }
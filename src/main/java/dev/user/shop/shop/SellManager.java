@@ -0,0 +1,245 @@
+package dev.user.shop.shop;
+
+import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.economy.EconomyManager;
+import dev.user.shop.util.FoliaExecutors;
+import dev.user.shop.util.ItemPrototypeCache;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 系统回收结算
+ * 出售界面、/shop sellall、/shop sellhand 和自动出售容器共用同一套结算流程：
+ * - 在物品所在区域线程上报价并移除物品，相同物品（报价相同）合并为一组
+ * - 整批只执行一次经济存款，失败时返还全部物品
+ * - 增加商店库存合并为一次批量 UPDATE，交易记录每组一行（由日志写入器批量写入）
+ */
+public class SellManager {
+
+    private final FoliaShopPlugin plugin;
+
+    public SellManager(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 已从玩家处移除、等待结算的物品
+     */
+    public record SoldStack(ItemStack item, SellPriceIndex.Quote quote) {
+    }
+
+    /**
+     * 出售背包中（不含装备栏和副手）所有可回收的物品（需在玩家所在区域线程调用）
+     * 自定义回收价格只按物品ID匹配，这里只出售与普通物品完全相同的物品：
+     * 改过名、附魔、有耐久损耗或装有内容物（潜影盒等）的物品会被跳过，需在出售界面中手动出售
+     */
+    public void sellInventory(Player player) {
+        if (!checkEnabled(player)) return;
+
+        PlayerInventory inventory = player.getInventory();
+        ItemStack[] contents = inventory.getStorageContents();
+        SellPriceIndex.Quote[] quotes = plugin.getShopManager().getSellPriceIndex().quoteAll(contents);
+
+        List<SoldStack> sold = new ArrayList<>();
+        Map<String, ItemStack> plainItems = new HashMap<>();
+        int skipped = 0;
+        for (int i = 0; i < contents.length; i++) {
+            if (quotes[i] == null || !quotes[i].isSellable()) continue;
+            if (!isPlain(contents[i], quotes[i], plainItems)) {
+                skipped++;
+                continue;
+            }
+            sold.add(new SoldStack(contents[i].clone(), quotes[i]));
+            inventory.setItem(i, null);
+        }
+
+        if (skipped > 0) {
+            player.sendMessage(Component.text("已跳过 " + skipped + " 组带有自定义名称、附魔、耐久损耗或内容物的物品，如需出售请使用出售界面")
+                .color(NamedTextColor.YELLOW));
+        }
+        if (sold.isEmpty()) {
+            if (skipped == 0) {
+                player.sendMessage(Component.text("背包中没有可以出售的物品！").color(NamedTextColor.RED));
+            }
+            return;
+        }
+        settle(player, sold, null);
+    }
+
+    /**
+     * 物品是否与报价对应的普通物品相同（/shop sellall 和自动出售容器只出售这样的物品）
+     * 商店商品的报价已经用 isSimilar 与商品确认过；自定义回收价格与同ID的普通物品比较
+     * @param plainItems 同一次出售中共用的普通物品缓存（每个ID只创建一次）
+     */
+    public boolean isPlain(ItemStack item, SellPriceIndex.Quote quote, Map<String, ItemStack> plainItems) {
+        if (quote.shopItemId() != null) return true;
+        ItemStack plain = plainItems.computeIfAbsent(quote.itemKey(),
+            key -> ItemPrototypeCache.create(plugin, key, null));
+        return plain != null && plain.isSimilar(item);
+    }
+
+    /**
+     * 出售主手中的物品（需在玩家所在区域线程调用）
+     */
+    public void sellHand(Player player) {
+        if (!checkEnabled(player)) return;
+
+        PlayerInventory inventory = player.getInventory();
+        ItemStack hand = inventory.getItemInMainHand();
+        if (hand.getType().isAir()) {
+            player.sendMessage(Component.text("请先手持要出售的物品！").color(NamedTextColor.RED));
+            return;
+        }
+
+        SellPriceIndex.Quote quote = plugin.getShopManager().getSellPriceIndex().quote(hand);
+        if (!quote.isSellable()) {
+            player.sendMessage(Component.text("手中的物品无法出售！").color(NamedTextColor.RED));
+            return;
+        }
+
+        inventory.setItemInMainHand(null);
+        settle(player, List.of(new SoldStack(hand.clone(), quote)), null);
+    }
+
+    /**
+     * 结算玩家出售的已移除物品：一次存款，成功后合并增加库存并记录交易，失败时返还物品
+     * @param onSuccess 存款成功后在玩家所在区域线程执行（可为 null）
+     */
+    public void settle(Player player, List<SoldStack> sold, Runnable onSuccess) {
+        settle(player, sold, "sell-success-batch", () -> {
+            for (SoldStack stack : sold) {
+                returnItem(player, stack.item());
+            }
+            player.sendMessage(Component.text("经济系统错误，出售已取消，物品已返还！").color(NamedTextColor.RED));
+        }, onSuccess);
+    }
+
+    /**
+     * 结算已移除的物品（收入归 player）
+     * @param messageKey 成功消息的键（消息未配置或玩家不在线时不发送）
+     * @param onFailure 存款失败时在玩家所在区域线程执行，负责返还物品
+     * @param onSuccess 存款成功后在玩家所在区域线程执行（可为 null）
+     */
+    public void settle(Player player, List<SoldStack> sold, String messageKey, Runnable onFailure, Runnable onSuccess) {
+        Settlement settlement = new Settlement(sold);
+        plugin.getEconomyManager().depositAsync(player, settlement.totalReward, success -> {
+            if (!success) {
+                onFailure.run();
+                return;
+            }
+            completeSettlement(player, settlement, messageKey);
+            if (onSuccess != null) {
+                onSuccess.run();
+            }
+        });
+    }
+
+    /**
+     * 一次结算多个玩家（自动出售按主人结算）：每人一次存款，整批通过 {@link EconomyManager#submitBatch(List)}
+     * 在经济线程的同一轮中执行
+     * @param onFailure 某个玩家存款失败时在该玩家所在区域线程执行，负责返还该玩家的物品
+     */
+    public void settleAll(Map<Player, List<SoldStack>> soldByPlayer, String messageKey, Consumer<Player> onFailure) {
+        List<Player> players = new ArrayList<>(soldByPlayer.keySet());
+        List<Settlement> settlements = new ArrayList<>(players.size());
+        List<EconomyManager.Operation> operations = new ArrayList<>(players.size());
+        for (Player player : players) {
+            Settlement settlement = new Settlement(soldByPlayer.get(player));
+            settlements.add(settlement);
+            operations.add(EconomyManager.Operation.deposit(player, settlement.totalReward));
+        }
+
+        plugin.getEconomyManager().submitBatch(operations).whenComplete((results, error) -> {
+            for (int i = 0; i < players.size(); i++) {
+                Player player = players.get(i);
+                Settlement settlement = settlements.get(i);
+                boolean success = error == null && results.get(i).success();
+                FoliaExecutors.entity(plugin, player).execute(() -> {
+                    if (success) {
+                        completeSettlement(player, settlement, messageKey);
+                    } else {
+                        onFailure.accept(player);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 待结算的物品：报价相同（相同物品）的合并为一组，保持首次出现的顺序
+     */
+    private static final class Settlement {
+        private final Map<SellPriceIndex.Quote, int[]> groups = new LinkedHashMap<>();
+        private double totalReward;
+        private int totalItems;
+
+        private Settlement(List<SoldStack> sold) {
+            for (SoldStack stack : sold) {
+                int amount = stack.item().getAmount();
+                groups.computeIfAbsent(stack.quote(), k -> new int[1])[0] += amount;
+                totalReward += stack.quote().price() * amount;
+                totalItems += amount;
+            }
+        }
+    }
+
+    /**
+     * 存款成功后发送消息、增加商店库存并记录交易（在玩家所在区域线程执行）
+     */
+    private void completeSettlement(Player player, Settlement settlement, String messageKey) {
+        Map<SellPriceIndex.Quote, int[]> groups = settlement.groups;
+        if (player.isOnline() && !plugin.getShopConfig().getRawMessage(messageKey).isEmpty()) {
+            player.sendMessage(plugin.getShopConfig().getComponent(messageKey,
+                Map.of("count", String.valueOf(groups.size()),
+                       "total", String.valueOf(settlement.totalItems),
+                       "reward", String.format("%.2f", settlement.totalReward),
+                       "currency", plugin.getShopConfig().getCurrencyName())));
+        }
+
+        // 增加商店库存（如果是商店物品且配置允许），同一商品合并
+        if (plugin.getShopConfig().isAddStockOnSell()) {
+            Map<String, Integer> stockAdds = new LinkedHashMap<>();
+            for (Map.Entry<SellPriceIndex.Quote, int[]> group : groups.entrySet()) {
+                String shopItemId = group.getKey().shopItemId();
+                if (shopItemId != null && !shopItemId.isEmpty()) {
+                    stockAdds.merge(shopItemId, group.getValue()[0], Integer::sum);
+                }
+            }
+            plugin.getShopManager().atomicAddStocks(stockAdds);
+        }
+
+        // 记录交易（每组一行，使用实际物品ID）
+        for (Map.Entry<SellPriceIndex.Quote, int[]> group : groups.entrySet()) {
+            SellPriceIndex.Quote quote = group.getKey();
+            int amount = group.getValue()[0];
+            String itemKey = quote.itemKey() != null ? quote.itemKey() : "unknown";
+            plugin.getShopManager().logTransaction(
+                player.getUniqueId(), player.getName(),
+                itemKey, itemKey, amount, quote.price() * amount, "SELL");
+        }
+    }
+
+    private boolean checkEnabled(Player player) {
+        if (!plugin.getShopConfig().isSellSystemEnabled()) {
+            player.sendMessage("§c系统回收功能已关闭！");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 将物品返还给玩家（背包满了则掉落）
+     */
+    private void returnItem(Player player, ItemStack item) {
+        Map<Integer, ItemStack> leftover = player.getInventory().addItem(item);
+        for (ItemStack drop : leftover.values()) {
+            player.getWorld().dropItemNaturally(player.getLocation(), drop);
+        }
+    }
+}
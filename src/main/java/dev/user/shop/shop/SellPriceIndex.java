@@ -0,0 +1,183 @@
+package dev.user.shop.shop;
+
+import dev.user.shop.util.ItemUtil;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.*;
+
+/**
+ * 系统回收价格索引（不可变）
+ * 目录发布时由 {@link ShopManager} 按当前回收模式预先建立，把商店商品的回收价格和
+ * sell-system.custom-items 合并到同一张以物品ID为键的表中：
+ * - SHOP_ONLY 只收录商店商品，CONFIG_ONLY 只收录自定义回收物品，ALL 两者都收录（商店商品优先）
+ * - 查价时每个物品只取一次物品ID（CraftEngine 查询），表中没有该ID的物品不再读取 ItemMeta
+ * - 同一物品ID下的商店商品再按组件哈希分桶，由 isSimilar 最终确认，与 {@link CatalogSnapshot#findByStack} 一致
+ *
+ * 批量出售使用 {@link #quoteAll(ItemStack[])}，一次遍历中与之前格子相似的物品直接复用报价。
+ */
+public final class SellPriceIndex {
+
+    public static final SellPriceIndex EMPTY = new SellPriceIndex(0, null, Map.of());
+
+    public enum Mode {
+        SHOP_ONLY, CONFIG_ONLY, ALL;
+
+        /**
+         * @return 对应的回收模式，无法识别时返回 null（不回收任何物品）
+         */
+        public static Mode parse(String mode) {
+            if (mode == null) return null;
+            try {
+                return valueOf(mode.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 单个物品的回收报价（单价），物品ID在查价时已取得，可直接用于交易记录
+     */
+    public record Quote(double price, String source, String shopItemId, String itemKey) {
+        public boolean isSellable() {
+            return price > 0;
+        }
+    }
+
+    private final long catalogVersion;
+    private final Mode mode;
+    // 物品ID -> 该ID下的回收价格
+    private final Map<String, Prices> table;
+
+    private SellPriceIndex(long catalogVersion, Mode mode, Map<String, Prices> table) {
+        this.catalogVersion = catalogVersion;
+        this.mode = mode;
+        this.table = table;
+    }
+
+    /**
+     * 按回收模式建立索引
+     * @param catalog 当前目录（使用其物品指纹，不再重复查询物品ID）
+     * @param customPrices 自定义回收物品（物品ID -> 单价）
+     * @param mode 回收模式，为 null 时不回收任何物品
+     */
+    static SellPriceIndex build(CatalogSnapshot catalog, Map<String, Double> customPrices, Mode mode) {
+        if (mode == null) {
+            return new SellPriceIndex(catalog.getVersion(), null, Map.of());
+        }
+
+        Map<String, Double> custom = new HashMap<>();
+        if (mode != Mode.SHOP_ONLY) {
+            for (Map.Entry<String, Double> entry : customPrices.entrySet()) {
+                if (entry.getValue() != null && entry.getValue() > 0) {
+                    custom.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        Map<String, Map<Integer, ShopItem[]>> shop = new HashMap<>();
+        if (mode != Mode.CONFIG_ONLY) {
+            for (Map.Entry<CatalogSnapshot.Fingerprint, ShopItem[]> entry : catalog.getFingerprintBuckets().entrySet()) {
+                ShopItem[] sellable = Arrays.stream(entry.getValue()).filter(ShopItem::canSell).toArray(ShopItem[]::new);
+                if (sellable.length == 0) continue;
+                CatalogSnapshot.Fingerprint fingerprint = entry.getKey();
+                shop.computeIfAbsent(fingerprint.itemKey(), k -> new HashMap<>(2))
+                    .put(fingerprint.componentHash(), sellable);
+            }
+        }
+
+        Map<String, Prices> table = new HashMap<>((custom.size() + shop.size()) * 2);
+        for (Map.Entry<String, Map<Integer, ShopItem[]>> entry : shop.entrySet()) {
+            table.put(entry.getKey(), new Prices(entry.getValue(), custom.getOrDefault(entry.getKey(), 0.0)));
+        }
+        for (Map.Entry<String, Double> entry : custom.entrySet()) {
+            table.putIfAbsent(entry.getKey(), new Prices(null, entry.getValue()));
+        }
+        return new SellPriceIndex(catalog.getVersion(), mode, table);
+    }
+
+    /**
+     * 查询单个物品的回收单价
+     * @return 报价，不可回收时价格为 0
+     */
+    public Quote quote(ItemStack item) {
+        String itemKey = ItemUtil.getItemKey(item);
+        Prices prices = table.get(itemKey);
+        if (prices == null) {
+            return new Quote(0, null, null, itemKey);
+        }
+
+        if (prices.shopItems != null) {
+            ShopItem[] bucket = prices.shopItems.get(item.hasItemMeta() ? item.getItemMeta().hashCode() : 0);
+            if (bucket != null) {
+                for (ShopItem shopItem : bucket) {
+                    if (shopItem.canSell() && shopItem.getDisplayItem().isSimilar(item)) {
+                        return new Quote(shopItem.getSellPrice(), "商店", shopItem.getId(), itemKey);
+                    }
+                }
+            }
+        }
+        if (prices.customPrice > 0) {
+            return new Quote(prices.customPrice, "系统回收", null, itemKey);
+        }
+        return new Quote(0, null, null, itemKey);
+    }
+
+    /**
+     * 一次遍历为一组物品报价（例如出售界面的全部格子或整个背包）
+     * 与之前已报价的物品相似（同材质且 isSimilar）时直接复用报价，不再查询物品ID
+     * @param items 物品（可包含 null 和空气）
+     * @return 与输入下标对应的报价，null 和空气对应的位置为 null
+     */
+    public Quote[] quoteAll(ItemStack[] items) {
+        Quote[] quotes = new Quote[items.length];
+        // 材质 -> 已报价物品的下标
+        Map<Material, List<Integer>> quoted = new EnumMap<>(Material.class);
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i];
+            if (item == null || item.getType().isAir()) continue;
+
+            List<Integer> sameType = quoted.computeIfAbsent(item.getType(), k -> new ArrayList<>(1));
+            for (int previous : sameType) {
+                if (items[previous].isSimilar(item)) {
+                    quotes[i] = quotes[previous];
+                    break;
+                }
+            }
+            if (quotes[i] == null) {
+                quotes[i] = quote(item);
+                sameType.add(i);
+            }
+        }
+        return quotes;
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 有回收价格的物品ID数（用于诊断）
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * 同一物品ID下的回收价格：商店商品（组件哈希 -> 商品），以及自定义回收单价（没有时为 0）
+     */
+    private static final class Prices {
+        private final Map<Integer, ShopItem[]> shopItems;
+        private final double customPrice;
+
+        private Prices(Map<Integer, ShopItem[]> shopItems, double customPrice) {
+            this.shopItems = shopItems;
+            this.customPrice = customPrice;
+        }
+    }
+}
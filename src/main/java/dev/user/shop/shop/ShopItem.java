@@ -1,11 +1,13 @@
 package dev.user.shop.shop;
 
+import dev.user.shop.FoliaShopPlugin;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ShopItem {
 
@@ -15,7 +17,7 @@ public class ShopItem {
     private double buyPrice;
     private double sellPrice;
     private int buyPoints; // 购买所需点券，0表示不需要
-    private int stock;
+    private volatile AtomicInteger stock; // 库存，-1表示无限（并发购买时通过 CAS 扣减）
     private String category;
     private int slot;
     private boolean enabled;
@@ -24,6 +26,7 @@ public class ShopItem {
     private Map<String, String> components; // NBT 组件配置
     private List<String> commands; // 购买后执行的命令
     private List<String> conditions; // 购买条件
+    private PurchaseCondition compiledConditions = PurchaseCondition.ALWAYS; // 编译后的购买条件
     private boolean giveItem; // 是否给予物品（默认true）
 
     public ShopItem(String id, String itemKey, double buyPrice, double sellPrice, int stock, String category, int slot) {
@@ -40,7 +43,7 @@ public class ShopItem {
         this.buyPrice = buyPrice;
         this.sellPrice = sellPrice;
         this.buyPoints = buyPoints;
-        this.stock = stock;
+        this.stock = new AtomicInteger(stock);
         this.category = category;
         this.slot = slot;
         this.enabled = true;
@@ -64,18 +67,40 @@ public class ShopItem {
     public double getSellPrice() { return sellPrice; }
     public void setSellPrice(double sellPrice) { this.sellPrice = sellPrice; }
 
-    public int getStock() { return stock; }
-    public void setStock(int stock) { this.stock = stock; }
-    public boolean hasUnlimitedStock() { return stock < 0; }
-    public boolean isInStock(int amount) { return stock < 0 || stock >= amount; }
+    public int getStock() { return stock.get(); }
+    public void setStock(int stock) { this.stock.set(stock); }
+    public boolean hasUnlimitedStock() { return stock.get() < 0; }
+    public boolean isInStock(int amount) {
+        int current = stock.get();
+        return current < 0 || current >= amount;
+    }
     public void reduceStock(int amount) {
-        if (stock > 0) {
-            stock = Math.max(0, stock - amount);
-        }
+        stock.getAndUpdate(current -> current > 0 ? Math.max(0, current - amount) : current);
     }
     public void addStock(int amount) {
-        if (stock >= 0) {
-            stock += amount;
+        stock.getAndUpdate(current -> current >= 0 ? current + amount : current);
+    }
+
+    /**
+     * 沿用另一商品对象的库存计数（账本模式下重载目录时，新对象与旧对象共享同一个计数，
+     * 发布前后仍在旧对象上进行的扣减、归还不会丢失）
+     * 只在两者都是有限库存时共享，配置改为无限库存或取消无限库存时保留新值
+     */
+    void shareStockWith(ShopItem previous) {
+        if (previous == this || previous.hasUnlimitedStock() || hasUnlimitedStock()) return;
+        this.stock = previous.stock;
+    }
+
+    /**
+     * 原子扣减库存
+     * @return 无限库存或库存足够时扣减并返回 true，库存不足返回 false
+     */
+    public boolean tryReduceStock(int amount) {
+        while (true) {
+            int current = stock.get();
+            if (current < 0) return true;
+            if (current < amount) return false;
+            if (stock.compareAndSet(current, current - amount)) return true;
         }
     }
 
@@ -112,8 +137,22 @@ public class ShopItem {
     public boolean hasCommands() { return commands != null && !commands.isEmpty(); }
 
     public List<String> getConditions() { return conditions; }
-    public void setConditions(List<String> conditions) { this.conditions = conditions != null ? conditions : new ArrayList<>(); }
+    public void setConditions(List<String> conditions) {
+        this.conditions = conditions != null ? conditions : new ArrayList<>();
+        this.compiledConditions = PurchaseCondition.compile(this.conditions, warning -> {
+            FoliaShopPlugin plugin = FoliaShopPlugin.getInstance();
+            if (plugin != null) {
+                plugin.getLogger().warning("商品 " + id + " 的" + warning);
+            }
+        });
+    }
     public boolean hasConditions() { return conditions != null && !conditions.isEmpty(); }
+    public PurchaseCondition getCompiledConditions() { return compiledConditions; }
+
+    /**
+     * 是否需要累计每日购买数量（每日限购或 max-today 条件）
+     */
+    public boolean tracksDailyPurchases() { return hasDailyLimit() || compiledConditions.needsDailyCount(); }
 
     public boolean isGiveItem() { return giveItem; }
     public void setGiveItem(boolean giveItem) { this.giveItem = giveItem; }
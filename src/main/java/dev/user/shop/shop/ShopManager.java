@@ -3,6 +3,9 @@ package dev.user.shop.shop;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import dev.user.shop.FoliaShopPlugin;
+import dev.user.shop.config.ShopConfig;
+import dev.user.shop.database.DatabaseQueue;
+import dev.user.shop.util.ItemPrototypeCache;
 import dev.user.shop.util.ItemUtil;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.inventory.ItemStack;
@@ -11,39 +14,102 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ShopManager {
 
     private final FoliaShopPlugin plugin;
-    private final Map<String, ShopItem> items;
-    private final Map<String, ShopCategory> categories;
-    // 物品缓存：以物品ItemStack的hash为key，加速查找
-    private final Map<Integer, ShopItem> itemCacheBySimilarity;
+    // 当前发布的目录快照（只通过 publish 整体替换）
+    private volatile CatalogSnapshot catalog = CatalogSnapshot.EMPTY;
+    // 与当前目录对应的回收价格索引（随目录一起重建）
+    private volatile SellPriceIndex sellPriceIndex = SellPriceIndex.EMPTY;
+    private final AtomicLong catalogVersion = new AtomicLong();
+    // 串行化单个商品的写时复制，避免并发修改互相覆盖
+    private final Object catalogWriteLock = new Object();
+    // 首个目录发布前为 false（显示物品仍在分 tick 生成），重载期间旧目录仍然可用
+    private volatile boolean catalogReady = false;
+    // 本地二进制目录快照，及当前目录所基于的配置校验和
+    private final CatalogSnapshotFile snapshotFile;
+    private volatile long configHash;
 
     public ShopManager(FoliaShopPlugin plugin) {
         this.plugin = plugin;
-        this.items = new HashMap<>();
-        this.categories = new HashMap<>();
-        this.itemCacheBySimilarity = new HashMap<>();
+        this.snapshotFile = new CatalogSnapshotFile(plugin);
         load();
     }
 
     public void load() {
-        items.clear();
-        categories.clear();
-        itemCacheBySimilarity.clear();
+        // 在私有的 Map 中构建新目录，加载期间读取方仍看到旧快照
+        Map<String, ShopCategory> categories = loadCategories();
+        long hash = snapshotFile.isEnabled() ? snapshotFile.computeConfigHash() : 0;
+
+        // 配置未变化时直接使用本地快照中的商品定义，只需从数据库读取库存
+        Map<String, ShopItem> cached = snapshotFile.read(hash);
+        if (cached != null) {
+            loadFromSnapshot(cached, categories, hash);
+            return;
+        }
+        loadFully(categories, hash);
+    }
 
-        // 加载分类
-        loadCategories();
+    /**
+     * 完整加载：读取数据库中的所有商品，再与配置同步
+     */
+    private void loadFully(Map<String, ShopCategory> categories, long hash) {
+        Map<String, ShopItem> items = new LinkedHashMap<>();
 
         // 先从数据库异步加载商品，加载完成后再处理配置
-        loadItemsFromDatabaseAsync(() -> {
+        loadItemsFromDatabaseAsync(items, () -> {
             // 数据库加载完成后，从配置加载进行增量更新
-            loadItemsFromConfig();
-            // 重建缓存
-            rebuildItemCache();
+            loadItemsFromConfig(items);
+            // 分 tick 生成显示物品后发布新目录
+            materializeDisplayItems(items.values(), () -> {
+                configHash = hash;
+                CatalogSnapshot snapshot = publish(items, categories, true);
+
+                plugin.getLogger().info("已加载 " + snapshot.getItemCount() + " 个商店商品，" +
+                    snapshot.getCategories().size() + " 个分类（目录版本 " + snapshot.getVersion() + "）");
+            });
+        });
+    }
+
+    /**
+     * 快照加载：商品定义来自本地快照，只查询一次数据库中的商品ID和库存
+     * 数据库中的商品与快照不一致（例如快照写入前崩溃）时回退到完整加载
+     */
+    private void loadFromSnapshot(Map<String, ShopItem> items, Map<String, ShopCategory> categories, long hash) {
+        plugin.getDatabaseQueue().submit("loadShopStocks", conn -> {
+            // 重载时先写回内存账本中的库存，保证读到最新值
+            plugin.getStockLedger().flush(conn);
+
+            Map<String, Integer> stocks = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT id, stock FROM shop_items WHERE enabled = TRUE");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    stocks.put(rs.getString("id"), rs.getInt("stock"));
+                }
+            }
+            return stocks;
+        }, stocks -> {
+            if (!stocks.keySet().equals(items.keySet())) {
+                plugin.getLogger().info("数据库商品与目录快照不一致，改为完整加载");
+                loadFully(categories, hash);
+                return;
+            }
+            for (ShopItem item : items.values()) {
+                item.setStock(stocks.get(item.getId()));
+            }
+            materializeDisplayItems(items.values(), () -> {
+                configHash = hash;
+                CatalogSnapshot snapshot = publish(items, categories, true);
 
-            plugin.getLogger().info("已加载 " + items.size() + " 个商店商品，" + categories.size() + " 个分类");
+                plugin.getLogger().info("已从目录快照加载 " + snapshot.getItemCount() + " 个商店商品，" +
+                    snapshot.getCategories().size() + " 个分类（目录版本 " + snapshot.getVersion() + "）");
+            });
+        }, error -> {
+            plugin.getLogger().warning("读取商品库存失败，改为完整加载: " + error.getMessage());
+            loadFully(categories, hash);
         });
     }
 
@@ -51,95 +117,166 @@ public class ShopManager {
      * 从配置文件重新加载（清空数据库并重新导入）
      */
     public void reloadFromConfig() {
-        items.clear();
-        categories.clear();
-        itemCacheBySimilarity.clear();
+        Map<String, ShopCategory> categories = loadCategories();
+        Map<String, ShopItem> items = new LinkedHashMap<>();
+        long hash = snapshotFile.isEnabled() ? snapshotFile.computeConfigHash() : 0;
 
         // 清空数据库中的商品
         plugin.getDatabaseManager().clearShopItems();
         plugin.getLogger().info("已清空数据库商店商品表");
 
-        // 加载分类
-        loadCategories();
-
         // 从配置加载所有商品（并保存到数据库）
-        loadItemsFromConfig();
+        loadItemsFromConfig(items);
 
-        // 重建物品缓存
-        rebuildItemCache();
+        // 分 tick 生成显示物品后发布新目录
+        materializeDisplayItems(items.values(), () -> {
+            configHash = hash;
+            CatalogSnapshot snapshot = publish(items, categories, false);
 
-        plugin.getLogger().info("已从配置重新加载 " + items.size() + " 个商店商品");
+            plugin.getLogger().info("已从配置重新加载 " + snapshot.getItemCount() + " 个商店商品");
+        });
     }
 
     /**
-     * 重建物品查找缓存
+     * 用构建好的商品和分类发布新目录
+     * @param keepLiveStock 账本模式下新商品沿用当前已发布商品的库存计数。新商品的库存在生成显示物品之前读取，
+     *                      这期间的购买仍作用在旧商品上；不沿用的话，写回时会用新商品上的旧库存覆盖这些扣减
      */
-    private void rebuildItemCache() {
-        itemCacheBySimilarity.clear();
-        for (ShopItem shopItem : items.values()) {
-            if (shopItem.getDisplayItem() != null) {
-                int hash = calculateItemHash(shopItem.getDisplayItem());
-                itemCacheBySimilarity.put(hash, shopItem);
+    private CatalogSnapshot publish(Map<String, ShopItem> items, Map<String, ShopCategory> categories, boolean keepLiveStock) {
+        CatalogSnapshot snapshot;
+        synchronized (catalogWriteLock) {
+            if (keepLiveStock && plugin.getStockLedger().isEnabled()) {
+                for (ShopItem item : items.values()) {
+                    ShopItem live = catalog.getItem(item.getId());
+                    if (live != null) {
+                        item.shareStockWith(live);
+                    }
+                }
             }
+            snapshot = new CatalogSnapshot(catalogVersion.incrementAndGet(), items, categories);
+            catalog = snapshot;
+            sellPriceIndex = buildSellPriceIndex(snapshot);
+            catalogReady = true;
         }
+        snapshotFile.scheduleWrite(this::getCatalog, configHash);
+        return snapshot;
     }
 
     /**
-     * 计算物品的哈希值（用于缓存）
-     * 考虑物品ID、显示名称和耐久度
+     * 分 tick 生成尚无显示物品的商品的显示物品（CE 物品创建和 NBT 组件应用开销较大）
+     * 在全局区域线程上执行，每 tick 最多占用 catalog.materialize-budget-ms，剩余的下一 tick 继续；
+     * 全部完成后在全局区域线程执行回调
      */
-    private int calculateItemHash(ItemStack item) {
-        if (item == null) return 0;
-        // 基础哈希：物品类型 + ID
-        String itemKey = ItemUtil.getItemKey(item);
-        int result = item.getType().hashCode();
-        result = 31 * result + itemKey.hashCode();
-
-        if (item.hasItemMeta() && item.getItemMeta() != null) {
-            // 考虑耐久度
-            if (item.getItemMeta() instanceof org.bukkit.inventory.meta.Damageable damageable) {
-                result = 31 * result + damageable.getDamage();
-            }
-            // 考虑显示名称（使用新的 Adventure API）
-            var meta = item.getItemMeta();
-            if (meta.hasDisplayName() && meta.displayName() != null) {
-                String displayName = net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer
-                    .legacySection().serialize(meta.displayName());
-                result = 31 * result + displayName.hashCode();
+    private void materializeDisplayItems(Collection<ShopItem> items, Runnable callback) {
+        List<ShopItem> pending = new ArrayList<>();
+        for (ShopItem item : items) {
+            if (item.getDisplayItem() == null) {
+                pending.add(item);
             }
         }
-        return result;
+        long budgetNanos = Math.max(1, plugin.getShopConfig().getCatalogMaterializeBudgetMs()) * 1_000_000L;
+        plugin.getServer().getGlobalRegionScheduler().run(plugin,
+            t -> materializeSlice(pending, 0, budgetNanos, 1, callback));
+    }
+
+    private void materializeSlice(List<ShopItem> pending, int from, long budgetNanos, int ticks, Runnable callback) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int index = from;
+        while (index < pending.size()) {
+            ShopItem item = pending.get(index++);
+            item.setDisplayItem(createDisplayItem(item.getItemKey(), item.getComponents()));
+            if (System.nanoTime() >= deadline) break;
+        }
+
+        if (index < pending.size()) {
+            int resume = index;
+            plugin.getServer().getGlobalRegionScheduler().runDelayed(plugin,
+                t -> materializeSlice(pending, resume, budgetNanos, ticks + 1, callback), 1L);
+            return;
+        }
+        if (ticks > 1) {
+            plugin.getLogger().info("已在 " + ticks + " 个 tick 内生成 " + pending.size() + " 个商品的显示物品");
+        }
+        callback.run();
     }
 
     /**
-     * 通过物品查找对应的商店物品（使用缓存优化）
+     * 创建商品的显示物品（应用 NBT 组件，相同物品和组件只构建一次），物品不存在时返回 null
      */
-    public ShopItem findShopItemByStack(ItemStack item) {
-        if (item == null) return null;
+    private ItemStack createDisplayItem(String itemKey, Map<String, String> components) {
+        return ItemPrototypeCache.create(plugin, itemKey, components);
+    }
 
-        // 先用哈希快速查找
-        int hash = calculateItemHash(item);
-        ShopItem cached = itemCacheBySimilarity.get(hash);
-        if (cached != null && cached.getDisplayItem() != null && cached.getDisplayItem().isSimilar(item)) {
-            return cached;
-        }
+    /**
+     * 目录是否已完成首次加载（未完成时商店界面应提示稍后再试）
+     */
+    public boolean isCatalogReady() {
+        return catalogReady;
+    }
 
-        // 哈希冲突或缓存未命中，遍历查找
-        for (ShopItem shopItem : items.values()) {
-            if (shopItem.getDisplayItem() != null && shopItem.getDisplayItem().isSimilar(item)) {
-                return shopItem;
-            }
+    /**
+     * 基于当前目录复制修改后发布
+     */
+    private void update(java.util.function.BiFunction<CatalogSnapshot, Long, CatalogSnapshot> change) {
+        synchronized (catalogWriteLock) {
+            catalog = change.apply(catalog, catalogVersion.incrementAndGet());
+            sellPriceIndex = buildSellPriceIndex(catalog);
         }
-        return null;
+        snapshotFile.scheduleWrite(this::getCatalog, configHash);
+    }
+
+    /**
+     * 按当前回收模式合并商店回收价格和自定义回收物品（配置重载时目录总会重新发布，索引随之更新）
+     */
+    private SellPriceIndex buildSellPriceIndex(CatalogSnapshot snapshot) {
+        ShopConfig config = plugin.getShopConfig();
+        return SellPriceIndex.build(snapshot, config.getCustomSellItems(),
+            SellPriceIndex.Mode.parse(config.getSellSystemMode()));
+    }
+
+    /**
+     * 获取与当前目录对应的回收价格索引
+     */
+    public SellPriceIndex getSellPriceIndex() {
+        return sellPriceIndex;
+    }
+
+    /**
+     * 丢弃本地目录快照（数据库被整体替换后调用，下次启动完整加载）
+     */
+    public void invalidateSnapshotFile() {
+        snapshotFile.invalidate();
+    }
+
+    /**
+     * 写入尚未写入的目录快照（插件关闭时调用）
+     */
+    public void shutdown() {
+        snapshotFile.shutdown();
+    }
+
+    /**
+     * 获取当前目录快照（读取方应持有同一个快照完成一次完整的读取）
+     */
+    public CatalogSnapshot getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * 通过物品查找对应的商店物品（使用缓存优化）
+     */
+    public ShopItem findShopItemByStack(ItemStack item) {
+        return catalog.findByStack(item);
     }
 
     public void reload() {
         load();
     }
 
-    private void loadCategories() {
+    private Map<String, ShopCategory> loadCategories() {
+        Map<String, ShopCategory> categories = new LinkedHashMap<>();
         ConfigurationSection section = plugin.getShopConfig().getShopCategories();
-        if (section == null) return;
+        if (section == null) return categories;
 
         for (String key : section.getKeys(false)) {
             ConfigurationSection catSection = section.getConfigurationSection(key);
@@ -151,19 +288,25 @@ public class ShopManager {
 
             categories.put(key, new ShopCategory(key, name, icon, slot));
         }
+        return categories;
     }
 
     /**
-     * 从配置加载商品，进行增量更新
-     * - 已有商品：更新价格、每日限额等配置，保留库存
-     * - 新商品：创建并保存到数据库
+     * 从配置加载商品，与数据库中已加载的商品逐字段比较后增量更新
+     * - 已有商品：只有配置字段有变化时才更新并写回（保留数据库中的库存）
+     * - 新商品：创建并写入数据库
+     * 需要写回的商品在一个事务中批量写入，未变化的商品不产生任何数据库写入
      */
-    private void loadItemsFromConfig() {
+    private void loadItemsFromConfig(Map<String, ShopItem> items) {
         ConfigurationSection section = plugin.getShopConfig().getShopItems();
         if (section == null) return;
 
+        List<ShopItem> dirty = new ArrayList<>();
+        // 字段名 -> 变化的商品数（用于同步摘要）
+        Map<String, Integer> fieldChanges = new TreeMap<>();
         int newCount = 0;
         int updatedCount = 0;
+        int unchangedCount = 0;
         for (String id : section.getKeys(false)) {
             ConfigurationSection itemSection = section.getConfigurationSection(id);
             if (itemSection == null) continue;
@@ -189,10 +332,29 @@ public class ShopManager {
             boolean giveItem = itemSection.getBoolean("give-item", true);
 
             ShopItem existingItem = items.get(id);
-            if (existingItem != null) {
-                // 已有商品：更新配置（保留数据库中的库存）
+            if (existingItem != null && existingItem.getItemKey().equals(itemKey)) {
+                // 已有商品：逐字段比较（价格按数据库精度比较）
+                List<String> changed = new ArrayList<>();
+                if (!samePrice(existingItem.getBuyPrice(), buyPrice)) changed.add("buy-price");
+                if (!samePrice(existingItem.getSellPrice(), sellPrice)) changed.add("sell-price");
+                if (existingItem.getBuyPoints() != buyPoints) changed.add("buy-points");
+                if (!Objects.equals(existingItem.getCategory(), category)) changed.add("category");
+                if (existingItem.getSlot() != slot) changed.add("slot");
+                if (existingItem.getDailyLimit() != dailyLimit) changed.add("daily-limit");
+                if (existingItem.getPlayerLimit() != playerLimit) changed.add("player-limit");
+                if (!existingItem.getComponents().equals(components)) changed.add("components");
+                if (!existingItem.getCommands().equals(commands)) changed.add("commands");
+                if (!existingItem.getConditions().equals(conditions)) changed.add("conditions");
+                if (existingItem.isGiveItem() != giveItem) changed.add("give-item");
+
+                // 价格等始终使用配置中的原值（数据库只保留两位小数）
                 existingItem.setBuyPrice(buyPrice);
                 existingItem.setSellPrice(sellPrice);
+                if (changed.isEmpty()) {
+                    unchangedCount++;
+                    continue;
+                }
+
                 existingItem.setBuyPoints(buyPoints);
                 existingItem.setCategory(category);
                 existingItem.setSlot(slot);
@@ -203,46 +365,61 @@ public class ShopManager {
                 existingItem.setConditions(conditions);
                 existingItem.setGiveItem(giveItem);
                 // 库存保留数据库值，不覆盖
-                // 更新显示物品（可能配置改了itemKey）
-                ItemStack item = ItemUtil.createItemFromKey(plugin, itemKey);
-                if (item != null) {
-                    // 应用 NBT 组件
-                    if (!components.isEmpty()) {
-                        item = ItemUtil.applyComponents(item, components);
-                    }
-                    existingItem.setDisplayItem(item);
+                // 组件变化时清空显示物品，发布前重新生成
+                if (changed.contains("components")) {
+                    existingItem.setDisplayItem(null);
                 }
-                // 同步回数据库
-                saveItem(existingItem);
+                for (String field : changed) {
+                    fieldChanges.merge(field, 1, Integer::sum);
+                }
+                dirty.add(existingItem);
                 updatedCount++;
             } else {
-                // 新商品：创建并保存
+                // 新商品（或配置更换了物品ID）：创建并保存，更换物品时保留数据库中的库存
+                if (existingItem != null) {
+                    stock = existingItem.getStock();
+                    fieldChanges.merge("item", 1, Integer::sum);
+                    updatedCount++;
+                } else {
+                    newCount++;
+                }
                 ShopItem shopItem = new ShopItem(id, itemKey, buyPrice, sellPrice, buyPoints, stock, category, slot, dailyLimit, components);
                 shopItem.setPlayerLimit(playerLimit);
                 shopItem.setCommands(commands);
                 shopItem.setConditions(conditions);
                 shopItem.setGiveItem(giveItem);
-                ItemStack item = ItemUtil.createItemFromKey(plugin, itemKey);
-                if (item != null) {
-                    // 应用 NBT 组件
-                    if (!components.isEmpty()) {
-                        item = ItemUtil.applyComponents(item, components);
-                    }
-                    shopItem.setDisplayItem(item);
-                }
+                // 显示物品在发布前分 tick 生成
                 items.put(id, shopItem);
-                saveItem(shopItem);
-                newCount++;
+                dirty.add(shopItem);
             }
         }
 
         if (newCount > 0 || updatedCount > 0) {
-            plugin.getLogger().info("从配置同步: 新增 " + newCount + " 个商品, 更新 " + updatedCount + " 个商品");
+            StringBuilder summary = new StringBuilder("从配置同步: 新增 " + newCount + " 个商品, 更新 " + updatedCount +
+                " 个商品, 未变化 " + unchangedCount + " 个商品");
+            if (!fieldChanges.isEmpty()) {
+                summary.append("（变化字段: ");
+                StringJoiner joiner = new StringJoiner(", ");
+                fieldChanges.forEach((field, count) -> joiner.add(field + " ×" + count));
+                summary.append(joiner).append("）");
+            }
+            plugin.getLogger().info(summary.toString());
         }
+        saveItems(dirty);
+    }
+
+    /**
+     * 按数据库精度（DECIMAL(18,2)）比较价格
+     */
+    private static boolean samePrice(double a, double b) {
+        return Math.round(a * 100) == Math.round(b * 100);
     }
 
-    private void loadItemsFromDatabaseAsync(Runnable callback) {
+    private void loadItemsFromDatabaseAsync(Map<String, ShopItem> items, Runnable callback) {
         plugin.getDatabaseQueue().submit("loadShopItems", conn -> {
+            // 重载时先写回内存账本中的库存，保证读到最新值
+            plugin.getStockLedger().flush(conn);
+
             // 只在数据库线程中查询数据
             List<Object[]> rawData = new ArrayList<>();
             try (PreparedStatement ps = conn.prepareStatement(
@@ -269,7 +446,7 @@ public class ShopManager {
             }
             return rawData;
         }, rawData -> {
-            // 在主线程中创建物品（CE物品需要在主线程创建）
+            // 只创建商品对象，显示物品（CE物品需要在主线程创建）在发布前分 tick 生成
             int count = 0;
             for (Object[] data : rawData) {
                 String id = (String) data[0];
@@ -296,14 +473,6 @@ public class ShopManager {
                 shopItem.setCommands(commands);
                 shopItem.setConditions(conditions);
                 shopItem.setGiveItem(giveItem);
-                ItemStack item = ItemUtil.createItemFromKey(plugin, itemKey);
-                if (item != null) {
-                    // 应用 NBT 组件
-                    if (!components.isEmpty()) {
-                        item = ItemUtil.applyComponents(item, components);
-                    }
-                    shopItem.setDisplayItem(item);
-                }
                 items.put(id, shopItem);
                 count++;
             }
@@ -329,8 +498,20 @@ public class ShopManager {
      * @param callback 回调函数，true表示成功（可选）
      */
     public void updateItemStock(String itemId, int newStock, java.util.function.Consumer<Boolean> callback) {
+        // 账本模式：内存为准，记录日志后由账本批量写回
+        if (plugin.getStockLedger().isEnabled()) {
+            ShopItem item = catalog.getItem(itemId);
+            if (item != null) {
+                plugin.getStockLedger().set(item, newStock);
+            }
+            if (callback != null) {
+                callback.accept(item != null);
+            }
+            return;
+        }
+
         // 先更新数据库，成功后更新内存
-        plugin.getDatabaseQueue().submit("updateStock", conn -> {
+        plugin.getDatabaseQueue().submit("updateStock", itemId, conn -> {
             try (PreparedStatement ps = conn.prepareStatement(
                     "UPDATE shop_items SET stock = ? WHERE id = ?")) {
                 ps.setInt(1, newStock);
@@ -339,7 +520,7 @@ public class ShopManager {
             }
         }, success -> {
             if (success) {
-                ShopItem item = items.get(itemId);
+                ShopItem item = catalog.getItem(itemId);
                 if (item != null) {
                     item.setStock(newStock);
                 }
@@ -363,64 +544,95 @@ public class ShopManager {
     }
 
     public void saveItem(ShopItem item) {
-        plugin.getDatabaseQueue().submit("saveShopItem", conn -> {
+        plugin.getDatabaseQueue().submit("saveShopItem", item.getId(), conn -> {
             boolean isMySQL = plugin.getDatabaseManager().isMySQL();
+            try (PreparedStatement ps = conn.prepareStatement(upsertItemSql(isMySQL))) {
+                bindItem(ps, item, isMySQL);
+                ps.executeUpdate();
+            }
+            return null;
+        });
+    }
 
-            // 将集合转换为 JSON 字符串
-            String componentsJson = item.hasComponents() ? componentsToJson(item.getComponents()) : null;
-            String commandsJson = item.hasCommands() ? listToJson(item.getCommands()) : null;
-            String conditionsJson = item.hasConditions() ? listToJson(item.getConditions()) : null;
+    /**
+     * 在一个事务中批量写入多个商品（一次批量语句，MySQL 驱动会合并为一次往返）
+     */
+    public void saveItems(List<ShopItem> items) {
+        if (items.isEmpty()) return;
+        List<ShopItem> batch = new ArrayList<>(items);
 
-            String sql;
-            if (isMySQL) {
-                // MySQL/MariaDB 语法
-                sql = "INSERT INTO shop_items (id, item_key, buy_price, sell_price, buy_points, stock, category, slot, enabled, daily_limit, player_limit, components, commands, conditions, give_item) " +
-                      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                      "ON DUPLICATE KEY UPDATE item_key=?, buy_price=?, sell_price=?, buy_points=?, stock=?, category=?, slot=?, enabled=?, daily_limit=?, player_limit=?, components=?, commands=?, conditions=?, give_item=?";
-            } else {
-                // H2 语法
-                sql = "MERGE INTO shop_items (id, item_key, buy_price, sell_price, buy_points, stock, category, slot, enabled, daily_limit, player_limit, components, commands, conditions, give_item) " +
-                      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        plugin.getDatabaseQueue().submit("saveShopItems", conn -> {
+            boolean isMySQL = plugin.getDatabaseManager().isMySQL();
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(upsertItemSql(isMySQL))) {
+                for (ShopItem item : batch) {
+                    bindItem(ps, item, isMySQL);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
+            return batch.size();
+        }, count -> plugin.getLogger().info("已批量写入 " + count + " 个商品到数据库"),
+           error -> plugin.getLogger().warning("批量写入商品失败: " + error.getMessage()));
+    }
 
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, item.getId());
-                ps.setString(2, item.getItemKey());
-                ps.setDouble(3, item.getBuyPrice());
-                ps.setDouble(4, item.getSellPrice());
-                ps.setInt(5, item.getBuyPoints());
-                ps.setInt(6, item.getStock());
-                ps.setString(7, item.getCategory());
-                ps.setInt(8, item.getSlot());
-                ps.setBoolean(9, item.isEnabled());
-                ps.setInt(10, item.getDailyLimit());
-                ps.setInt(11, item.getPlayerLimit());
-                ps.setString(12, componentsJson);
-                ps.setString(13, commandsJson);
-                ps.setString(14, conditionsJson);
-                ps.setBoolean(15, item.isGiveItem());
-
-                if (isMySQL) {
-                    ps.setString(16, item.getItemKey());
-                    ps.setDouble(17, item.getBuyPrice());
-                    ps.setDouble(18, item.getSellPrice());
-                    ps.setInt(19, item.getBuyPoints());
-                    ps.setInt(20, item.getStock());
-                    ps.setString(21, item.getCategory());
-                    ps.setInt(22, item.getSlot());
-                    ps.setBoolean(23, item.isEnabled());
-                    ps.setInt(24, item.getDailyLimit());
-                    ps.setInt(25, item.getPlayerLimit());
-                    ps.setString(26, componentsJson);
-                    ps.setString(27, commandsJson);
-                    ps.setString(28, conditionsJson);
-                    ps.setBoolean(29, item.isGiveItem());
-                }
+    private static String upsertItemSql(boolean isMySQL) {
+        if (isMySQL) {
+            // MySQL/MariaDB 语法
+            return "INSERT INTO shop_items (id, item_key, buy_price, sell_price, buy_points, stock, category, slot, enabled, daily_limit, player_limit, components, commands, conditions, give_item) " +
+                   "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                   "ON DUPLICATE KEY UPDATE item_key=?, buy_price=?, sell_price=?, buy_points=?, stock=?, category=?, slot=?, enabled=?, daily_limit=?, player_limit=?, components=?, commands=?, conditions=?, give_item=?";
+        }
+        // H2 语法
+        return "MERGE INTO shop_items (id, item_key, buy_price, sell_price, buy_points, stock, category, slot, enabled, daily_limit, player_limit, components, commands, conditions, give_item) " +
+               "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
 
-                ps.executeUpdate();
-            }
-            return null;
-        });
+    private void bindItem(PreparedStatement ps, ShopItem item, boolean isMySQL) throws SQLException {
+        // 将集合转换为 JSON 字符串
+        String componentsJson = item.hasComponents() ? componentsToJson(item.getComponents()) : null;
+        String commandsJson = item.hasCommands() ? listToJson(item.getCommands()) : null;
+        String conditionsJson = item.hasConditions() ? listToJson(item.getConditions()) : null;
+
+        ps.setString(1, item.getId());
+        ps.setString(2, item.getItemKey());
+        ps.setDouble(3, item.getBuyPrice());
+        ps.setDouble(4, item.getSellPrice());
+        ps.setInt(5, item.getBuyPoints());
+        ps.setInt(6, item.getStock());
+        ps.setString(7, item.getCategory());
+        ps.setInt(8, item.getSlot());
+        ps.setBoolean(9, item.isEnabled());
+        ps.setInt(10, item.getDailyLimit());
+        ps.setInt(11, item.getPlayerLimit());
+        ps.setString(12, componentsJson);
+        ps.setString(13, commandsJson);
+        ps.setString(14, conditionsJson);
+        ps.setBoolean(15, item.isGiveItem());
+
+        if (isMySQL) {
+            ps.setString(16, item.getItemKey());
+            ps.setDouble(17, item.getBuyPrice());
+            ps.setDouble(18, item.getSellPrice());
+            ps.setInt(19, item.getBuyPoints());
+            ps.setInt(20, item.getStock());
+            ps.setString(21, item.getCategory());
+            ps.setInt(22, item.getSlot());
+            ps.setBoolean(23, item.isEnabled());
+            ps.setInt(24, item.getDailyLimit());
+            ps.setInt(25, item.getPlayerLimit());
+            ps.setString(26, componentsJson);
+            ps.setString(27, commandsJson);
+            ps.setString(28, conditionsJson);
+            ps.setBoolean(29, item.isGiveItem());
+        }
     }
 
     /**
@@ -430,7 +642,19 @@ public class ShopManager {
      * @param callback 回调函数，参数为实际扣减的数量（0表示失败/库存不足）
      */
     public void atomicReduceStock(String itemId, int amount, java.util.function.Consumer<Integer> callback) {
-        plugin.getDatabaseQueue().submit("atomicReduceStock", conn -> {
+        // 账本模式：直接在内存中 CAS 扣减
+        if (plugin.getStockLedger().isEnabled()) {
+            ShopItem item = catalog.getItem(itemId);
+            if (item != null && item.isEnabled() && plugin.getStockLedger().reserve(item, amount)) {
+                plugin.getStockLedger().commit(item, amount);
+                callback.accept(amount);
+            } else {
+                callback.accept(0);
+            }
+            return;
+        }
+
+        plugin.getDatabaseQueue().submit("atomicReduceStock", itemId, conn -> {
             String selectSql = plugin.getDatabaseManager().isMySQL()
                     ? "SELECT stock FROM shop_items WHERE id = ? AND enabled = TRUE FOR UPDATE"
                     : "SELECT stock FROM shop_items WHERE id = ? AND enabled = TRUE";
@@ -502,7 +726,16 @@ public class ShopManager {
      * @param amount 增加数量
      */
     public void atomicAddStock(String itemId, int amount) {
-        plugin.getDatabaseQueue().submit("atomicAddStock", conn -> {
+        // 账本模式：直接在内存中增加
+        if (plugin.getStockLedger().isEnabled()) {
+            ShopItem item = catalog.getItem(itemId);
+            if (item != null) {
+                plugin.getStockLedger().add(item, amount);
+            }
+            return;
+        }
+
+        plugin.getDatabaseQueue().submit("atomicAddStock", itemId, conn -> {
             String sql = "UPDATE shop_items SET stock = stock + ? WHERE id = ?";
             try (PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.setInt(1, amount);
@@ -516,6 +749,70 @@ public class ShopManager {
         });
     }
 
+    /**
+     * 批量增加多个商品的库存（批量出售后调用）
+     * 非账本模式下在一个数据库任务中用一次 executeBatch 执行所有 UPDATE，再用一次查询刷新内存库存
+     * @param amounts 商品ID -> 增加数量
+     */
+    public void atomicAddStocks(Map<String, Integer> amounts) {
+        if (amounts.isEmpty()) return;
+        if (amounts.size() == 1) {
+            Map.Entry<String, Integer> entry = amounts.entrySet().iterator().next();
+            atomicAddStock(entry.getKey(), entry.getValue());
+            return;
+        }
+
+        // 账本模式：直接在内存中增加
+        if (plugin.getStockLedger().isEnabled()) {
+            for (Map.Entry<String, Integer> entry : amounts.entrySet()) {
+                ShopItem item = catalog.getItem(entry.getKey());
+                if (item != null) {
+                    plugin.getStockLedger().add(item, entry.getValue());
+                }
+            }
+            return;
+        }
+
+        Map<String, Integer> copy = new LinkedHashMap<>(amounts);
+        plugin.getDatabaseQueue().submit("atomicAddStocks", conn -> {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement("UPDATE shop_items SET stock = stock + ? WHERE id = ?")) {
+                for (Map.Entry<String, Integer> entry : copy.entrySet()) {
+                    ps.setInt(1, entry.getValue());
+                    ps.setString(2, entry.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+
+            // 从数据库刷新最新库存到内存（确保跨服一致性）
+            String placeholders = String.join(",", Collections.nCopies(copy.size(), "?"));
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT id, stock FROM shop_items WHERE id IN (" + placeholders + ")")) {
+                int index = 1;
+                for (String itemId : copy.keySet()) {
+                    ps.setString(index++, itemId);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ShopItem item = catalog.getItem(rs.getString("id"));
+                        if (item != null) {
+                            item.setStock(rs.getInt("stock"));
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
     /**
      * 从数据库刷新指定商品的库存到内存（在同一连接中）
      */
@@ -526,7 +823,7 @@ public class ShopManager {
             ResultSet rs = ps.executeQuery();
             if (rs.next()) {
                 int latestStock = rs.getInt("stock");
-                ShopItem item = items.get(itemId);
+                ShopItem item = catalog.getItem(itemId);
                 if (item != null) {
                     item.setStock(latestStock);
                 }
@@ -539,7 +836,15 @@ public class ShopManager {
      * @param callback 回调函数，参数为成功刷新的数量
      */
     public void refreshAllStocksFromDatabase(java.util.function.Consumer<Integer> callback) {
-        plugin.getDatabaseQueue().submit("refreshAllStocks", conn -> {
+        // 账本模式下内存即为最新库存，数据库可能尚未写回，不能反向覆盖
+        if (plugin.getStockLedger().isEnabled()) {
+            if (callback != null) {
+                callback.accept(0);
+            }
+            return;
+        }
+
+        plugin.getDatabaseQueue().submit("refreshAllStocks", null, DatabaseQueue.Priority.BACKGROUND, conn -> {
             String sql = "SELECT id, stock FROM shop_items";
             int refreshedCount = 0;
             try (PreparedStatement ps = conn.prepareStatement(sql);
@@ -547,7 +852,7 @@ public class ShopManager {
                 while (rs.next()) {
                     String itemId = rs.getString("id");
                     int stock = rs.getInt("stock");
-                    ShopItem item = items.get(itemId);
+                    ShopItem item = catalog.getItem(itemId);
                     if (item != null) {
                         item.setStock(stock);
                         refreshedCount++;
@@ -586,9 +891,6 @@ public class ShopManager {
         int dailyLimit = itemSection.getInt("daily-limit", 0);
         int playerLimit = itemSection.getInt("player-limit", 0);
 
-        // 移除旧的物品
-        items.remove(id);
-
         // 加载 NBT 组件配置
         Map<String, String> components = ItemUtil.parseComponents(itemSection.get("components"));
 
@@ -603,25 +905,23 @@ public class ShopManager {
         shopItem.setCommands(commands);
         shopItem.setConditions(conditions);
         shopItem.setGiveItem(giveItem);
-        ItemStack item = ItemUtil.createItemFromKey(plugin, itemKey);
+        ItemStack item = createDisplayItem(itemKey, components);
         if (item != null) {
             shopItem.setDisplayItem(item);
         }
 
-        items.put(id, shopItem);
+        // 替换旧的物品并发布新目录
+        update((snapshot, version) -> snapshot.withItem(version, shopItem));
 
         // 保存到数据库（覆盖原有数据）
         saveItem(shopItem);
 
-        // 重建缓存
-        rebuildItemCache();
-
         return true;
     }
 
     public void deleteItem(String id) {
-        items.remove(id);
-        plugin.getDatabaseQueue().submit("deleteShopItem", conn -> {
+        update((snapshot, version) -> snapshot.withoutItem(version, id));
+        plugin.getDatabaseQueue().submit("deleteShopItem", id, conn -> {
             try (PreparedStatement ps = conn.prepareStatement("DELETE FROM shop_items WHERE id = ?")) {
                 ps.setString(1, id);
                 ps.executeUpdate();
@@ -633,29 +933,19 @@ public class ShopManager {
     public void logTransaction(UUID playerUuid, String playerName, String itemId, String itemKey, int amount, double price, String type) {
         if (!plugin.getShopConfig().isLogTransactions()) return;
 
-        plugin.getDatabaseQueue().submit("logTransaction", conn -> {
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "INSERT INTO transactions (player_uuid, player_name, item_id, item_key, amount, price, type, timestamp) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
-                ps.setString(1, playerUuid.toString());
-                ps.setString(2, playerName);
-                ps.setString(3, itemId);
-                ps.setString(4, itemKey);
-                ps.setInt(5, amount);
-                ps.setDouble(6, price);
-                ps.setString(7, type);
-                ps.setLong(8, System.currentTimeMillis());
-                ps.executeUpdate();
-            }
-            return null;
-        });
+        // 交易记录只追加，交给批量写入器合并写入
+        plugin.getLogWriter().appendTransaction(playerUuid, playerName, itemId, itemKey, amount, price, type);
     }
 
     /**
      * 获取玩家的交易记录（最近20次）
      */
     public void getPlayerTransactions(UUID playerUuid, java.util.function.Consumer<List<TransactionRecord>> callback) {
-        plugin.getDatabaseQueue().submit("getTransactions", conn -> {
+        long watermark = plugin.getLogWriter().currentSequence();
+        plugin.getDatabaseQueue().submit("getTransactions", playerUuid, DatabaseQueue.Priority.INTERACTIVE_READ, conn -> {
+            // 先写入查询前已追加的日志，保证能读到最新记录
+            plugin.getLogWriter().flushUpTo(conn, watermark);
+
             List<TransactionRecord> records = new ArrayList<>();
             try (PreparedStatement ps = conn.prepareStatement(
                     "SELECT * FROM transactions WHERE player_uuid = ? ORDER BY timestamp DESC LIMIT 20")) {
@@ -680,182 +970,6 @@ public class ShopManager {
         });
     }
 
-    /**
-     * 尝试增加玩家今日购买计数（原子操作）
-     * 如果超过每日限额，则不会增加计数并返回 false
-     *
-     * @param playerUuid 玩家UUID
-     * @param itemId 物品ID
-     * @param amount 要增加的数量
-     * @param dailyLimit 每日限额（如果为0表示无限制，直接返回true）
-     * @param callback 回调函数，参数为是否成功（true=已增加计数，false=超过限额）
-     */
-    public void tryIncrementDailyBuyCount(UUID playerUuid, String itemId, int amount, int dailyLimit,
-                                          java.util.function.Consumer<Boolean> callback) {
-        // 无限制直接返回成功
-        if (dailyLimit <= 0) {
-            callback.accept(true);
-            return;
-        }
-
-        String today = getTodayString();
-        plugin.getDatabaseQueue().submit("tryIncrementDailyBuyCount", conn -> {
-            conn.setAutoCommit(false);
-            try {
-                // 1. 查询当前记录（加锁防止并发）
-                String selectSql = plugin.getDatabaseManager().isMySQL()
-                        ? "SELECT buy_count, last_date FROM daily_limits WHERE player_uuid = ? AND item_id = ? FOR UPDATE"
-                        : "SELECT buy_count, last_date FROM daily_limits WHERE player_uuid = ? AND item_id = ?";
-
-                int currentCount = 0;
-                String lastDate = null;
-                boolean recordExists = false;
-
-                try (PreparedStatement selectPs = conn.prepareStatement(selectSql)) {
-                    selectPs.setString(1, playerUuid.toString());
-                    selectPs.setString(2, itemId);
-                    ResultSet rs = selectPs.executeQuery();
-                    if (rs.next()) {
-                        recordExists = true;
-                        currentCount = rs.getInt("buy_count");
-                        lastDate = rs.getString("last_date");
-                    }
-                }
-
-                // 2. 计算新计数（考虑跨天）
-                int newCount;
-                if (recordExists && today.equals(lastDate)) {
-                    // 同一天，正常累加
-                    newCount = currentCount + amount;
-                } else {
-                    // 跨天或无记录，从 amount 开始
-                    newCount = amount;
-                }
-
-                // 3. 检查是否超过限额
-                if (newCount > dailyLimit) {
-                    conn.rollback();
-                    return false; // 超过限额
-                }
-
-                // 4. 更新计数
-                // 根据数据库类型选择SQL语法
-                boolean isMySQL = plugin.getDatabaseManager().isMySQL();
-                String updateSql;
-                if (isMySQL) {
-                    updateSql = "INSERT INTO daily_limits (player_uuid, item_id, buy_count, last_date) VALUES (?, ?, ?, ?) " +
-                              "ON DUPLICATE KEY UPDATE buy_count = ?, last_date = ?";
-                } else {
-                    // H2: 使用 MERGE INTO ... KEY(...) 语法支持 UPSERT
-                    updateSql = "MERGE INTO daily_limits KEY(player_uuid, item_id) VALUES (?, ?, ?, ?)";
-                }
-
-                try (PreparedStatement ps = conn.prepareStatement(updateSql)) {
-                    ps.setString(1, playerUuid.toString());
-                    ps.setString(2, itemId);
-                    ps.setInt(3, newCount);
-                    ps.setString(4, today);
-                    if (isMySQL) {
-                        ps.setInt(5, newCount);
-                        ps.setString(6, today);
-                    }
-
-                    ps.executeUpdate();
-                }
-
-                conn.commit();
-                return true; // 成功增加计数
-
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
-            } finally {
-                conn.setAutoCommit(true);
-            }
-        }, callback, error -> {
-            plugin.getLogger().warning("增加每日购买计数失败: " + error.getMessage());
-            callback.accept(false);
-        });
-    }
-
-    private String getTodayString() {
-        return java.time.LocalDate.now().toString();
-    }
-
-    /**
-     * 检查玩家的终身购买限额
-     * @param playerUuid 玩家UUID
-     * @param itemId 物品ID
-     * @param playerLimit 限制数量（0表示无限制）
-     * @param callback 回调函数，参数为剩余可购买数量（-1表示无限制，0表示已达上限）
-     */
-    public void checkPlayerLimit(UUID playerUuid, String itemId, int playerLimit,
-                                  java.util.function.Consumer<Integer> callback) {
-        // 无限制直接返回 -1
-        if (playerLimit <= 0) {
-            callback.accept(-1);
-            return;
-        }
-
-        plugin.getDatabaseQueue().submit("checkPlayerLimit", conn -> {
-            String sql = "SELECT buy_count FROM player_item_limits WHERE player_uuid = ? AND item_id = ?";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, playerUuid.toString());
-                ps.setString(2, itemId);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    int currentCount = rs.getInt("buy_count");
-                    return Math.max(0, playerLimit - currentCount);
-                } else {
-                    // 无记录，返回完整限额
-                    return playerLimit;
-                }
-            }
-        }, callback, error -> {
-            plugin.getLogger().warning("检查玩家购买限额失败: " + error.getMessage());
-            callback.accept(0); // 出错时保守返回0
-        });
-    }
-
-    /**
-     * 增加玩家的终身购买计数
-     * @param playerUuid 玩家UUID
-     * @param itemId 物品ID
-     * @param amount 增加数量
-     * @param callback 回调函数，参数为是否成功（可选）
-     */
-    public void incrementPlayerLimit(UUID playerUuid, String itemId, int amount,
-                                     java.util.function.Consumer<Boolean> callback) {
-        plugin.getDatabaseQueue().submit("incrementPlayerLimit", conn -> {
-            boolean isMySQL = plugin.getDatabaseManager().isMySQL();
-            String sql;
-            if (isMySQL) {
-                sql = "INSERT INTO player_item_limits (player_uuid, item_id, buy_count) VALUES (?, ?, ?) " +
-                      "ON DUPLICATE KEY UPDATE buy_count = buy_count + ?";
-            } else {
-                sql = "MERGE INTO player_item_limits KEY(player_uuid, item_id) VALUES (?, ?, buy_count + ?)";
-            }
-
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, playerUuid.toString());
-                ps.setString(2, itemId);
-                if (isMySQL) {
-                    ps.setInt(3, amount);
-                    ps.setInt(4, amount);
-                } else {
-                    ps.setInt(3, amount);
-                }
-                ps.executeUpdate();
-                return true;
-            }
-        }, success -> {
-            if (callback != null) callback.accept(true);
-        }, error -> {
-            plugin.getLogger().warning("增加玩家购买计数失败: " + error.getMessage());
-            if (callback != null) callback.accept(false);
-        });
-    }
-
     /**
      * 重置玩家的终身购买限额（管理命令用）
      * @param playerUuid 玩家UUID（null表示重置所有玩家）
@@ -864,7 +978,7 @@ public class ShopManager {
      */
     public void resetPlayerLimit(UUID playerUuid, String itemId,
                                   java.util.function.Consumer<Integer> callback) {
-        plugin.getDatabaseQueue().submit("resetPlayerLimit", conn -> {
+        plugin.getDatabaseQueue().submit("resetPlayerLimit", playerUuid, conn -> {
             String sql;
             PreparedStatement ps;
 
@@ -892,6 +1006,7 @@ public class ShopManager {
 
             try {
                 int affected = ps.executeUpdate();
+                plugin.getPlayerLimitCache().resetLifetime(playerUuid, itemId);
                 return affected;
             } finally {
                 ps.close();
@@ -911,7 +1026,7 @@ public class ShopManager {
         long cutoffTime = System.currentTimeMillis() - (days * 24L * 60L * 60L * 1000L);
         String cutoffDate = java.time.LocalDate.now().minusDays(days).toString();
 
-        plugin.getDatabaseQueue().submit("cleanupOldData", conn -> {
+        plugin.getDatabaseQueue().submit("cleanupOldData", null, DatabaseQueue.Priority.BACKGROUND, conn -> {
             int deletedTransactions = 0;
             int deletedDailyLimits = 0;
 
@@ -981,45 +1096,42 @@ public class ShopManager {
     }
 
     public ShopItem getItem(String id) {
-        return items.get(id);
+        return catalog.getItem(id);
     }
 
     public java.util.Collection<ShopItem> getAllItems() {
-        return items.values();
+        return catalog.getItems();
     }
 
     public List<ShopItem> getItemsByCategory(String category) {
-        List<ShopItem> result = new ArrayList<>();
-        for (ShopItem item : items.values()) {
-            if (item.getCategory().equalsIgnoreCase(category) && item.isEnabled()) {
-                result.add(item);
-            }
-        }
-        return result;
+        return catalog.getItemsByCategory(category);
     }
 
     public ShopCategory getCategory(String id) {
-        return categories.get(id);
+        return catalog.getCategory(id);
     }
 
     public Collection<ShopCategory> getAllCategories() {
-        return categories.values();
+        return catalog.getCategories();
     }
 
     /**
      * 重新加载所有物品的显示物品（用于延迟加载CE物品）
      */
     public void reloadDisplayItems() {
+        // CE 物品定义可能已变化，丢弃旧原型
+        ItemPrototypeCache.invalidate();
         int count = 0;
-        for (ShopItem item : items.values()) {
-            ItemStack displayItem = ItemUtil.createItemFromKey(plugin, item.getItemKey());
+        for (ShopItem item : catalog.getItems()) {
+            ItemStack displayItem = createDisplayItem(item.getItemKey(), item.getComponents());
             if (displayItem != null) {
                 item.setDisplayItem(displayItem);
                 count++;
             }
         }
         plugin.getLogger().info("重新加载了 " + count + " 个物品的显示物品");
-        rebuildItemCache();
+        // 显示物品变化后重建索引
+        update((snapshot, version) -> snapshot.reindex(version));
     }
 
     public static class ShopCategory {
@@ -1046,7 +1158,7 @@ public class ShopManager {
      * @param callback 回调函数，参数为导出的商品数量
      */
     public void exportToYaml(java.util.function.Consumer<Integer> callback) {
-        plugin.getDatabaseQueue().submit("exportShopToYaml", conn -> {
+        plugin.getDatabaseQueue().submit("exportShopToYaml", null, DatabaseQueue.Priority.BACKGROUND, conn -> {
             // 查询所有商品数据
             String sql = "SELECT id, item_key, buy_price, sell_price, stock, category, slot, daily_limit, enabled FROM shop_items ORDER BY id";
             List<ShopItemData> items = new ArrayList<>();
@@ -1085,7 +1197,7 @@ public class ShopManager {
 
             // 写入分类
             ConfigurationSection categoriesSection = yaml.createSection("categories");
-            for (ShopCategory category : categories.values()) {
+            for (ShopCategory category : catalog.getCategories()) {
                 ConfigurationSection catSection = categoriesSection.createSection(category.getId());
                 catSection.set("name", category.getName());
                 catSection.set("icon", category.getIcon());
@@ -0,0 +1,427 @@
+package dev.user.shop.shop;
+
+import dev.user.shop.FoliaShopPlugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存库存账本（单服 H2 模式）
+ * 库存以 {@link ShopItem} 中的原子计数为准，购买时直接 CAS 扣减，不再经过数据库事务：
+ * - 每次库存变化提交后，把该商品的最新库存追加到日志文件（stock-journal.log）
+ * - 定时把有变化的商品合并为一次批量 UPDATE 写回 shop_items
+ * - 写回成功后压缩日志，只保留写回期间又发生变化的商品
+ * - 启动时重放日志中每个商品序号最大的记录，恢复上次未写回的库存
+ *
+ * 日志记录的是库存绝对值而不是增量，重放多次结果相同。
+ * 每条记录带有递增序号，序号与库存在同一把锁内取得：多个线程写日志的先后可能与库存变化的先后不同，
+ * 重放按序号而不是行的位置取最新值。
+ * 购买时先扣减（reserve）后提交（commit）或归还（restore），已扣减未提交的数量单独记录：
+ * 日志和写回使用的是已提交库存（当前库存 + 未提交的扣减），不会把其他线程进行中的购买提前写入。
+ * MySQL 跨服部署时数据库才是权威来源，不启用此账本。
+ */
+public class StockLedger {
+
+    private static final String JOURNAL_FILE = "stock-journal.log";
+    private static final String UPDATE_SQL = "UPDATE shop_items SET stock = ? WHERE id = ?";
+
+    private final FoliaShopPlugin plugin;
+    private final boolean enabled;
+    private final File journalFile;
+    private final Object journalLock = new Object();
+    private final Object flushLock = new Object();
+    private final Set<String> dirtyItems = ConcurrentHashMap.newKeySet();
+    // 日志记录序号（重放时每个商品取序号最大的记录）
+    private final AtomicLong journalSequence = new AtomicLong();
+    // 商品ID -> 已扣减但尚未提交或归还的数量（读写时以该对象加锁，与库存一起读取）
+    private final Map<String, AtomicInteger> reservations = new ConcurrentHashMap<>();
+    private FileChannel journal;
+    private ScheduledExecutorService executor;
+
+    // 统计
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
+    public StockLedger(FoliaShopPlugin plugin) {
+        this.plugin = plugin;
+        this.journalFile = new File(plugin.getDataFolder(), JOURNAL_FILE);
+
+        String mode = plugin.getShopConfig().getStockMode();
+        boolean useLedger = switch (mode) {
+            case "LEDGER" -> true;
+            case "DATABASE" -> false;
+            default -> !plugin.getDatabaseManager().isMySQL();
+        };
+        if (useLedger && plugin.getDatabaseManager().isMySQL()) {
+            plugin.getLogger().warning("MySQL 可能被多个服务器共享，库存账本模式仅适用于单服，已改用数据库模式");
+            useLedger = false;
+        }
+        this.enabled = useLedger;
+    }
+
+    /**
+     * 重放上次未写回的库存日志，并开始定时写回
+     * 需在商店商品从数据库加载之前调用
+     */
+    public void start() {
+        if (!enabled) {
+            plugin.getLogger().info("库存模式: 数据库（每次购买在数据库事务中扣减库存）");
+            // 之前以账本模式运行留下的日志也要写回，避免库存丢失
+            if (journalFile.exists()) {
+                replayJournal();
+            }
+            return;
+        }
+
+        replayJournal();
+
+        try {
+            journal = FileChannel.open(journalFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            plugin.getLogger().severe("无法打开库存日志文件: " + e.getMessage());
+        }
+
+        long interval = Math.max(100, plugin.getShopConfig().getStockFlushIntervalMs());
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "FoliaShop-Stock-Ledger");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::flushSafely, interval, interval, TimeUnit.MILLISECONDS);
+
+        plugin.getLogger().info("库存模式: 内存账本（每 " + interval + "ms 批量写回数据库）");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==================== 库存变更 ====================
+
+    /**
+     * CAS 扣减库存（无限库存直接成功）
+     * 扣减成功后必须调用且只调用一次：事务提交时调用 {@link #commit(ShopItem, int)}，失败回滚时调用 {@link #restore(ShopItem, int)}
+     */
+    public boolean reserve(ShopItem item, int amount) {
+        AtomicInteger pending = reservations.computeIfAbsent(item.getId(), k -> new AtomicInteger());
+        synchronized (pending) {
+            if (!item.tryReduceStock(amount)) return false;
+            pending.addAndGet(amount);
+            return true;
+        }
+    }
+
+    /**
+     * 提交已扣减的库存（写入日志并标记待写回）
+     */
+    public void commit(ShopItem item, int amount) {
+        release(item, amount, 0);
+    }
+
+    /**
+     * 归还已扣减但未提交的库存（同样写入日志并标记待写回）
+     */
+    public void restore(ShopItem item, int amount) {
+        release(item, amount, amount);
+    }
+
+    /**
+     * 结束一次扣减：从未提交数量中移除，按需归还到库存，然后记录已提交库存（无限库存不记录）
+     */
+    private void release(ShopItem item, int amount, int returned) {
+        AtomicInteger pending = reservations.computeIfAbsent(item.getId(), k -> new AtomicInteger());
+        int committed;
+        long sequence;
+        synchronized (pending) {
+            item.addStock(returned);
+            pending.addAndGet(-amount);
+            committed = item.getStock() + pending.get();
+            sequence = journalSequence.incrementAndGet();
+        }
+        if (!item.hasUnlimitedStock()) {
+            record(item.getId(), committed, sequence);
+        }
+    }
+
+    /**
+     * 增加库存并记录（出售回商店）
+     */
+    public void add(ShopItem item, int amount) {
+        AtomicInteger pending = reservations.computeIfAbsent(item.getId(), k -> new AtomicInteger());
+        int committed;
+        long sequence;
+        synchronized (pending) {
+            item.addStock(amount);
+            committed = item.getStock() + pending.get();
+            sequence = journalSequence.incrementAndGet();
+        }
+        if (item.hasUnlimitedStock()) return;
+        record(item.getId(), committed, sequence);
+    }
+
+    /**
+     * 设置库存并记录（管理界面修改）
+     */
+    public void set(ShopItem item, int stock) {
+        AtomicInteger pending = reservations.computeIfAbsent(item.getId(), k -> new AtomicInteger());
+        long sequence;
+        synchronized (pending) {
+            item.setStock(stock);
+            sequence = journalSequence.incrementAndGet();
+        }
+        record(item.getId(), stock, sequence);
+    }
+
+    /**
+     * 已提交库存：当前库存加上进行中的购买已扣减、尚未提交的数量
+     * 管理员在购买进行中直接设置库存时，该次购买提交后以设置的值为准
+     */
+    private int committedStock(ShopItem item) {
+        AtomicInteger pending = reservations.get(item.getId());
+        if (pending == null || item.hasUnlimitedStock()) return item.getStock();
+        synchronized (pending) {
+            return item.getStock() + pending.get();
+        }
+    }
+
+    /**
+     * 写入日志并标记待写回（不能在扣减锁内调用：压缩日志时先持有日志锁再取扣减锁）
+     */
+    private void record(String itemId, int stock, long sequence) {
+        synchronized (journalLock) {
+            appendJournal(itemId, stock, sequence);
+            dirtyItems.add(itemId);
+        }
+    }
+
+    private void appendJournal(String itemId, int stock, long sequence) {
+        if (journal == null) return;
+        try {
+            byte[] line = (itemId + "\t" + sequence + "\t" + stock + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.wrap(line);
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("写入库存日志失败 [" + itemId + "]: " + e.getMessage());
+        }
+    }
+
+    // ==================== 写回 ====================
+
+    /**
+     * 把有变化的商品库存写回数据库（使用独立连接）
+     */
+    public void flush() {
+        if (!enabled) return;
+        try (Connection conn = plugin.getDatabaseManager().getConnection()) {
+            flush(conn);
+        } catch (SQLException e) {
+            plugin.getLogger().warning("库存写回失败（稍后重试）: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 在给定连接上把有变化的商品库存写回数据库（供需要读取 shop_items 的数据库任务使用）
+     */
+    public void flush(Connection conn) throws SQLException {
+        if (!enabled) return;
+
+        synchronized (flushLock) {
+            if (dirtyItems.isEmpty()) return;
+
+            // 先移出待写回集合再读取库存：读取之后的变化会重新标记，下次写回
+            Map<String, Integer> snapshot = new LinkedHashMap<>();
+            for (String itemId : dirtyItems) {
+                dirtyItems.remove(itemId);
+                ShopItem item = plugin.getShopManager() != null ? plugin.getShopManager().getItem(itemId) : null;
+                if (item != null) {
+                    snapshot.put(itemId, committedStock(item));
+                }
+            }
+
+            try {
+                writeStocks(conn, snapshot);
+            } catch (SQLException e) {
+                dirtyItems.addAll(snapshot.keySet());
+                throw e;
+            }
+
+            flushCount.incrementAndGet();
+            flushedRows.addAndGet(snapshot.size());
+            compactJournal();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (Exception e) {
+            plugin.getLogger().warning("库存账本异常: " + e.getMessage());
+        }
+    }
+
+    private void writeStocks(Connection conn, Map<String, Integer> stocks) throws SQLException {
+        if (stocks.isEmpty()) return;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement(UPDATE_SQL)) {
+            for (Map.Entry<String, Integer> entry : stocks.entrySet()) {
+                ps.setInt(1, entry.getValue());
+                ps.setString(2, entry.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 压缩日志：清空后只写入当前仍待写回的商品
+     */
+    private void compactJournal() {
+        synchronized (journalLock) {
+            if (journal == null) return;
+            try {
+                journal.truncate(0);
+                for (String itemId : dirtyItems) {
+                    ShopItem item = plugin.getShopManager().getItem(itemId);
+                    if (item == null) continue;
+                    AtomicInteger pending = reservations.computeIfAbsent(itemId, k -> new AtomicInteger());
+                    int committed;
+                    long sequence;
+                    synchronized (pending) {
+                        committed = item.getStock() + pending.get();
+                        sequence = journalSequence.incrementAndGet();
+                    }
+                    appendJournal(itemId, committed, sequence);
+                }
+                journal.force(false);
+            } catch (IOException e) {
+                plugin.getLogger().warning("压缩库存日志失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 重放日志：每个商品取序号最大的记录写回数据库，然后清空日志
+     * 旧格式的行（商品ID\t库存，没有序号）按序号 0 处理，序号相同时后面的行为准
+     */
+    private void replayJournal() {
+        if (!journalFile.exists()) return;
+
+        Map<String, Integer> stocks = new HashMap<>();
+        Map<String, Long> sequences = new HashMap<>();
+        long maxSequence = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab <= 0) continue; // 崩溃时可能留下不完整的行
+                int firstTab = line.indexOf('\t');
+                try {
+                    String itemId = line.substring(0, firstTab);
+                    long sequence = firstTab < tab ? Long.parseLong(line.substring(firstTab + 1, tab)) : 0;
+                    int stock = Integer.parseInt(line.substring(tab + 1));
+                    Long previous = sequences.get(itemId);
+                    if (previous == null || sequence >= previous) {
+                        sequences.put(itemId, sequence);
+                        stocks.put(itemId, stock);
+                    }
+                    maxSequence = Math.max(maxSequence, sequence);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("读取库存日志失败: " + e.getMessage());
+            return;
+        }
+        // 重放失败时日志保留，之后追加的记录序号必须大于其中已有的记录
+        journalSequence.set(maxSequence);
+
+        if (!stocks.isEmpty()) {
+            try (Connection conn = plugin.getDatabaseManager().getConnection()) {
+                writeStocks(conn, stocks);
+                plugin.getLogger().info("已从库存日志恢复 " + stocks.size() + " 个商品的库存");
+            } catch (SQLException e) {
+                // 保留日志文件，下次启动再试
+                plugin.getLogger().severe("重放库存日志失败: " + e.getMessage());
+                return;
+            }
+        }
+
+        try {
+            Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.TRUNCATE_EXISTING).close();
+        } catch (IOException e) {
+            plugin.getLogger().warning("清空库存日志失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 停止定时写回，写回剩余库存并关闭日志（需在数据库连接池关闭前调用）
+     */
+    public void shutdown() {
+        if (!enabled) return;
+
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+            }
+        }
+
+        flush();
+
+        synchronized (journalLock) {
+            if (journal != null) {
+                try {
+                    journal.force(true);
+                    journal.close();
+                } catch (IOException e) {
+                    plugin.getLogger().warning("关闭库存日志失败: " + e.getMessage());
+                }
+                journal = null;
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return dirtyItems.size();
+    }
+
+    public long getFlushedRows() {
+        return flushedRows.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+}
@@ -0,0 +1,81 @@
+package dev.user.shop.util;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Folia 调度器适配为 {@link Executor}
+ * 用于 CompletableFuture 的 {@code thenXxxAsync(..., executor)}，让异步结果回到正确的线程继续执行
+ */
+public final class FoliaExecutors {
+
+    private FoliaExecutors() {
+    }
+
+    /**
+     * 全局区域线程（不涉及玩家或世界状态的逻辑）
+     */
+    public static Executor global(Plugin plugin) {
+        return task -> plugin.getServer().getGlobalRegionScheduler().execute(plugin, task);
+    }
+
+    /**
+     * 玩家所在区域线程（访问背包、打开界面等）
+     * 玩家已下线时改在全局区域线程执行，任务内部需自行检查 {@code player.isOnline()}
+     */
+    public static Executor entity(Plugin plugin, Player player) {
+        return task -> {
+            Runnable fallback = () -> plugin.getServer().getGlobalRegionScheduler().execute(plugin, task);
+            boolean scheduled = player.getScheduler().execute(plugin, task, fallback, 1L);
+            if (!scheduled) {
+                fallback.run();
+            }
+        };
+    }
+
+    /**
+     * 按 UUID 查找在线玩家并切到其所在区域线程，玩家不在线时使用全局区域线程
+     * 玩家在执行时才解析，提交后才上线/下线的情况也能正确处理
+     */
+    public static Executor player(Plugin plugin, UUID playerUuid) {
+        return task -> {
+            Player player = plugin.getServer().getPlayer(playerUuid);
+            if (player != null) {
+                entity(plugin, player).execute(task);
+            } else {
+                global(plugin).execute(task);
+            }
+        };
+    }
+
+    /**
+     * 位置所在区域线程（方块、展示实体等）
+     */
+    public static Executor region(Plugin plugin, Location location) {
+        return task -> plugin.getServer().getRegionScheduler().execute(plugin, location, task);
+    }
+
+    /**
+     * 根据任务归属选择回调线程
+     * - {@link Player}：玩家所在区域线程
+     * - {@link UUID}：视为玩家UUID，玩家在线时到其所在区域线程
+     * - {@link Location}：位置所在区域线程
+     * - 其他或 null：全局区域线程
+     */
+    public static Executor forOwner(Plugin plugin, Object owner) {
+        if (owner instanceof Player player) {
+            return entity(plugin, player);
+        }
+        if (owner instanceof UUID playerUuid) {
+            return player(plugin, playerUuid);
+        }
+        if (owner instanceof Location location && location.getWorld() != null) {
+            return region(plugin, location);
+        }
+        return global(plugin);
+    }
+}
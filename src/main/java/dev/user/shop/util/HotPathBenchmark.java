@@ -0,0 +1,271 @@
+package dev.user.shop.util;
+
+import de.tr7zw.nbtapi.NBT;
+import de.tr7zw.nbtapi.iface.ReadWriteNBT;
+import dev.user.shop.shop.CatalogSnapshot;
+import dev.user.shop.shop.SellPriceIndex;
+import dev.user.shop.shop.ShopItem;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * 热点路径计时工具（/foliashop bench）
+ * 这些路径依赖 ItemMeta、CraftEngine 和 NBT-API，只能在运行中的服务器上测量，因此用简单的计时循环代替 JMH：
+ * 先预热一轮，再重复执行直到达到最少操作数和最短时间，分别给出改进前写法（基准）和当前写法的平均耗时。
+ * 只读取传入的快照和物品副本，可以在非区域线程上运行。
+ */
+public final class HotPathBenchmark {
+
+    private static final int MIN_OPERATIONS = 20_000;
+    private static final long MIN_DURATION_NANOS = 200_000_000L;
+
+    // 物品组件配置中常见的路径形式：普通键、列表下标、列表过滤器
+    private static final String[] NBT_PATHS = {
+        "minecraft:custom_data.PublicBukkitValues.foliashop:tag",
+        "minecraft:custom_data.display.Name",
+        "minecraft:lore[0]",
+        "minecraft:container[{slot:0}].item.count",
+        "minecraft:container[{slot:0,item:{id:\"minecraft:stone\"}}].item.components"
+    };
+    private static final String NBT_SAMPLE =
+        "{\"minecraft:custom_data\":{PublicBukkitValues:{},display:{}},\"minecraft:lore\":[\"a\"]," +
+        "\"minecraft:container\":[{slot:0,item:{id:\"minecraft:stone\",count:1,components:{}}}]}";
+    // 组件值字面量（带类型后缀的数字、字符串、复合标签、列表）
+    private static final String[] NBT_VALUES = {"1b", "300s", "2.5f", "7L", "\"text\"", "{a:1,b:\"c\"}", "[1,2,3]"};
+
+    // 模拟一次 /shop sellall：36 格背包，最多 9 种物品反复出现（挖矿、刷怪后的常见背包）
+    private static final int INVENTORY_SLOTS = 36;
+    private static final int DISTINCT_SELL_ITEMS = 9;
+    private static final Material[] FILLER_MATERIALS = {
+        Material.COBBLESTONE, Material.DIRT, Material.IRON_INGOT, Material.COAL, Material.ROTTEN_FLESH,
+        Material.BONE, Material.STRING, Material.GUNPOWDER, Material.REDSTONE
+    };
+
+    // 防止 JIT 消除无副作用的循环
+    private static volatile Object sink;
+
+    private HotPathBenchmark() {
+    }
+
+    /**
+     * 单项测量结果
+     * @param samples 每轮的样本数
+     * @param baselineNanos 基准写法每次操作的平均耗时（纳秒）
+     * @param currentNanos 当前写法每次操作的平均耗时（纳秒）
+     */
+    public record Result(String name, int samples, double baselineNanos, double currentNanos) {
+        public double speedup() {
+            return currentNanos > 0 ? baselineNanos / currentNanos : 0;
+        }
+
+        public String format() {
+            return String.format("§7%s §8(%d 个样本) §7基准: §e%.0f ns §7| 当前: §e%.0f ns §7| 提升: §a%.1fx",
+                name, samples, baselineNanos, currentNanos, speedup());
+        }
+    }
+
+    // ==================== 商店目录查找 ====================
+
+    /**
+     * 按物品查找商品：逐个 isSimilar 扫描整个目录（基准） vs {@link CatalogSnapshot#findByStack(ItemStack)}
+     * 样本为全部商品的显示物品（命中）和同样数量的普通物品（大多未命中，基准需要扫描整个目录）
+     */
+    public static Result catalogLookup(CatalogSnapshot catalog) {
+        Collection<ShopItem> items = catalog.getItems();
+        List<ItemStack> samples = new ArrayList<>(items.size() * 2);
+        Material[] materials = Material.values();
+        int materialIndex = 0;
+        for (ShopItem item : items) {
+            samples.add(item.getDisplayItem().clone());
+            // 取一个普通物品作为未命中样本
+            while (materialIndex < materials.length
+                    && (!materials[materialIndex].isItem() || materials[materialIndex].isAir() || materials[materialIndex].isLegacy())) {
+                materialIndex++;
+            }
+            if (materialIndex < materials.length) {
+                samples.add(new ItemStack(materials[materialIndex++]));
+            }
+        }
+        ItemStack[] stacks = samples.toArray(new ItemStack[0]);
+        ShopItem[] catalogItems = items.toArray(new ShopItem[0]);
+
+        double baseline = measure(stacks.length, i -> {
+            ItemStack stack = stacks[i];
+            ShopItem found = null;
+            for (ShopItem item : catalogItems) {
+                if (item.getDisplayItem().isSimilar(stack)) {
+                    found = item;
+                    break;
+                }
+            }
+            sink = found;
+        });
+        double current = measure(stacks.length, i -> sink = catalog.findByStack(stacks[i]));
+        return new Result("目录查找 findByStack", stacks.length, baseline, current);
+    }
+
+    // ==================== NBT 路径 ====================
+
+    /**
+     * 组件路径导航：每次解析两次路径再导航（基准，改进前 applySetNbt/applyRemoveNbt 的做法）
+     * vs {@link NBTPathUtils#compilePath(String)} 取缓存的编译结果后导航
+     */
+    public static Result nbtPathNavigation() {
+        ReadWriteNBT nbt = NBT.parseNBT(NBT_SAMPLE);
+        String[] paths = NBT_PATHS;
+
+        double baseline = measure(paths.length, i -> {
+            sink = NBTPathUtils.parsePath(paths[i]);
+            sink = NBTPathUtils.parsePath(paths[i]);
+            sink = NBTPathUtils.navigateToParent(nbt, NBTPathUtils.compilePath(paths[i]));
+        });
+        double current = measure(paths.length, i -> {
+            NBTPathUtils.CompiledPath compiled = NBTPathUtils.compilePath(paths[i]);
+            sink = compiled.getLastSegment();
+            sink = NBTPathUtils.navigateToParent(nbt, compiled);
+        });
+        return new Result("NBT 路径 compilePath+navigateToParent", paths.length, baseline, current);
+    }
+
+    /**
+     * 组件值解析：每次用正则和 NBT.parseNBT 解析（基准） vs {@link NBTPathUtils#parseValueCached(String)}
+     */
+    public static Result nbtValueParsing() {
+        String[] values = NBT_VALUES;
+        double baseline = measure(values.length, i -> sink = NBTPathUtils.parseValue(values[i]));
+        double current = measure(values.length, i -> sink = NBTPathUtils.parseValueCached(values[i]));
+        return new Result("NBT 值 parseValueCached", values.length, baseline, current);
+    }
+
+    // ==================== 出售报价 ====================
+
+    /**
+     * 整个背包报价：改进前出售界面的逐格做法（基准，见 {@link #legacyQuote}）
+     * vs {@link SellPriceIndex#quoteAll(ItemStack[])} 一次遍历，相似物品复用报价
+     * 每次操作为整个背包
+     * @param mode 回收模式（SHOP_ONLY、CONFIG_ONLY、ALL）
+     * @param customPrices 自定义回收价格（物品ID -> 单价）
+     */
+    public static Result sellQuotes(CatalogSnapshot catalog, SellPriceIndex index, String mode,
+                                    Map<String, Double> customPrices) {
+        List<ItemStack> kinds = new ArrayList<>(DISTINCT_SELL_ITEMS);
+        for (ShopItem item : catalog.getItems()) {
+            if (kinds.size() >= DISTINCT_SELL_ITEMS) break;
+            if (item.canSell()) {
+                kinds.add(item.getDisplayItem().clone());
+            }
+        }
+        for (int i = 0; kinds.size() < DISTINCT_SELL_ITEMS; i++) {
+            kinds.add(new ItemStack(FILLER_MATERIALS[i]));
+        }
+
+        ItemStack[] inventory = new ItemStack[INVENTORY_SLOTS];
+        for (int slot = 0; slot < INVENTORY_SLOTS; slot++) {
+            ItemStack stack = kinds.get(slot % kinds.size()).clone();
+            stack.setAmount(Math.min(stack.getMaxStackSize(), 1 + slot));
+            inventory[slot] = stack;
+        }
+
+        // 改进前的商品哈希缓存：每个商品一项，哈希冲突时后加入的覆盖先加入的
+        ShopItem[] catalogItems = catalog.getItems().toArray(new ShopItem[0]);
+        Map<Integer, ShopItem> legacyHashIndex = new HashMap<>();
+        for (ShopItem item : catalogItems) {
+            if (item.getDisplayItem() != null) {
+                legacyHashIndex.put(legacyItemHash(item.getDisplayItem()), item);
+            }
+        }
+
+        double baseline = measure(1, ignored -> {
+            for (ItemStack stack : inventory) {
+                sink = legacyQuote(stack, mode, customPrices, catalogItems, legacyHashIndex);
+            }
+        });
+        double current = measure(1, ignored -> sink = index.quoteAll(inventory));
+        return new Result("出售报价 quoteAll（每次整个背包）", INVENTORY_SLOTS, baseline, current);
+    }
+
+    /**
+     * 改进前出售界面的单格报价：查询物品ID，按模式先用哈希缓存查找商品（未命中时 isSimilar 扫描整个目录），
+     * 再查自定义回收价格；可出售时再查一次物品ID用于交易记录
+     * @return 单价（不可出售为 0）
+     */
+    private static double legacyQuote(ItemStack stack, String mode, Map<String, Double> customPrices,
+                                      ShopItem[] catalogItems, Map<Integer, ShopItem> hashIndex) {
+        String itemKey = ItemUtil.getItemKey(stack);
+        double price = 0;
+        if (mode.equals("SHOP_ONLY") || mode.equals("ALL")) {
+            ShopItem shopItem = hashIndex.get(legacyItemHash(stack));
+            if (shopItem == null || !shopItem.getDisplayItem().isSimilar(stack)) {
+                shopItem = null;
+                for (ShopItem item : catalogItems) {
+                    if (item.getDisplayItem() != null && item.getDisplayItem().isSimilar(stack)) {
+                        shopItem = item;
+                        break;
+                    }
+                }
+            }
+            if (shopItem != null && shopItem.canSell()) {
+                price = shopItem.getSellPrice();
+            }
+        }
+        if (price <= 0 && (mode.equals("CONFIG_ONLY") || mode.equals("ALL"))) {
+            price = customPrices.getOrDefault(itemKey, 0.0);
+        }
+        if (price > 0) {
+            sink = ItemUtil.getItemKey(stack);
+        }
+        return price;
+    }
+
+    /**
+     * 改进前的物品哈希：物品类型 + 物品ID + 耐久度 + 显示名称
+     */
+    private static int legacyItemHash(ItemStack item) {
+        String itemKey = ItemUtil.getItemKey(item);
+        int result = item.getType().hashCode();
+        result = 31 * result + itemKey.hashCode();
+        if (item.hasItemMeta() && item.getItemMeta() != null) {
+            if (item.getItemMeta() instanceof org.bukkit.inventory.meta.Damageable damageable) {
+                result = 31 * result + damageable.getDamage();
+            }
+            var meta = item.getItemMeta();
+            if (meta.hasDisplayName() && meta.displayName() != null) {
+                String displayName = net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer
+                    .legacySection().serialize(meta.displayName());
+                result = 31 * result + displayName.hashCode();
+            }
+        }
+        return result;
+    }
+
+    // ==================== 计时 ====================
+
+    /**
+     * 依次对每个样本执行操作，预热一轮后重复执行，返回每次操作的平均耗时（纳秒）
+     */
+    private static double measure(int samples, IntConsumer operation) {
+        if (samples == 0) return 0;
+        for (int i = 0; i < samples; i++) {
+            operation.accept(i);
+        }
+
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < samples; i++) {
+                operation.accept(i);
+            }
+            operations += samples;
+            elapsed = System.nanoTime() - start;
+        } while (operations < MIN_OPERATIONS || elapsed < MIN_DURATION_NANOS);
+        return (double) elapsed / operations;
+    }
+}
@@ -0,0 +1,66 @@
+package dev.user.shop.util;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import dev.user.shop.FoliaShopPlugin;
+import net.kyori.adventure.translation.GlobalTranslator;
+
+import java.io.File;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 物品名称翻译（服务端解析 <lang:键>，用于商店搜索）
+ * 服务端默认只有英文语言文件，按以下顺序查找中文名称：
+ * - 插件目录下的 lang/zh_cn.json（可直接使用客户端的 assets/minecraft/lang/zh_cn.json，CE 物品的翻译可合并进同一文件）
+ * - Adventure 全局翻译器中注册的简体中文翻译（其他插件在服务端注册的翻译）
+ * 插件重载时重新读取语言文件。
+ */
+public final class ItemNameTranslations {
+
+    private static final String LANG_FILE = "lang/zh_cn.json";
+
+    private static volatile Map<String, String> translations = Map.of();
+
+    private ItemNameTranslations() {
+    }
+
+    /**
+     * 读取语言文件（不存在时只使用全局翻译器）
+     */
+    public static void load(FoliaShopPlugin plugin) {
+        File file = new File(plugin.getDataFolder(), LANG_FILE);
+        if (!file.exists()) {
+            translations = Map.of();
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            Map<String, String> loaded = new Gson().fromJson(reader, new TypeToken<Map<String, String>>() {}.getType());
+            translations = loaded != null ? Map.copyOf(loaded) : Map.of();
+            plugin.getLogger().info("已加载 " + translations.size() + " 条物品名称翻译（" + LANG_FILE + "）");
+        } catch (Exception e) {
+            translations = Map.of();
+            plugin.getLogger().warning("读取物品名称翻译失败 [" + LANG_FILE + "]: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return 翻译键对应的中文名称，没有翻译时返回 null
+     */
+    public static String translate(String key) {
+        String name = translations.get(key);
+        if (name != null) {
+            return name;
+        }
+        try {
+            MessageFormat format = GlobalTranslator.translator().translate(key, Locale.SIMPLIFIED_CHINESE);
+            return format != null ? format.toPattern() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
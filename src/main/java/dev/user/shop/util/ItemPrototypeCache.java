@@ -0,0 +1,84 @@
+package dev.user.shop.util;
+
+import dev.user.shop.FoliaShopPlugin;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 物品原型缓存
+ * 以（物品ID，规范化后的 NBT 组件）为键缓存已构建好的物品：
+ * - 同一个键只执行一次 CE 物品构建和 NBT 组件解析/应用
+ * - 之后的请求只复制原型（clone），原型本身不会被交给调用方修改
+ *
+ * 组件按路径排序后拼接为键，配置中书写顺序不同的相同组件命中同一原型。
+ * 插件重载或 CraftEngine 重载后物品定义可能变化，需调用 {@link #invalidate()}。
+ */
+public final class ItemPrototypeCache {
+
+    private static final Map<String, ItemStack> PROTOTYPES = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private ItemPrototypeCache() {
+    }
+
+    /**
+     * 创建物品并应用 NBT 组件（命中缓存时直接复制原型）
+     * @return 新的物品实例，调用方可以自由修改
+     */
+    public static ItemStack create(FoliaShopPlugin plugin, String itemKey, Map<String, String> components) {
+        String key = cacheKey(itemKey, components);
+        ItemStack prototype = PROTOTYPES.get(key);
+        if (prototype != null) {
+            HITS.incrementAndGet();
+            return prototype.clone();
+        }
+
+        MISSES.incrementAndGet();
+        ItemStack item = ItemUtil.createItemFromKey(plugin, itemKey);
+        if (item == null) {
+            return null;
+        }
+        if (components != null && !components.isEmpty()) {
+            item = ItemUtil.applyComponents(item, components);
+        }
+        PROTOTYPES.putIfAbsent(key, item.clone());
+        return item;
+    }
+
+    /**
+     * 清空所有原型（插件重载、CraftEngine 重载后调用）
+     */
+    public static void invalidate() {
+        PROTOTYPES.clear();
+    }
+
+    public static int size() {
+        return PROTOTYPES.size();
+    }
+
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    private static String cacheKey(String itemKey, Map<String, String> components) {
+        String base = itemKey != null ? itemKey : "";
+        if (components == null || components.isEmpty()) {
+            return base;
+        }
+        StringBuilder sb = new StringBuilder(base);
+        for (Map.Entry<String, String> entry : new TreeMap<>(components).entrySet()) {
+            // 使用控制字符分隔，避免与路径和值中的字符混淆
+            sb.append('\u0001').append(entry.getKey()).append('\u0002').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -282,8 +282,8 @@ public class ItemUtil {
                 String valueStr = entry.getValue();
 
                 try {
-                    // 解析值
-                    Object value = NBTPathUtils.parseValue(valueStr);
+                    // 解析值（相同的值字符串只解析一次）
+                    Object value = NBTPathUtils.parseValueCached(valueStr);
 
                     // 应用设置
                     applySetNbt(nbt, path, value);
@@ -350,15 +350,19 @@ public class ItemUtil {
      * 移除指定路径的 NBT
      */
     public static void applyRemoveNbt(de.tr7zw.nbtapi.iface.ReadWriteNBT nbt, String path) {
-        NBTPathUtils.PathNavigationResult result = NBTPathUtils.navigateToParent(nbt, path);
+        if (path == null || path.isEmpty()) {
+            return;
+        }
+        // 路径只编译一次，导航和末段判断共用
+        NBTPathUtils.CompiledPath compiled = NBTPathUtils.compilePath(path);
+        NBTPathUtils.PathNavigationResult result = NBTPathUtils.navigateToParent(nbt, compiled);
         if (!result.isSuccess()) {
             return;
         }
 
         de.tr7zw.nbtapi.iface.ReadWriteNBT parent = result.getParent();
         String key = result.getLastKey();
-        List<NBTPathUtils.PathSegment> segments = NBTPathUtils.parsePath(path);
-        NBTPathUtils.PathSegment lastSegment = segments.get(segments.size() - 1);
+        NBTPathUtils.PathSegment lastSegment = compiled.getLastSegment();
 
         if (lastSegment.hasIndex()) {
             NBTPathUtils.removeListElement(parent, key, lastSegment.getIndex());
@@ -376,15 +380,19 @@ public class ItemUtil {
      * 设置指定路径的 NBT 值
      */
     public static void applySetNbt(de.tr7zw.nbtapi.iface.ReadWriteNBT nbt, String path, Object value) {
-        NBTPathUtils.PathNavigationResult result = NBTPathUtils.navigateToParent(nbt, path);
+        if (path == null || path.isEmpty()) {
+            return;
+        }
+        // 路径只编译一次，导航和末段判断共用
+        NBTPathUtils.CompiledPath compiled = NBTPathUtils.compilePath(path);
+        NBTPathUtils.PathNavigationResult result = NBTPathUtils.navigateToParent(nbt, compiled);
         if (!result.isSuccess()) {
             return;
         }
 
         de.tr7zw.nbtapi.iface.ReadWriteNBT parent = result.getParent();
         String key = result.getLastKey();
-        List<NBTPathUtils.PathSegment> segments = NBTPathUtils.parsePath(path);
-        NBTPathUtils.PathSegment lastSegment = segments.get(segments.size() - 1);
+        NBTPathUtils.PathSegment lastSegment = compiled.getLastSegment();
 
         if (lastSegment.hasIndex()) {
             if (value instanceof de.tr7zw.nbtapi.iface.ReadableNBT) {
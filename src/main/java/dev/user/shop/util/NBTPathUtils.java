@@ -10,7 +10,10 @@ import org.bukkit.World;
 import org.bukkit.entity.Entity;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -30,6 +33,22 @@ public final class NBTPathUtils {
     private static final Pattern PATH_SEGMENT_PATTERN = Pattern.compile("^([^\\[\\]{]+)(?:\\[([^\\]]+)\\])?$");
     private static final Pattern COMPOUND_FILTER_PATTERN = Pattern.compile("\\{(.+)\\}");
 
+    // ==================== Compiled Caches ====================
+    // Paths and literal values come from config, so the set of distinct strings is small;
+    // the bound only protects against unbounded growth from commands.
+    private static final int CACHE_SIZE = 1024;
+    private static final Map<String, CompiledPath> COMPILED_PATHS = boundedCache();
+    private static final Map<String, Object> PARSED_VALUES = boundedCache();
+
+    private static <V> Map<String, V> boundedCache() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+    }
+
     // ==================== Path Segment ====================
 
     /**
@@ -74,6 +93,73 @@ public final class NBTPathUtils {
         }
     }
 
+    // ==================== Compiled Path ====================
+
+    /**
+     * An NBT path compiled once into immutable segments.
+     * Filter compounds are parsed at compile time and only read afterwards,
+     * so a compiled path can be shared between threads and item builds.
+     */
+    public static final class CompiledPath {
+        private final String source;
+        private final PathSegment[] segments;
+
+        private CompiledPath(String source, PathSegment[] segments) {
+            this.source = source;
+            this.segments = segments;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public int size() {
+            return segments.length;
+        }
+
+        public PathSegment getSegment(int index) {
+            return segments[index];
+        }
+
+        public PathSegment getLastSegment() {
+            return segments[segments.length - 1];
+        }
+
+        public boolean isEmpty() {
+            return segments.length == 0;
+        }
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+
+    /**
+     * Compiles a path (cached). Equivalent to {@link #parsePath(String)} but parsed only once per distinct path.
+     */
+    public static CompiledPath compilePath(String path) {
+        CompiledPath compiled = COMPILED_PATHS.get(path);
+        if (compiled == null) {
+            compiled = new CompiledPath(path, parsePath(path).toArray(new PathSegment[0]));
+            COMPILED_PATHS.put(path, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Parses a value string (cached). The returned value must be treated as read-only:
+     * compounds and lists are shared between callers.
+     */
+    public static Object parseValueCached(String input) {
+        Object value = PARSED_VALUES.get(input);
+        if (value == null) {
+            value = parseValue(input);
+            PARSED_VALUES.put(input, value);
+        }
+        return value;
+    }
+
     // ==================== Path Parsing ====================
 
     /**
@@ -523,10 +609,11 @@ public final class NBTPathUtils {
     public static Object navigatePath(ReadableNBT nbt, String path) {
         if (path == null || path.isEmpty()) return nbt;
 
-        List<PathSegment> segments = parsePath(path);
+        CompiledPath compiled = compilePath(path);
         Object current = nbt;
 
-        for (PathSegment segment : segments) {
+        for (int i = 0; i < compiled.size(); i++) {
+            PathSegment segment = compiled.getSegment(i);
             if (!(current instanceof ReadableNBT)) {
                 return null;
             }
@@ -561,16 +648,21 @@ public final class NBTPathUtils {
         if (path == null || path.isEmpty()) {
             return new PathNavigationResult(null, "", false);
         }
+        return navigateToParent(nbt, compilePath(path));
+    }
 
-        List<PathSegment> segments = parsePath(path);
-        if (segments.isEmpty()) {
+    /**
+     * Navigates to the parent of the final key using a compiled path.
+     */
+    public static PathNavigationResult navigateToParent(ReadWriteNBT nbt, CompiledPath path) {
+        if (path.isEmpty()) {
             return new PathNavigationResult(null, "", false);
         }
 
         // Navigate to all but the last segment
         Object current = nbt;
-        for (int i = 0; i < segments.size() - 1; i++) {
-            PathSegment segment = segments.get(i);
+        for (int i = 0; i < path.size() - 1; i++) {
+            PathSegment segment = path.getSegment(i);
             if (!(current instanceof ReadWriteNBT)) {
                 return new PathNavigationResult(null, "", false);
             }
@@ -595,8 +687,7 @@ public final class NBTPathUtils {
             return new PathNavigationResult(null, "", false);
         }
 
-        PathSegment lastSegment = segments.get(segments.size() - 1);
-        return new PathNavigationResult((ReadWriteNBT) current, lastSegment.getKey(), true);
+        return new PathNavigationResult((ReadWriteNBT) current, path.getLastSegment().getKey(), true);
     }
 
     /**